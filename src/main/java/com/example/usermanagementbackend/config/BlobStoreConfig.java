@@ -0,0 +1,35 @@
+package com.example.usermanagementbackend.config;
+
+import com.example.usermanagementbackend.repository.BlobReferenceRepository;
+import com.example.usermanagementbackend.service.BlobStore;
+import com.example.usermanagementbackend.service.ShardedBlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Configuration
+public class BlobStoreConfig {
+
+    @Value("${blob.delai-grace-minutes:60}")
+    private long delaiGraceMinutes;
+
+    // Images uploadées (utilisateurs, livreurs, événements)
+    @Bean
+    public BlobStore uploadsBlobStore(Path fileStorageLocation, JdbcTemplate jdbcTemplate, BlobReferenceRepository blobReferenceRepository) {
+        return new ShardedBlobStore("uploads", fileStorageLocation, jdbcTemplate, blobReferenceRepository,
+                Duration.ofMinutes(delaiGraceMinutes));
+    }
+
+    // PDF des factures
+    @Bean
+    public BlobStore facturesBlobStore(@Value("${facture.pdf.dossier:invoices}") String dossier, JdbcTemplate jdbcTemplate,
+                                       BlobReferenceRepository blobReferenceRepository) {
+        return new ShardedBlobStore("factures", Paths.get(dossier), jdbcTemplate, blobReferenceRepository,
+                Duration.ofMinutes(delaiGraceMinutes));
+    }
+}
@@ -3,6 +3,7 @@ package com.example.usermanagementbackend.controller;
 import com.example.usermanagementbackend.entity.User;
 import com.example.usermanagementbackend.payload.LoginRequest;
 import com.example.usermanagementbackend.repository.UserRepository;
+import com.example.usermanagementbackend.service.FaceIndexService;
 import com.example.usermanagementbackend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -25,6 +26,9 @@ public class AuthController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private FaceIndexService faceIndexService;
+
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest) {
         Optional<User> optionalUser;
@@ -99,32 +103,25 @@ public class AuthController {
                 return ResponseEntity.badRequest().body("Descripteur facial manquant");
             }
 
-            float[] inputDescriptor = parseFaceDescriptor(faceDescriptorStr);
-            if (inputDescriptor.length != 128) {
+            float[] inputDescriptor = FaceIndexService.parserDescripteur(faceDescriptorStr);
+            if (inputDescriptor.length != FaceIndexService.DIMENSION) {
                 return ResponseEntity.status(400).body("Descripteur facial invalide");
             }
 
-            for (User user : userRepository.findAll()) {
-                if (user.getFaceDescriptor() == null) continue;
-
-                try {
-                    float[] storedDescriptor = parseFaceDescriptor(user.getFaceDescriptor());
-                    float distance = calculateEuclideanDistance(inputDescriptor, storedDescriptor);
-
-                    System.out.println("🔍 Comparaison avec: " + user.getEmail() + " | distance = " + distance);
-
-                    if (distance < 0.6f) {
-                        if (user.isBlocked()) {
-                            return ResponseEntity.status(403).body("Compte bloqué.");
-                        }
-
-                        userService.mettreAJourConnexion(user);
-                        user.setMotDePasse(null);
-                        return ResponseEntity.ok(user);
+            Optional<Long> correspondance = faceIndexService.trouverCorrespondance(inputDescriptor);
+            if (correspondance.isPresent()) {
+                Optional<User> optionalUser = userRepository.findById(correspondance.get());
+                if (optionalUser.isPresent()) {
+                    User user = optionalUser.get();
+                    if (user.isBlocked()) {
+                        return ResponseEntity.status(403).body("Compte bloqué.");
                     }
-                } catch (Exception e) {
-                    System.err.println("❌ Erreur de parsing pour l'utilisateur " + user.getEmail() + " : " + e.getMessage());
+
+                    userService.mettreAJourConnexion(user);
+                    user.setMotDePasse(null);
+                    return ResponseEntity.ok(user);
                 }
+                faceIndexService.retirer(correspondance.get());
             }
 
             return ResponseEntity.status(401).body("Aucun visage correspondant trouvé.");
@@ -133,30 +130,4 @@ public class AuthController {
             return ResponseEntity.status(500).body("Erreur interne : " + e.getMessage());
         }
     }
-
-    private float[] parseFaceDescriptor(String descriptorStr) {
-        try {
-            String[] parts = descriptorStr.replace("[", "").replace("]", "").split(",");
-            float[] descriptor = new float[parts.length];
-
-            for (int i = 0; i < parts.length; i++) {
-                descriptor[i] = Float.parseFloat(parts[i].trim());
-            }
-
-            return descriptor;
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Format de descripteur facial invalide");
-        }
-    }
-
-    private float calculateEuclideanDistance(float[] d1, float[] d2) {
-        if (d1.length != d2.length) return Float.MAX_VALUE;
-
-        float sum = 0f;
-        for (int i = 0; i < d1.length; i++) {
-            float diff = d1[i] - d2[i];
-            sum += diff * diff;
-        }
-        return (float) Math.sqrt(sum);
-    }
 }
@@ -3,22 +3,24 @@ package com.example.usermanagementbackend.controller;
 import com.example.usermanagementbackend.dto.CommandeDTO;
 import com.example.usermanagementbackend.dto.LivreurDTO;
 import com.example.usermanagementbackend.entity.Commande;
-import com.example.usermanagementbackend.entity.LigneCommande;
-import com.example.usermanagementbackend.entity.Produit;
-import com.example.usermanagementbackend.entity.User;
+import com.example.usermanagementbackend.service.CommandeIngestService;
 import com.example.usermanagementbackend.service.CommandeService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.sql.PreparedStatement;
-import java.sql.Statement;
-import java.sql.Types;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -32,59 +34,68 @@ import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/commandes")
-@CrossOrigin(origins = "http://localhost:4200")
+@CrossOrigin(origins = "http://localhost:4200", exposedHeaders = CommandeController.ENTETE_CURSEUR_SUIVANT)
 @RequiredArgsConstructor
 public class CommandeController {
 
+    private static final Logger logger = LoggerFactory.getLogger(CommandeController.class);
+
+    // afterId à passer pour la page suivante ; absent sur la dernière page
+    public static final String ENTETE_CURSEUR_SUIVANT = "X-Next-After-Id";
+
     private final JdbcTemplate jdbcTemplate;
     private final CommandeService commandeService;
+    private final CommandeIngestService commandeIngestService;
+    private final ObjectMapper objectMapper;
 
-    @GetMapping
-    public ResponseEntity<?> getAllCommandes() {
-        try {
-            // First, log the exception details to help debug the issue
-            System.out.println("===== Running getAllCommandes =====");
-
-            try {
-                // Attempt to get the table structure to verify it exists
-                List<String> tableNames = jdbcTemplate.queryForList(
-                        "SELECT table_name FROM information_schema.tables WHERE table_schema = 'public'",
-                        String.class
-                );
-                System.out.println("Available tables: " + tableNames);
-            } catch (Exception ex) {
-                System.out.println("Error checking table structure: " + ex.getMessage());
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getAllCommandes(
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Integer limit
+    ) {
+        if (limit != null && limit < 0) {
+            return ResponseEntity.badRequest().body("limit doit être positif");
+        }
+        int taille = CommandeService.tailleListe(limit);
+        Long curseurSuivant = commandeService.curseurSuivant(afterId, taille);
+        // Colonnes du DTO lues par curseur et écrites directement dans la réponse JSON
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                commandeService.streamCommandesListe(afterId, taille, dto -> {
+                    try {
+                        generator.writeObject(dto);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
             }
+        };
+        ResponseEntity.BodyBuilder reponse = ResponseEntity.ok();
+        if (curseurSuivant != null) {
+            reponse.header(ENTETE_CURSEUR_SUIVANT, String.valueOf(curseurSuivant));
+        }
+        return reponse.body(body);
+    }
 
-            // Fallback to the service implementation which might be more stable
-            List<Commande> commandeList = commandeService.getAllCommandes();
-
-            // Convert entities to DTOs manually
-            List<CommandeDTO> commandes = new ArrayList<>();
-            for (Commande commande : commandeList) {
-                CommandeDTO dto = new CommandeDTO();
-                dto.setId(commande.getId());
-                dto.setClientNom(commande.getClientNom());
-                dto.setStatus(commande.getStatus() != null ? commande.getStatus().toString() : "PENDING");
-                dto.setAdresse(commande.getAdresse());
-                dto.setTelephone(commande.getTelephone());
-
-                // Handle livreur if present
-                if (commande.getLivreurId() != null) {
-                    dto.setLivreurId(commande.getLivreurId());
-                }
-
-                commandes.add(dto);
+    // mode=resume : projection DTO pour les listes ; mode=complet : commandes avec lignes et produits
+    @GetMapping("/page")
+    public ResponseEntity<?> getCommandesPage(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) Commande.OrderStatus status,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(defaultValue = "-id") String sort,
+            @RequestParam(defaultValue = "resume") String mode
+    ) {
+        try {
+            if ("complet".equals(mode)) {
+                return ResponseEntity.ok(commandeService.getCommandesPage(status, userId, page, size, sort));
             }
-
-            return ResponseEntity.ok(commandes);
-        } catch (Exception e) {
-            e.printStackTrace();
-            // Return a more user-friendly response instead of throwing an exception
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("message", "Error fetching commandes: " + e.getMessage());
-            errorResponse.put("timestamp", java.time.LocalDateTime.now().toString());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+            return ResponseEntity.ok(commandeService.getCommandesResumes(status, userId, page, size, sort));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
@@ -178,266 +189,33 @@ public class CommandeController {
     @PostMapping
     public ResponseEntity<?> createCommande(@RequestBody Map<String, Object> payload) {
         try {
-            System.out.println("Received payload: " + payload);
-
-            // Extract basic commande info
-            String clientNom = payload.get("clientNom") != null ? (String) payload.get("clientNom") : "";
-            String status = payload.get("status") != null ? (String) payload.get("status") : "PENDING";
-            String adresse = payload.get("adresse") != null ? (String) payload.get("adresse") : "";
-            String telephone = payload.get("telephone") != null ? (String) payload.get("telephone") : "";
-            String gouvernement = payload.get("gouvernement") != null ? (String) payload.get("gouvernement") : "";
-
-            // Extract livreurId if provided
-            Long livreurId;
-            if (payload.get("livreurId") != null) {
-                livreurId = Long.valueOf(payload.get("livreurId").toString());
-            } else {
-                livreurId = null;
-            }
-
-            // Handle user data - use from payload if available, otherwise default to a simple userId
-            Long userId = null;
-            Map<String, Object> userMap = (Map<String, Object>) payload.get("user");
-            if (userMap != null && userMap.get("id") != null) {
-                userId = Long.valueOf(userMap.get("id").toString());
-            } else {
-                userId = 1L; // Default user ID if not provided
-            }
-
-            // Try different table names to find the correct one for this database
-            KeyHolder keyHolder = new GeneratedKeyHolder();
-            int result = 0;
-            Long generatedId = null;
+            CommandeIngestService.CommandeImport commande = CommandeIngestService.depuisPayload(payload);
 
+            Long generatedId;
             try {
-                // Second attempt with table name 'commandes' - plural form (more likely to be the correct one)
-                Long finalUserId = userId;
-                result = jdbcTemplate.update(connection -> {
-                    PreparedStatement ps = connection.prepareStatement(
-                            "INSERT INTO commandes (client_nom, statut, adresse, telephone, gouvernement, user_id, livreur_id) " +
-                                    "VALUES (?, ?, ?, ?, ?, ?, ?)",
-                            Statement.RETURN_GENERATED_KEYS
-                    );
-                    ps.setString(1, clientNom);
-                    ps.setString(2, status);
-                    ps.setString(3, adresse);
-                    ps.setString(4, telephone);
-                    ps.setString(5, gouvernement);
-                    ps.setLong(6, finalUserId);
-
-                    if (livreurId != null) {
-                        ps.setLong(7, livreurId);
-                    } else {
-                        ps.setNull(7, Types.BIGINT);
-                    }
-
-                    return ps;
-                }, keyHolder);
-
-                generatedId = keyHolder.getKey().longValue();
-                System.out.println("Insert successful with table name 'commandes', generated ID: " + generatedId);
-            } catch (Exception e2) {
-                System.out.println("Direct SQL insert failed: " + e2.getMessage());
-
+                // Commande et lignes en une transaction : une requête de stock, deux batchs JDBC
+                generatedId = commandeIngestService.creer(commande);
+            } catch (BadSqlGrammarException e2) {
                 // Fall back to using the service if direct SQL attempt fails
-                System.out.println("Falling back to service-based approach");
-                Commande commande = new Commande();
-                commande.setClientNom(clientNom);
-                try {
-                    commande.setStatus(Commande.OrderStatus.valueOf(status));
-                } catch (Exception e) {
-                    commande.setStatus(Commande.OrderStatus.PENDING);
-                }
-                commande.setAdresse(adresse);
-                commande.setTelephone(telephone);
-                commande.setGouvernement(gouvernement);
-
-                // Set up user relationship
-                User user = new User();
-                user.setId(userId);
-                commande.setUser(user);
-
-                // Set livreurId if provided
-                if (livreurId != null) {
-                    commande.setLivreurId(livreurId);
-                }
-
-                // Process lignes commandes from the request payload
-                List<LigneCommande> lignesCommande = new ArrayList<>();
-                List<Map<String, Object>> lignesCommandeData = (List<Map<String, Object>>) payload.get("lignesCommande");
-
-                if (lignesCommandeData != null && !lignesCommandeData.isEmpty()) {
-                    for (Map<String, Object> ligneData : lignesCommandeData) {
-                        LigneCommande ligneCommande = new LigneCommande();
-
-                        // Set commande relationship
-                        ligneCommande.setCommande(commande);
-
-                        // Extract product information
-                        Map<String, Object> produitMap = (Map<String, Object>) ligneData.get("produit");
-                        if (produitMap != null && produitMap.get("id") != null) {
-                            Long produitId = Long.valueOf(produitMap.get("id").toString());
-
-                            // Create product reference
-                            Produit produit = new Produit();
-                            produit.setId(produitId);
-                            ligneCommande.setProduit(produit);
-                        }
-
-                        // Set quantities and prices
-                        int qte = ligneData.get("qte") != null ? ((Number)ligneData.get("qte")).intValue() : 1;
-
-                        // Add explicit logging to debug prix_unitaire issues
-                        System.out.println("Processing prix_unitaire from JSON: " + ligneData.get("prixUnitaire"));
-
-                        double prixUnitaire = 0.0;
-                        if (ligneData.get("prixUnitaire") != null) {
-                            try {
-                                prixUnitaire = ((Number)ligneData.get("prixUnitaire")).doubleValue();
-                                System.out.println("Converted prixUnitaire to: " + prixUnitaire);
-                            } catch (Exception ex1) {
-                                System.out.println("Error converting prixUnitaire: " + ex1.getMessage());
-                                // Try alternate parsing approaches
-                                try {
-                                    prixUnitaire = Double.parseDouble(ligneData.get("prixUnitaire").toString());
-                                    System.out.println("Alternate conversion succeeded: " + prixUnitaire);
-                                } catch (Exception ex2) {
-                                    System.out.println("Alternate conversion also failed: " + ex2.getMessage());
-                                }
-                            }
-                        }
-
-                        ligneCommande.setQte(qte);
-                        ligneCommande.setPrixUnitaire(prixUnitaire);
-
-                        if (ligneData.get("total") != null) {
-                            ligneCommande.setTotal(((Number)ligneData.get("total")).doubleValue());
-                        } else if (ligneData.get("prixUnitaire") != null) {
-                            // Calculate total if not provided
-                            try {
-                                double prixUnitaireValue = prixUnitaire; // Use the already converted value
-                                int qteValue = ligneCommande.getQte();
-                                ligneCommande.setTotal(prixUnitaireValue * qteValue);
-                                System.out.println("Calculated total: " + (prixUnitaireValue * qteValue) +
-                                        " from prix: " + prixUnitaireValue + " and qte: " + qteValue);
-                            } catch (Exception ex) {
-                                System.out.println("Error calculating total: " + ex.getMessage());
-                                ligneCommande.setTotal(0.0); // Default to zero if calculation fails
-                            }
-                        }
-
-                        // Set TTC if provided
-                        if (ligneData.get("ttc") != null) {
-                            ligneCommande.setTtc(((Number)ligneData.get("ttc")).doubleValue());
-                        }
-
-                        // Add to collection
-                        lignesCommande.add(ligneCommande);
-                    }
-                }
-
-                // Set the lignes commande collection
-                commande.setLignesCommande(lignesCommande);
-
-                // Save using service
-                Commande savedCommande = commandeService.saveCommande(commande);
-                System.out.println("Saved commande using service: " + savedCommande);
+                logger.warn("Insertion JDBC de la commande impossible, repli sur CommandeService : {}", e2.getMessage());
+                Commande savedCommande = commandeService.saveCommande(commandeIngestService.versEntite(commande));
                 generatedId = savedCommande.getId();
             }
 
-            // If the commande was inserted successfully with a generated ID, insert ligne commande items
-            if (generatedId != null && keyHolder.getKey() != null) {
-                // Process lignes commandes from the request payload
-                List<Map<String, Object>> lignesCommandeData = (List<Map<String, Object>>) payload.get("lignesCommande");
-
-                if (lignesCommandeData != null && !lignesCommandeData.isEmpty()) {
-                    for (Map<String, Object> ligneData : lignesCommandeData) {
-                        try {
-                            // Extract product ID
-                            Long produitId = null;
-                            Map<String, Object> produitMap = (Map<String, Object>) ligneData.get("produit");
-                            if (produitMap != null && produitMap.get("id") != null) {
-                                produitId = Long.valueOf(produitMap.get("id").toString());
-                            } else {
-                                produitId = 1L; // Default product ID
-                            }
-
-                            // Extract quantities and prices
-                            int qte = ligneData.get("qte") != null ? ((Number)ligneData.get("qte")).intValue() : 1;
-
-                            // Add explicit logging to debug prix_unitaire issues
-                            System.out.println("Processing prix_unitaire from JSON: " + ligneData.get("prixUnitaire"));
-
-                            double prixUnitaire = 0.0;
-                            if (ligneData.get("prixUnitaire") != null) {
-                                try {
-                                    prixUnitaire = ((Number)ligneData.get("prixUnitaire")).doubleValue();
-                                    System.out.println("Converted prixUnitaire to: " + prixUnitaire);
-                                } catch (Exception ex1) {
-                                    System.out.println("Error converting prixUnitaire: " + ex1.getMessage());
-                                    // Try alternate parsing approaches
-                                    try {
-                                        prixUnitaire = Double.parseDouble(ligneData.get("prixUnitaire").toString());
-                                        System.out.println("Alternate conversion succeeded: " + prixUnitaire);
-                                    } catch (Exception ex2) {
-                                        System.out.println("Alternate conversion also failed: " + ex2.getMessage());
-                                    }
-                                }
-                            }
-
-                            double total = ligneData.get("total") != null ?
-                                    ((Number)ligneData.get("total")).doubleValue() : (prixUnitaire * qte);
-                            double ttc = ligneData.get("ttc") != null ?
-                                    ((Number)ligneData.get("ttc")).doubleValue() : total;
-
-                            // Add more logging about the SQL insertion
-                            System.out.println("Inserting ligne_commande with values: ");
-                            System.out.println("commande_id: " + generatedId);
-                            System.out.println("produit_id: " + produitId);
-                            System.out.println("qte: " + qte);
-                            System.out.println("prix_unitaire: " + prixUnitaire);
-                            System.out.println("total: " + total);
-                            System.out.println("ttc: " + ttc);
-
-                            // Insert ligne commande
-                            int rowsInserted = jdbcTemplate.update(
-                                    "INSERT INTO lignes_commande (commande_id, produit_id, qte, prix_unitaire, total, ttc) " +
-                                            "VALUES (?, ?, ?, ?, ?, ?)",
-                                    generatedId, produitId, qte, prixUnitaire, total, ttc
-                            );
-
-                            System.out.println("Inserted ligne commande for commande ID: " + generatedId + ", rows affected: " + rowsInserted);
-                        } catch (Exception e) {
-                            System.out.println("Error inserting ligne commande: " + e.getMessage());
-                            e.printStackTrace();
-                        }
-                    }
-                }
-            }
-
             // Create response DTO
             CommandeDTO responseDTO = new CommandeDTO();
             responseDTO.setId(generatedId);
-            responseDTO.setClientNom(clientNom);
-            responseDTO.setStatus(status);
-            responseDTO.setAdresse(adresse);
-            responseDTO.setTelephone(telephone);
-            if (livreurId != null) {
-                responseDTO.setLivreurId(livreurId);
+            responseDTO.setClientNom(commande.clientNom());
+            responseDTO.setStatus(commande.status());
+            responseDTO.setAdresse(commande.adresse());
+            responseDTO.setTelephone(commande.telephone());
+            if (commande.livreurId() != null) {
+                responseDTO.setLivreurId(commande.livreurId());
             }
 
             return ResponseEntity.status(HttpStatus.CREATED).body(responseDTO);
         } catch (Exception e) {
-            System.out.println("======= ERROR CREATING COMMANDE =======");
-            System.out.println("Error message: " + e.getMessage());
-            System.out.println("Error class: " + e.getClass().getName());
-            System.out.println("Stack trace:");
-            e.printStackTrace();
-
-            if (e.getCause() != null) {
-                System.out.println("Cause: " + e.getCause().getMessage());
-                e.getCause().printStackTrace();
-            }
+            logger.error("Création de la commande impossible ({}) : {}", e.getClass().getName(), e.getMessage());
 
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("message", "Error creating commande: " + e.getMessage());
@@ -446,6 +224,28 @@ public class CommandeController {
         }
     }
 
+    // Import en masse (B2B) : tout le lot est validé et inséré dans une seule transaction
+    @PostMapping("/import")
+    public ResponseEntity<?> importCommandes(@RequestBody List<Map<String, Object>> payloads) {
+        try {
+            List<CommandeIngestService.CommandeImport> commandes = payloads.stream()
+                    .map(CommandeIngestService::depuisPayload)
+                    .toList();
+            List<Long> ids = commandeIngestService.importer(commandes);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("commandesCreees", ids.size());
+            response.put("lignesCreees", commandes.stream().mapToInt(c -> c.lignes().size()).sum());
+            response.put("ids", ids);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Error importing commandes: " + e.getMessage());
+            errorResponse.put("errorType", e.getClass().getSimpleName());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        }
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<CommandeDTO> updateCommande(@PathVariable Long id, @RequestBody CommandeDTO commandeDTO) {
         try {
@@ -1,31 +1,34 @@
 package com.example.usermanagementbackend.controller;
 
 import com.example.usermanagementbackend.entity.Evenement;
+import com.example.usermanagementbackend.service.BlobStore;
 import com.example.usermanagementbackend.service.EvenementService;
+import com.example.usermanagementbackend.service.FichierStreamingService;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.MediaType;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.client.RestTemplate;
 import java.util.HashMap;
 import java.util.Map;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @CrossOrigin(origins = "http://localhost:4200")
 @RestController
 @RequestMapping("/api/evenements")
 public class EvenementController {
     private final EvenementService evenementService;
+    private final FichierStreamingService fichierStreamingService;
+    private final BlobStore uploadsBlobStore;
 
-    public EvenementController(EvenementService evenementService) {
+    public EvenementController(EvenementService evenementService, FichierStreamingService fichierStreamingService,
+                               @Qualifier("uploadsBlobStore") BlobStore uploadsBlobStore) {
         this.evenementService = evenementService;
+        this.fichierStreamingService = fichierStreamingService;
+        this.uploadsBlobStore = uploadsBlobStore;
     }
 
     // 🔹 CRUD standard
@@ -67,12 +70,9 @@ public class EvenementController {
 
             System.out.println("Upload reçu : " + file.getOriginalFilename());
 
-            String uploadDir = "uploads/";
-            Files.createDirectories(Paths.get(uploadDir));
-
-            String fileName = UUID.randomUUID().toString() + "_" + file.getOriginalFilename();
-            Path filePath = Paths.get(uploadDir, fileName);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+            // Stockage adressé par contenu : une image déjà envoyée n'est pas recopiée. Pas de référence ici :
+            // elle est prise par l'événement qui enregistre l'URL (sinon l'image est supprimée par le balayage)
+            String fileName = uploadsBlobStore.deposer(file.getInputStream(), BlobStore.extension(file.getOriginalFilename()));
 
             return ResponseEntity.ok("/api/evenements/image/" + fileName);
         } catch (Exception e) {
@@ -85,20 +85,7 @@ public class EvenementController {
     // 🔹 Accès à une image
     @GetMapping("/image/{filename:.+}")
     public ResponseEntity<Resource> getImage(@PathVariable String filename) {
-        try {
-            Path file = Paths.get("uploads").resolve(filename);
-            Resource resource = new UrlResource(file.toUri());
-
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_JPEG) // Tu peux aussi détecter dynamiquement
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
-        }
+        return fichierStreamingService.servir(uploadsBlobStore.chemin(filename), filename, false, CacheControl.maxAge(1, TimeUnit.HOURS));
     }
     @PostMapping("/{id}/resume")
     public ResponseEntity<Map<String, String>> resumeEvenement(@PathVariable Long id) {
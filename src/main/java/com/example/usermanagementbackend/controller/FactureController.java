@@ -1,17 +1,19 @@
 package com.example.usermanagementbackend.controller;
 
 import com.example.usermanagementbackend.entity.Facture;
+import com.example.usermanagementbackend.enums.StatutPdf;
 import com.example.usermanagementbackend.service.FactureService;
+import com.example.usermanagementbackend.service.FichierStreamingService;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -19,9 +21,11 @@ import java.util.Optional;
 public class FactureController {
 
     private final FactureService factureService;
+    private final FichierStreamingService fichierStreamingService;
 
-    public FactureController(FactureService factureService) {
+    public FactureController(FactureService factureService, FichierStreamingService fichierStreamingService) {
         this.factureService = factureService;
+        this.fichierStreamingService = fichierStreamingService;
     }
 
     @GetMapping
@@ -79,25 +83,39 @@ public class FactureController {
     }
 
     @GetMapping("/{id}/pdf")
-    public ResponseEntity<byte[]> downloadFacturePDF(@PathVariable Long id) {
+    public ResponseEntity<?> downloadFacturePDF(@PathVariable Long id) {
         Optional<Facture> facture = factureService.getFactureById(id);
         if (facture.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
+        Path pdfPath = factureService.getCheminPdf(facture.get());
+        StatutPdf statutPdf = facture.get().getStatutPdf();
+        if ((pdfPath == null || !Files.exists(pdfPath)) && (statutPdf == StatutPdf.EN_ATTENTE || statutPdf == StatutPdf.EN_COURS)) {
+            // Rendu asynchrone pas encore terminé
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(("PDF generation in progress for facture ID: " + id).getBytes());
+        }
+        if (pdfPath == null || !Files.exists(pdfPath)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(("PDF not found for facture ID: " + id).getBytes());
+        }
+        // Réécrit à chaque rendu : revalidation systématique par ETag
+        return fichierStreamingService.servir(pdfPath, "invoice_" + id + ".pdf", true, CacheControl.noCache());
+    }
+
+    // Régénération des PDF d'une période, répartie sur le pool de rendu
+    @PostMapping("/pdf/regenerer")
+    public ResponseEntity<?> regenererPdf(@RequestParam LocalDate debut, @RequestParam LocalDate fin) {
         try {
-            Path pdfPath = Paths.get("invoices/invoice_" + id + ".pdf");
-            if (!Files.exists(pdfPath)) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(("PDF not found for facture ID: " + id).getBytes());
-            }
-            byte[] pdfBytes = Files.readAllBytes(pdfPath);
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("attachment", "invoice_" + id + ".pdf");
-            return new ResponseEntity<>(pdfBytes, headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Error reading PDF: " + e.getMessage()).getBytes());
+            int planifiees = factureService.regenererPdf(debut, fin);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("facturesPlanifiees", planifiees));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    @GetMapping("/pdf/stats")
+    public ResponseEntity<Map<String, Object>> statistiquesPdf() {
+        return ResponseEntity.ok(factureService.getStatistiquesPdf());
+    }
+}
@@ -1,11 +1,15 @@
 package com.example.usermanagementbackend.controller;
 
 import com.cloudinary.utils.ObjectUtils;
+import com.example.usermanagementbackend.dto.ProduitCursorPageDTO;
+import com.example.usermanagementbackend.dto.ProduitSearchResultDTO;
 import com.example.usermanagementbackend.entity.Produit;
 import com.example.usermanagementbackend.enums.Category;
 import com.example.usermanagementbackend.service.ProduitService;
 import com.example.usermanagementbackend.service.StockService;
 import com.cloudinary.Cloudinary;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
@@ -13,7 +17,10 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +33,7 @@ public class ProduitController {
     private final ProduitService produitService;
     private final StockService stockService;
     private final Cloudinary cloudinary;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
     public ResponseEntity<List<Produit>> getAllProduits() {
@@ -38,6 +46,20 @@ public class ProduitController {
         }
     }
 
+    @GetMapping("/scroll")
+    public ResponseEntity<ProduitCursorPageDTO> getProduitsParCurseur(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(required = false) Category category,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        try {
+            return ResponseEntity.ok(produitService.lireProduitsCurseur(cursor, size, sort, category, withTotal));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Produit> getProduitById(@PathVariable Long id) {
         try {
@@ -179,6 +201,44 @@ public class ProduitController {
             return ResponseEntity.status(500).body(null);
         }
     }
+    @GetMapping(value = "/top-selling/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamTopSellingProducts(@RequestParam int limit) {
+        if (limit < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                produitService.streamTopSellingProducts(limit, produit -> {
+                    try {
+                        generator.writeObject(produit);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok(body);
+    }
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStatistics() {
+        return ResponseEntity.ok(produitService.getCacheStatistics());
+    }
+    @GetMapping("/recherche")
+    public ResponseEntity<ProduitSearchResultDTO> rechercheTexte(
+            @RequestParam("q") String q,
+            @RequestParam(required = false) Category category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "pertinence") String sort) {
+        if (page < 0 || size < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(produitService.rechercheTexte(q, category, minPrice, maxPrice, sort, page, size));
+    }
     @GetMapping("/search")
     public ResponseEntity<Page<Produit>> searchProducts(
             @RequestParam(required = false) String nom,
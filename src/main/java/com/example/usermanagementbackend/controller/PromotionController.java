@@ -1,14 +1,18 @@
 package com.example.usermanagementbackend.controller;
 
+import com.example.usermanagementbackend.dto.PromotionActiveDTO;
 import com.example.usermanagementbackend.entity.Produit;
 import com.example.usermanagementbackend.entity.Promotion;
 import com.example.usermanagementbackend.repository.ProduitRepository;
 import com.example.usermanagementbackend.repository.PromotionRepository;
+import com.example.usermanagementbackend.service.PromotionDynamicReadModel;
 import com.example.usermanagementbackend.service.PromotionService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
 
 import java.util.*;
@@ -116,9 +120,16 @@ public class PromotionController {
     }
 
     @GetMapping("/dynamic")
-    public ResponseEntity<Map<String, List<Map<String, Object>>>> getDynamicPromotions() {
-        Map<String, List<Map<String, Object>>> dynamicPromotions = promotionService.getDynamicPromotions();
-        return ResponseEntity.ok(dynamicPromotions);
+    public ResponseEntity<byte[]> getDynamicPromotions(WebRequest request) {
+        // JSON déjà sérialisé et ETag calculés à la construction de la vue : un 304 ne coûte qu'une comparaison
+        PromotionDynamicReadModel.Vue vue = promotionService.getDynamicPromotionsVue();
+        if (request.checkNotModified(vue.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(vue.etag()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(vue.etag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(vue.json());
     }
 
     @GetMapping("/appliquer/{id}/{montant}")
@@ -126,23 +137,28 @@ public class PromotionController {
         if (montant <= 0) {
             return ResponseEntity.badRequest().body(montant);
         }
-        Optional<Promotion> promo = promotionService.getPromotionById(id);
-        if (promo.isPresent() && promo.get().isActive()) {
-            double nouveauMontant = promotionService.appliquerPromotion(montant, promo.get());
-            return ResponseEntity.ok(nouveauMontant);
+        OptionalDouble nouveauMontant = promotionService.appliquerPromotion(id, montant);
+        if (nouveauMontant.isPresent()) {
+            return ResponseEntity.ok(nouveauMontant.getAsDouble());
         }
         return ResponseEntity.badRequest().body(montant);
     }
 
+    @GetMapping("/usage/stats")
+    public ResponseEntity<Map<String, Object>> getUsageRecorderStatistics() {
+        return ResponseEntity.ok(promotionService.getUsageRecorderStatistics());
+    }
+
     @GetMapping("/actives")
-    public ResponseEntity<List<Promotion>> getPromotionsActives() {
+    public ResponseEntity<List<PromotionActiveDTO>> getPromotionsActives() {
         return ResponseEntity.ok(promotionService.getPromotionsActives());
     }
 
     @PostMapping("/appliquer-expiration")
     public ResponseEntity<?> appliquerPromotionExpirationProduit() {
-        promotionService.appliquerPromotionExpirationProduit();
-        return ResponseEntity.ok("Promotion appliquée aux produits expirant sous 5 jours.");
+        Map<String, Object> rapport = new HashMap<>(promotionService.appliquerPromotionExpirationProduit());
+        rapport.put("message", "Promotion appliquée aux produits expirant sous 5 jours.");
+        return ResponseEntity.ok(rapport);
     }
 
     @GetMapping("/produits-proches-expiration")
@@ -152,21 +168,21 @@ public class PromotionController {
     }
 
     @PostMapping("/bulk-activate")
-    public ResponseEntity<Void> bulkActivate(@RequestBody List<Integer> ids) {
+    public ResponseEntity<Map<String, Integer>> bulkActivate(@RequestBody List<Integer> ids) {
         if (ids == null || ids.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
-        promotionService.bulkActivate(ids);
-        return ResponseEntity.ok().build();
+        int modifiees = promotionService.bulkActivate(ids);
+        return ResponseEntity.ok(Map.of("promotionsModifiees", modifiees));
     }
 
     @PostMapping("/bulk-deactivate")
-    public ResponseEntity<Void> bulkDeactivate(@RequestBody List<Integer> ids) {
+    public ResponseEntity<Map<String, Integer>> bulkDeactivate(@RequestBody List<Integer> ids) {
         if (ids == null || ids.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
-        promotionService.bulkDeactivate(ids);
-        return ResponseEntity.ok().build();
+        int modifiees = promotionService.bulkDeactivate(ids);
+        return ResponseEntity.ok(Map.of("promotionsModifiees", modifiees));
     }
 
     @PostMapping("/bulk-delete")
@@ -200,8 +216,9 @@ public class PromotionController {
     @GetMapping("/suggest-now")
     public ResponseEntity<String> suggestPromotionsNow() {
         try {
-            promotionService.suggestPromotions();
-            return ResponseEntity.ok("Suggestions générées avec succès");
+            Map<String, Object> stats = promotionService.suggestPromotions();
+            return ResponseEntity.ok("Suggestions générées avec succès : " + stats.get("elementsEcrits")
+                    + " promotions en " + stats.get("dureeMs") + " ms");
         } catch (Exception e) {
             // Log the exception details
             System.err.println("Error in suggestPromotionsNow: " + e.getClass().getName());
@@ -210,5 +227,9 @@ public class PromotionController {
                     .body("Erreur lors de la génération des suggestions: " + e.toString());
         }
     }
-}
 
+    @GetMapping("/suggest-now/stats")
+    public ResponseEntity<Map<String, Object>> getSuggestionJobStatistics() {
+        return ResponseEntity.ok(promotionService.getSuggestionJobStatistics());
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.usermanagementbackend.controller;
 
 import com.example.usermanagementbackend.entity.MouvementStock;
+import com.example.usermanagementbackend.service.StockReservationService;
 import com.example.usermanagementbackend.service.StockService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,6 +9,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/stock")
@@ -17,6 +19,7 @@ import java.util.List;
 public class StockController {
 
     private final StockService stockService;
+    private final StockReservationService stockReservationService;
 
     @GetMapping("/{id}/verifier")
     public ResponseEntity<String> verifierStock(@PathVariable Long id) {
@@ -82,4 +85,9 @@ public class StockController {
             return ResponseEntity.status(500).body(List.of());
         }
     }
+
+    @GetMapping("/reservations/stats")
+    public ResponseEntity<Map<String, Object>> getReservationStats() {
+        return ResponseEntity.ok(stockReservationService.statistiques());
+    }
 }
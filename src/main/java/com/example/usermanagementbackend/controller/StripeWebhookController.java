@@ -0,0 +1,42 @@
+package com.example.usermanagementbackend.controller;
+
+import com.example.usermanagementbackend.service.StripeWebhookService;
+import com.google.gson.JsonParseException;
+import com.stripe.exception.SignatureVerificationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/transactions/webhook")
+public class StripeWebhookController {
+
+    private final StripeWebhookService stripeWebhookService;
+
+    public StripeWebhookController(StripeWebhookService stripeWebhookService) {
+        this.stripeWebhookService = stripeWebhookService;
+    }
+
+    // Acquittement immédiat : le règlement est fait par les workers à partir de la boîte de réception
+    @PostMapping("/stripe")
+    public ResponseEntity<?> recevoir(@RequestBody String payload,
+                                      @RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+        try {
+            boolean nouveau = stripeWebhookService.recevoir(payload, signature);
+            return ResponseEntity.ok(Map.of("received", true, "duplicate", !nouveau));
+        } catch (SignatureVerificationException | JsonParseException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Invalid webhook: " + e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/stripe/stats")
+    public ResponseEntity<Map<String, Object>> statistiques() {
+        return ResponseEntity.ok(stripeWebhookService.statistiques());
+    }
+}
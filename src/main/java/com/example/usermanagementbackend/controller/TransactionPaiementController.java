@@ -1,11 +1,7 @@
 package com.example.usermanagementbackend.controller;
 
-import com.example.usermanagementbackend.entity.Commande;
-import com.example.usermanagementbackend.entity.Facture;
-import com.example.usermanagementbackend.entity.LigneFacture;
 import com.example.usermanagementbackend.entity.TransactionPaiement;
-import com.example.usermanagementbackend.service.CommandeService;
-import com.example.usermanagementbackend.service.FactureService;
+import com.example.usermanagementbackend.service.ReglementPaiementService;
 import com.example.usermanagementbackend.service.TransactionPaiementService;
 import com.stripe.Stripe;
 import com.stripe.model.PaymentIntent;
@@ -17,13 +13,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/transactions")
@@ -31,18 +24,15 @@ import java.util.stream.Collectors;
 public class TransactionPaiementController {
 
     private final TransactionPaiementService transactionPaiementService;
-    private final CommandeService commandeService;
-    private final FactureService factureService;
+    private final ReglementPaiementService reglementPaiementService;
 
     @Value("${stripe.secret.key}")
     private String stripeSecretKey;
 
     public TransactionPaiementController(TransactionPaiementService transactionPaiementService,
-                                         CommandeService commandeService,
-                                         FactureService factureService) {
+                                         ReglementPaiementService reglementPaiementService) {
         this.transactionPaiementService = transactionPaiementService;
-        this.commandeService = commandeService;
-        this.factureService = factureService;
+        this.reglementPaiementService = reglementPaiementService;
     }
 
     @PostConstruct
@@ -132,101 +122,7 @@ public class TransactionPaiementController {
             }
 
             System.out.println("Updating transaction " + id + " to status: " + status);
-            TransactionPaiement transaction = transactionPaiementService.getTransactionById(id);
-            transaction.setPaymentStatus(status);
-            TransactionPaiement updatedTransaction = transactionPaiementService.updateTransactionStatus(id, status);
-
-            if ("succeeded".equalsIgnoreCase(status)) {
-                Set<Commande> commandes = transaction.getCommandes();
-                System.out.println("Transaction succeeded, processing " + commandes.size() + " commandes");
-
-                // Update all commandes to PAID and validate data
-                for (Commande commande : commandes) {
-                    System.out.println("Updating commande " + commande.getId() + " to PAID");
-                    commande.setStatus(Commande.OrderStatus.PAID);
-
-                    // Validate Commande data
-                    if (commande.getTelephone() == null || commande.getTelephone().trim().isEmpty()) {
-                        System.out.println("Commande " + commande.getId() + " has no telephone, setting default");
-                        commande.setTelephone("N/A");
-                    }
-                    if (commande.getGouvernement() == null || commande.getGouvernement().trim().isEmpty()) {
-                        System.out.println("Commande " + commande.getId() + " has no gouvernement, setting default");
-                        commande.setGouvernement("N/A");
-                    }
-                    if (commande.getAdresse() == null || commande.getAdresse().trim().isEmpty()) {
-                        System.out.println("Commande " + commande.getId() + " has no adresse, setting default");
-                        commande.setAdresse("N/A");
-                    }
-                    if (commande.getTotal() == null || commande.getTotal() <= 0) {
-                        System.out.println("Commande " + commande.getId() + " has invalid total: " + commande.getTotal());
-                        throw new IllegalStateException("Commande " + commande.getId() + " has invalid total: " + commande.getTotal());
-                    }
-                    if (commande.getUser() == null) {
-                        System.out.println("Commande " + commande.getId() + " has no user associated");
-                        throw new IllegalStateException("Commande " + commande.getId() + " has no user associated");
-                    }
-                    if (commande.getUser().getNom() == null || commande.getUser().getNom().trim().isEmpty()) {
-                        System.out.println("User for commande " + commande.getId() + " has no nom, setting default");
-                        commande.getUser().setNom("N/A");
-                    }
-                    if (commande.getUser().getEmail() == null || commande.getUser().getEmail().trim().isEmpty()) {
-                        System.out.println("User for commande " + commande.getId() + " has no email, setting default");
-                        commande.getUser().setEmail("N/A");
-                    }
-                    if (commande.getUser().getNumeroDeTelephone() == null || commande.getUser().getNumeroDeTelephone().trim().isEmpty()) {
-                        System.out.println("User for commande " + commande.getId() + " has no numeroDeTelephone, setting default");
-                        commande.getUser().setNumeroDeTelephone("N/A");
-                    }
-
-                    commandeService.saveCommande(commande);
-                }
-
-                // Create a single facture for the transaction
-                System.out.println("Creating a single facture for transaction " + id);
-                Facture facture = new Facture();
-                // Use the first commande for basic details
-                Commande firstCommande = commandes.iterator().next();
-                facture.setCommande(firstCommande);
-                // Sum the totals of all commandes
-                double totalMontant = commandes.stream()
-                        .mapToDouble(commande -> commande.getTotal() != null ? commande.getTotal() : 0.0)
-                        .sum();
-                facture.setMontantTotal(totalMontant);
-                facture.setDateFacture(LocalDate.now());
-                facture.setNumeroFacture("FACT-TRANS-" + id + "-" + System.currentTimeMillis());
-                facture.setUser(firstCommande.getUser());
-
-                // Aggregate all lignesCommande from all commandes into one facture
-                List<LigneFacture> allLignesFacture = commandes.stream()
-                        .flatMap(commande -> {
-                            if (commande.getLignesCommande() == null || commande.getLignesCommande().isEmpty()) {
-                                System.out.println("Commande " + commande.getId() + " has no lignesCommande");
-                                throw new IllegalStateException("Commande " + commande.getId() + " has no lignesCommande");
-                            }
-                            return commande.getLignesCommande().stream();
-                        })
-                        .map(ligneCommande -> {
-                            if (ligneCommande.getProduit() == null) {
-                                throw new IllegalStateException("LigneCommande in commande has no produit");
-                            }
-                            if (ligneCommande.getTotal() == null || ligneCommande.getTotal() <= 0) {
-                                throw new IllegalStateException("LigneCommande has invalid total: " + ligneCommande.getTotal());
-                            }
-                            LigneFacture ligneFacture = new LigneFacture();
-                            ligneFacture.setProduit(ligneCommande.getProduit());
-                            ligneFacture.setQte(ligneCommande.getQte() != null ? ligneCommande.getQte() : 0);
-                            ligneFacture.setPrixUnitaire(ligneCommande.getPrixUnitaire() != null ? ligneCommande.getPrixUnitaire() : 0.0);
-                            ligneFacture.setTotal(ligneCommande.getTotal());
-                            ligneFacture.setTtc(ligneCommande.getTtc() != null ? ligneCommande.getTtc() : ligneCommande.getTotal());
-                            return ligneFacture;
-                        })
-                        .collect(Collectors.toList());
-                facture.setLignesFacture(allLignesFacture);
-
-                Facture savedFacture = factureService.saveFacture(facture);
-                System.out.println("Facture created with ID: " + savedFacture.getId() + " for transaction " + id);
-            }
+            TransactionPaiement updatedTransaction = reglementPaiementService.reglerTransaction(id, status);
 
             return ResponseEntity.ok(updatedTransaction);
         } catch (RuntimeException e) {
@@ -242,6 +138,22 @@ public class TransactionPaiementController {
         }
     }
 
+    // Confirmation par paymentIntentId : rejouable sans effet de bord (une seule facture par paiement)
+    @PutMapping("/payment-intent/{paymentIntentId}/status")
+    public ResponseEntity<?> updateStatusByPaymentIntent(@PathVariable String paymentIntentId, @RequestBody Map<String, String> request) {
+        try {
+            String status = request.get("status");
+            if (status == null || status.trim().isEmpty()) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Status is required"));
+            }
+            return ResponseEntity.ok(reglementPaiementService.reglerPaymentIntent(paymentIntentId, status));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getTransactionById(@PathVariable Long id) {
         try {
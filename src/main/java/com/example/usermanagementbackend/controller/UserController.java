@@ -2,23 +2,22 @@ package com.example.usermanagementbackend.controller;
 
 import com.example.usermanagementbackend.dto.UserDTO;
 import com.example.usermanagementbackend.entity.User;
+import com.example.usermanagementbackend.service.BlobStore;
+import com.example.usermanagementbackend.service.FichierStreamingService;
 import com.example.usermanagementbackend.service.UserService;
 import jakarta.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/users")
@@ -29,7 +28,11 @@ public class UserController {
     private UserService userService;
 
     @Autowired
-    private Path fileStorageLocation;
+    @Qualifier("uploadsBlobStore")
+    private BlobStore uploadsBlobStore;
+
+    @Autowired
+    private FichierStreamingService fichierStreamingService;
 
     @PostMapping("/register")
     public ResponseEntity<?> registerUser(@RequestBody UserDTO userDTO) {
@@ -48,8 +51,12 @@ public class UserController {
             return ResponseEntity.status(404).body("Utilisateur non trouvé");
         }
 
-        User updatedUser = userService.updateUser(id, user);
-        return ResponseEntity.ok(updatedUser);
+        try {
+            User updatedUser = userService.updateUser(id, user);
+            return ResponseEntity.ok(updatedUser);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @GetMapping("/getByEmail")
@@ -183,22 +190,29 @@ public class UserController {
                 return ResponseEntity.badRequest().body("Le fichier est trop volumineux (5MB maximum)");
             }
 
-            // Génération d'un nom de fichier unique
-            String fileName = UUID.randomUUID().toString() + "_" + file.getOriginalFilename();
-
-            // Sauvegarde du fichier
-            Path targetLocation = fileStorageLocation.resolve(fileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-
             // Mise à jour de l'utilisateur avec le nom du fichier
             Optional<User> userOpt = userService.getUserById(id);
             if (!userOpt.isPresent()) {
                 return ResponseEntity.notFound().build();
             }
 
+            // Stockage adressé par contenu : la clé (hash) sert de nom de fichier, une image identique n'est pas recopiée
+            String fileName = uploadsBlobStore.stocker(file.getInputStream(), BlobStore.extension(file.getOriginalFilename()));
+
             User user = userOpt.get();
+            String anciennePhoto = user.getPhoto();
             user.setPhoto(fileName);
-            userService.saveUserDirect(user);
+            try {
+                userService.saveUserDirect(user);
+            } catch (RuntimeException e) {
+                // Aucune ligne ne référence le nouveau blob : sa référence est rendue
+                uploadsBlobStore.liberer(fileName);
+                throw e;
+            }
+            // Toujours libérée, même identique : stocker() a pris une nouvelle référence
+            if (anciennePhoto != null) {
+                uploadsBlobStore.liberer(anciennePhoto);
+            }
 
             return ResponseEntity.ok(fileName);
         } catch (IOException ex) {
@@ -207,22 +221,8 @@ public class UserController {
     }
 
     @GetMapping("/photo/{filename:.+}")
-    public ResponseEntity<UrlResource> getPhoto(@PathVariable String filename) {
-        try {
-            Path file = fileStorageLocation.resolve(filename).normalize();
-            UrlResource resource = new UrlResource(file.toUri());
-
-            if (resource.exists()) {
-                return ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_JPEG)
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (IOException ex) {
-            return ResponseEntity.notFound().build();
-        }
+    public ResponseEntity<?> getPhoto(@PathVariable String filename) {
+        return fichierStreamingService.servir(uploadsBlobStore.chemin(filename), filename, false, CacheControl.maxAge(1, TimeUnit.HOURS));
     }
     @GetMapping("/ping")
     public ResponseEntity<String> ping() {
@@ -0,0 +1,31 @@
+package com.example.usermanagementbackend.dto;
+
+import com.example.usermanagementbackend.entity.Commande;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Ligne de liste des commandes, projetée directement par JPQL (sans lignes ni produits)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommandeResumeDTO {
+    private Long id;
+    private String clientNom;
+    private Double total;
+    private LocalDate dateCreation;
+    private String status;
+    private String adresse;
+    private String telephone;
+    private Long livreurId;
+    private Long userId;
+    private Integer nombreLignes;
+
+    public CommandeResumeDTO(Long id, String clientNom, Double total, LocalDate dateCreation, Commande.OrderStatus status,
+                             String adresse, String telephone, Long livreurId, Long userId, Integer nombreLignes) {
+        this(id, clientNom, total, dateCreation, status != null ? status.name() : null,
+                adresse, telephone, livreurId, userId, nombreLignes);
+    }
+}
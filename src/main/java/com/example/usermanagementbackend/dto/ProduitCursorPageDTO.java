@@ -0,0 +1,18 @@
+package com.example.usermanagementbackend.dto;
+
+import com.example.usermanagementbackend.entity.Produit;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProduitCursorPageDTO {
+    private List<Produit> content;
+    private String nextCursor;
+    private boolean hasNext;
+    private Long totalElements; // null si le total n'a pas été demandé
+}
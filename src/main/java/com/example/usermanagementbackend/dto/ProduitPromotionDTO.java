@@ -0,0 +1,22 @@
+package com.example.usermanagementbackend.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProduitPromotionDTO {
+    private Long id;
+    private String nom;
+    private double prix; // Prix initial
+    @JsonProperty("prix_reduit")
+    private double prixReduit;
+    private String devise;
+    @JsonProperty("date_expiration")
+    private Date dateExpiration;
+}
@@ -0,0 +1,21 @@
+package com.example.usermanagementbackend.dto;
+
+import com.example.usermanagementbackend.entity.Produit;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProduitSearchResultDTO {
+    private List<Produit> content;
+    private int page;
+    private int size;
+    private long totalElements;
+    private Map<String, Long> facetteCategories;
+    private Map<String, Long> facettePrix;
+}
@@ -0,0 +1,56 @@
+package com.example.usermanagementbackend.dto;
+
+import com.example.usermanagementbackend.entity.Produit;
+import com.example.usermanagementbackend.entity.Promotion;
+import com.example.usermanagementbackend.enums.Category;
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.util.Date;
+import java.util.List;
+
+// Instantané immuable d'une promotion active et de ses produits, construit par PromotionEngine et partagé entre requêtes
+public record PromotionActiveDTO(Integer id,
+                                 String nom,
+                                 double pourcentageReduction,
+                                 @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd") Date dateDebut,
+                                 @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd") Date dateFin,
+                                 String conditionPromotion,
+                                 boolean active,
+                                 List<ProduitLie> produits) {
+
+    public record ProduitLie(Long id, String nom, String description, double prix, String devise,
+                             Category category, String image,
+                             @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd") Date dateExpiration) {
+
+        @Override
+        public Date dateExpiration() {
+            return copie(dateExpiration);
+        }
+
+        static ProduitLie depuis(Produit produit) {
+            return new ProduitLie(produit.getId(), produit.getNom(), produit.getDescription(), produit.getPrix(),
+                    produit.getDevise(), produit.getCategory(), produit.getImage(), copie(produit.getDateExpiration()));
+        }
+    }
+
+    // Les Date sont copiées : l'instantané ne partage aucun objet modifiable avec les entités
+    public static PromotionActiveDTO depuis(Promotion promotion) {
+        return new PromotionActiveDTO(promotion.getId(), promotion.getNom(), promotion.getPourcentageReduction(),
+                copie(promotion.getDateDebut()), copie(promotion.getDateFin()), promotion.getConditionPromotion(),
+                promotion.isActive(), promotion.getProduits().stream().map(ProduitLie::depuis).toList());
+    }
+
+    @Override
+    public Date dateDebut() {
+        return copie(dateDebut);
+    }
+
+    @Override
+    public Date dateFin() {
+        return copie(dateFin);
+    }
+
+    private static Date copie(Date date) {
+        return date != null ? new Date(date.getTime()) : null;
+    }
+}
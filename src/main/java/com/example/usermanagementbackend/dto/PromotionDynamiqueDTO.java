@@ -0,0 +1,31 @@
+package com.example.usermanagementbackend.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Vue à plat de /promotions/dynamic : pas de graphe d'entités, pas de listes de promotions par produit
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PromotionDynamiqueDTO {
+    private Integer id;
+    private String nom;
+    @JsonProperty("pourcentage_reduction")
+    private double pourcentageReduction;
+    @JsonProperty("date_debut")
+    private Date dateDebut;
+    @JsonProperty("date_fin")
+    private Date dateFin;
+    @JsonProperty("condition_promotion")
+    private String conditionPromotion;
+    private boolean active;
+    @JsonProperty("date_activation_prevue")
+    private String dateActivationPrevue;
+    private List<ProduitPromotionDTO> produits = new ArrayList<>();
+}
@@ -0,0 +1,49 @@
+package com.example.usermanagementbackend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Point de reprise d'un traitement par lots : dernier identifiant validé et compteurs de l'exécution.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "batch_checkpoint")
+public class BatchCheckpoint {
+
+    public static final String EN_COURS = "EN_COURS";
+    public static final String TERMINE = "TERMINE";
+
+    @Id
+    @Column(name = "job_name", length = 100)
+    private String jobName;
+
+    @Column(name = "date_execution")
+    private LocalDate dateExecution;
+
+    @Column(name = "dernier_id")
+    private Long dernierId = 0L;
+
+    private String statut;
+
+    private long elementsLus;
+    private long elementsEcrits;
+    private long elementsIgnores;
+
+    @Column(name = "date_debut")
+    private LocalDateTime dateDebut;
+
+    @Column(name = "date_fin")
+    private LocalDateTime dateFin;
+
+    public BatchCheckpoint(String jobName) {
+        this.jobName = jobName;
+    }
+}
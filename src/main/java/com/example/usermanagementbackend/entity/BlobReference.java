@@ -0,0 +1,41 @@
+package com.example.usermanagementbackend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Compteur de références d'un fichier du stockage adressé par contenu (ShardedBlobStore).
+ * À zéro, le fichier n'est supprimé qu'après le délai de grâce, par le balayage.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "blob_reference", uniqueConstraints = @UniqueConstraint(name = "uk_blob_reference", columnNames = {"espace", "cle"}))
+public class BlobReference {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 30)
+    private String espace;
+
+    @Column(nullable = false, length = 100)
+    private String cle;
+
+    @Column(name = "reference_count", nullable = false)
+    private int nombreReferences;
+
+    private long taille;
+
+    @Column(name = "cree_le")
+    private LocalDateTime creeLe;
+
+    @Column(name = "libere_le")
+    private LocalDateTime libereLe;
+}
@@ -0,0 +1,48 @@
+package com.example.usermanagementbackend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Boîte de réception des webhooks Stripe : événement brut tel que reçu, unique par identifiant Stripe,
+ * puis état de traitement renseigné par les workers.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "evenement_stripe", uniqueConstraints = @UniqueConstraint(name = "uk_evenement_stripe_event", columnNames = "event_id"))
+public class EvenementStripe {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "event_id", nullable = false, length = 100)
+    private String eventId;
+
+    @Column(length = 100)
+    private String type;
+
+    @Column(name = "payment_intent_id")
+    private String paymentIntentId;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT", nullable = false)
+    private String payload;
+
+    @Column(name = "recu_le", nullable = false)
+    private LocalDateTime recuLe;
+
+    @Column(name = "traite_le")
+    private LocalDateTime traiteLe;
+
+    private int tentatives;
+
+    @Column(length = 1000)
+    private String erreur;
+}
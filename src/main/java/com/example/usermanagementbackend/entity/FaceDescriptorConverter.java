@@ -0,0 +1,48 @@
+package com.example.usermanagementbackend.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Stocke un descripteur facial sous forme binaire : 1 octet de version suivi de
+ * 128 float32 little-endian (513 octets), décodés sans passer par une chaîne.
+ */
+@Converter
+public class FaceDescriptorConverter implements AttributeConverter<float[], byte[]> {
+
+    public static final byte VERSION = 1;
+    public static final int DIMENSION = 128;
+    public static final int TAILLE = 1 + DIMENSION * Float.BYTES;
+
+    @Override
+    public byte[] convertToDatabaseColumn(float[] descripteur) {
+        if (descripteur == null) return null;
+        if (descripteur.length != DIMENSION) {
+            throw new IllegalArgumentException("Le descripteur facial doit contenir " + DIMENSION + " valeurs");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(TAILLE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(VERSION);
+        buffer.asFloatBuffer().put(descripteur);
+        return buffer.array();
+    }
+
+    @Override
+    public float[] convertToEntityAttribute(byte[] donnees) {
+        if (donnees == null) return null;
+        if (donnees.length != TAILLE || donnees[0] != VERSION) {
+            throw new IllegalArgumentException("Format binaire de descripteur facial non supporté");
+        }
+
+        float[] descripteur = new float[DIMENSION];
+        ByteBuffer.wrap(donnees, 1, DIMENSION * Float.BYTES)
+                .slice()
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(descripteur);
+        return descripteur;
+    }
+}
@@ -1,11 +1,13 @@
 package com.example.usermanagementbackend.entity;
 
+import com.example.usermanagementbackend.enums.StatutPdf;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
@@ -27,6 +29,21 @@ public class Facture {
     private LocalDate dateFacture;
     private String numeroFacture;
 
+    // Rendu PDF asynchrone (FacturePdfRenderer)
+    @Enumerated(EnumType.STRING)
+    @Column(name = "statut_pdf", length = 20)
+    private StatutPdf statutPdf;
+
+    @Column(name = "pdf_genere_le")
+    private LocalDateTime pdfGenereLe;
+
+    @Column(name = "erreur_pdf", length = 500)
+    private String erreurPdf;
+
+    // Clé du PDF dans le stockage des factures (null : ancien fichier invoice_<id>.pdf)
+    @Column(name = "pdf_cle", length = 100)
+    private String pdfCle;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     @JsonIgnoreProperties({"commandes", "factures"})
@@ -1,6 +1,7 @@
 package com.example.usermanagementbackend.entity;
 
 import com.example.usermanagementbackend.enums.Category;
+import com.example.usermanagementbackend.service.PromotionDynamicListener;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -13,6 +14,15 @@ import java.util.Date;
 import java.util.List;
 
 @Entity
+@EntityListeners(PromotionDynamicListener.class)
+@Table(indexes = {
+        // Meilleures ventes en stock : parcours de l'index par sales_count, filtre sur stock sans tri
+        @Index(name = "idx_produit_sales_stock", columnList = "sales_count, stock"),
+        @Index(name = "idx_produit_category_sales", columnList = "category, sales_count"),
+        // Pagination par curseur : (clé de tri, id) via la clé primaire incluse dans l'index secondaire
+        @Index(name = "idx_produit_prix", columnList = "prix"),
+        @Index(name = "idx_produit_nom", columnList = "nom")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -45,6 +55,11 @@ public class Produit {
     @Column(name = "sales_count", nullable = false, columnDefinition = "integer default 0")
     private Integer salesCount = 0;  // Initialize with default value
 
+    // Verrou optimiste : les écritures atomiques du stock (StockReservationService) l'incrémentent aussi
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
     @ManyToMany(mappedBy = "produits")
     @JsonBackReference
     private List<Promotion> promotions = new ArrayList<>();
@@ -1,5 +1,7 @@
 package com.example.usermanagementbackend.entity;
 
+import com.example.usermanagementbackend.service.PromotionDynamicListener;
+import com.example.usermanagementbackend.service.PromotionEngineListener;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -15,6 +17,7 @@ import java.util.Date;
 import java.util.List;
 
 @Entity
+@EntityListeners({PromotionEngineListener.class, PromotionDynamicListener.class})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -47,7 +50,9 @@ public class Promotion {
     @JoinTable(
             name = "promotion_produit",
             joinColumns = @JoinColumn(name = "promotion_id"),
-            inverseJoinColumns = @JoinColumn(name = "produit_id")
+            inverseJoinColumns = @JoinColumn(name = "produit_id"),
+            // Une remise ne peut être liée (et donc appliquée) qu'une fois par produit
+            uniqueConstraints = @UniqueConstraint(name = "uk_promotion_produit", columnNames = {"promotion_id", "produit_id"})
     )
     private List<Produit> produits = new ArrayList<>();
 
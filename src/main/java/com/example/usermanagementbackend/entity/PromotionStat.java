@@ -0,0 +1,35 @@
+package com.example.usermanagementbackend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * Agrégat des utilisations d'une promotion, tenu à jour à chaque application
+ * (voir PromotionStatRepository.incrementer) pour ne plus relire promotion_usage.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "promotion_stat")
+public class PromotionStat {
+
+    @Id
+    @Column(name = "promotion_id")
+    private Integer promotionId;
+
+    @Column(name = "usage_count", nullable = false)
+    private long usageCount;
+
+    @Column(name = "total_revenue_impact", nullable = false)
+    private double totalRevenueImpact;
+
+    @Column(name = "derniere_utilisation")
+    private Date derniereUtilisation;
+}
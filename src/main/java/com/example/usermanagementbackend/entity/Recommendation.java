@@ -5,6 +5,7 @@ import lombok.Data;
 import java.util.*;
 
 @Entity
+@Table(indexes = @Index(name = "idx_recommendation_user", columnList = "user_id"))
 @Data
 public class Recommendation {
     @Id
@@ -1,6 +1,7 @@
 package com.example.usermanagementbackend.entity;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
@@ -9,6 +10,7 @@ import com.example.usermanagementbackend.entity.Evenement;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -22,8 +24,20 @@ public class User {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Ancien format texte "[0.1, 0.2, ...]", migré vers faceEmbedding par FaceDescriptorMigration
     @Column(columnDefinition = "TEXT")
     private String faceDescriptor;
+
+    @JsonIgnore
+    @Convert(converter = FaceDescriptorConverter.class)
+    @Column(name = "face_descriptor_bin", columnDefinition = "VARBINARY(513)")
+    private float[] faceEmbedding;
+
+    // Descripteur texte reçu en JSON, pas encore validé
+    @Transient
+    @JsonIgnore
+    private String faceDescriptorSaisi;
+
     @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(name = "participations",
             joinColumns = @JoinColumn(name = "user_id"),
@@ -191,10 +205,29 @@ public class User {
     }
 
     public String getFaceDescriptor() {
-        return faceDescriptor;
+        return faceEmbedding != null ? Arrays.toString(faceEmbedding) : faceDescriptor;
     }
+    // Conservé tel quel : validé et converti en faceEmbedding par UserService avant l'enregistrement
     public void setFaceDescriptor(String faceDescriptor) {
-        this.faceDescriptor = faceDescriptor;
+        this.faceDescriptorSaisi = faceDescriptor;
+    }
+
+    @JsonIgnore
+    public String getFaceDescriptorSaisi() {
+        return faceDescriptorSaisi;
+    }
+
+    @JsonIgnore
+    public String getLegacyFaceDescriptor() {
+        return faceDescriptor;
+    }
+
+    public float[] getFaceEmbedding() {
+        return faceEmbedding;
+    }
+    public void setFaceEmbedding(float[] faceEmbedding) {
+        this.faceEmbedding = faceEmbedding;
+        this.faceDescriptor = null;
     }
 
     public String getPhoto() {
@@ -0,0 +1,8 @@
+package com.example.usermanagementbackend.enums;
+
+public enum StatutPdf {
+    EN_ATTENTE,  // Rendu planifié
+    EN_COURS,
+    GENERE,
+    ECHEC
+}
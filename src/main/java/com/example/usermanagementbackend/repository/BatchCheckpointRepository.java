@@ -0,0 +1,7 @@
+package com.example.usermanagementbackend.repository;
+
+import com.example.usermanagementbackend.entity.BatchCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface BatchCheckpointRepository extends JpaRepository<BatchCheckpoint, String> {
+}
@@ -0,0 +1,20 @@
+package com.example.usermanagementbackend.repository;
+
+import com.example.usermanagementbackend.entity.BlobReference;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface BlobReferenceRepository extends JpaRepository<BlobReference, Long> {
+
+    @Query("SELECT b.cle FROM BlobReference b WHERE b.espace = :espace AND b.nombreReferences <= 0 AND b.libereLe < :avant ORDER BY b.id")
+    List<String> findClesLiberees(@Param("espace") String espace, @Param("avant") LocalDateTime avant, Pageable pageable);
+
+    boolean existsByEspaceAndCle(String espace, String cle);
+}
@@ -1,13 +1,22 @@
 package com.example.usermanagementbackend.repository;
 
+import com.example.usermanagementbackend.dto.CommandeResumeDTO;
 import com.example.usermanagementbackend.entity.Commande;
 import com.example.usermanagementbackend.entity.Commande.OrderStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,4 +43,36 @@ public interface CommandeRepository extends JpaRepository<Commande, Long> {
     List<Commande> findByUserIdAndStatusInWithLignesAndProduits(@Param("userId") Long userId,
                                                                 @Param("status1") OrderStatus status1,
                                                                 @Param("status2") OrderStatus status2);
-}
\ No newline at end of file
+
+    // Pagination en deux temps : la page de commandes (utilisateur joint, relation to-one) puis
+    // lignes et produits des seules commandes de la page, sans produit cartésien ni dédoublonnage en mémoire
+    @EntityGraph(attributePaths = "user")
+    @Query(value = "SELECT c FROM Commande c WHERE (:status IS NULL OR c.status = :status) AND (:userId IS NULL OR c.user.id = :userId)",
+            countQuery = "SELECT COUNT(c) FROM Commande c WHERE (:status IS NULL OR c.status = :status) AND (:userId IS NULL OR c.user.id = :userId)")
+    Page<Commande> findPage(@Param("status") OrderStatus status, @Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT DISTINCT c FROM Commande c LEFT JOIN FETCH c.lignesCommande l LEFT JOIN FETCH l.produit WHERE c.id IN :ids")
+    List<Commande> findWithLignesAndProduitsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "SELECT new com.example.usermanagementbackend.dto.CommandeResumeDTO(c.id, c.clientNom, c.total, c.dateCreation, " +
+            "c.status, c.adresse, c.telephone, c.livreurId, c.user.id, SIZE(c.lignesCommande)) FROM Commande c " +
+            "WHERE (:status IS NULL OR c.status = :status) AND (:userId IS NULL OR c.user.id = :userId)",
+            countQuery = "SELECT COUNT(c) FROM Commande c WHERE (:status IS NULL OR c.status = :status) AND (:userId IS NULL OR c.user.id = :userId)")
+    Page<CommandeResumeDTO> findResumes(@Param("status") OrderStatus status, @Param("userId") Long userId, Pageable pageable);
+
+    // Commandes d'une transaction avec utilisateur, lignes et produits, en lecture seule : le règlement
+    // les met à jour par un UPDATE ensembliste, sans dirty checking
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT DISTINCT c FROM Commande c JOIN c.transactions t LEFT JOIN FETCH c.lignesCommande l " +
+            "LEFT JOIN FETCH l.produit LEFT JOIN FETCH c.user WHERE t.id = :transactionId")
+    List<Commande> findForReglement(@Param("transactionId") Long transactionId);
+
+    @Modifying
+    @Query("UPDATE Commande c SET c.status = :paye, " +
+            "c.telephone = CASE WHEN TRIM(COALESCE(c.telephone, '')) = '' THEN 'N/A' ELSE c.telephone END, " +
+            "c.gouvernement = CASE WHEN TRIM(COALESCE(c.gouvernement, '')) = '' THEN 'N/A' ELSE c.gouvernement END, " +
+            "c.adresse = CASE WHEN TRIM(COALESCE(c.adresse, '')) = '' THEN 'N/A' ELSE c.adresse END " +
+            "WHERE c.id IN :ids AND c.status IN :depuis")
+    int marquerPayees(@Param("ids") Collection<Long> ids, @Param("paye") OrderStatus paye,
+                      @Param("depuis") Collection<OrderStatus> depuis);
+}
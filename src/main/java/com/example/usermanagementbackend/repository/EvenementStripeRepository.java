@@ -0,0 +1,31 @@
+package com.example.usermanagementbackend.repository;
+
+import com.example.usermanagementbackend.entity.EvenementStripe;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EvenementStripeRepository extends JpaRepository<EvenementStripe, Long> {
+
+    // Un seul worker traite un événement donné, les autres attendent puis le voient traité
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM EvenementStripe e WHERE e.id = :id")
+    Optional<EvenementStripe> findByIdForUpdate(@Param("id") Long id);
+
+    @Query("SELECT e.id FROM EvenementStripe e WHERE e.traiteLe IS NULL AND e.tentatives < :tentativesMax AND e.recuLe < :avant ORDER BY e.id")
+    List<Long> findIdsEnAttente(@Param("tentativesMax") int tentativesMax, @Param("avant") LocalDateTime avant, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE EvenementStripe e SET e.tentatives = e.tentatives + 1, e.erreur = :erreur WHERE e.id = :id")
+    int enregistrerEchec(@Param("id") Long id, @Param("erreur") String erreur);
+}
@@ -1,12 +1,18 @@
 package com.example.usermanagementbackend.repository;
 
 import com.example.usermanagementbackend.entity.Facture;
+import com.example.usermanagementbackend.enums.StatutPdf;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface FactureRepository extends JpaRepository<Facture, Long> {
@@ -19,4 +25,35 @@ public interface FactureRepository extends JpaRepository<Facture, Long> {
             "LEFT JOIN FETCH lf.produit p " +
             "WHERE t.id = :transactionId")
     List<Facture> findByTransactionId(@Param("transactionId") Long transactionId);
-}
\ No newline at end of file
+
+    // Tout ce que le rendu PDF affiche, en une requête
+    @Query("SELECT DISTINCT f FROM Facture f " +
+            "JOIN FETCH f.commande c " +
+            "LEFT JOIN FETCH f.user u " +
+            "LEFT JOIN FETCH f.lignesFacture lf " +
+            "LEFT JOIN FETCH lf.produit p " +
+            "WHERE f.id = :id")
+    Optional<Facture> findForRendu(@Param("id") Long id);
+
+    @Query("SELECT f.id FROM Facture f WHERE f.dateFacture BETWEEN :debut AND :fin ORDER BY f.id")
+    List<Long> findIdsByDateFactureBetween(@Param("debut") LocalDate debut, @Param("fin") LocalDate fin);
+
+    @Query("SELECT f.id FROM Facture f WHERE f.statutPdf IN :statuts ORDER BY f.id")
+    List<Long> findIdsByStatutPdfIn(@Param("statuts") Collection<StatutPdf> statuts);
+
+    @Modifying
+    @Query("UPDATE Facture f SET f.statutPdf = :statut, f.erreurPdf = :erreur WHERE f.id = :id")
+    int marquerPdf(@Param("id") Long id, @Param("statut") StatutPdf statut, @Param("erreur") String erreur);
+
+    @Modifying
+    @Query("UPDATE Facture f SET f.statutPdf = com.example.usermanagementbackend.enums.StatutPdf.GENERE, " +
+            "f.pdfGenereLe = :genereLe, f.erreurPdf = NULL, f.pdfCle = :cle WHERE f.id = :id")
+    int marquerPdfGenere(@Param("id") Long id, @Param("genereLe") LocalDateTime genereLe, @Param("cle") String cle);
+
+    @Query("SELECT f.pdfCle FROM Facture f WHERE f.id = :id")
+    String findPdfCle(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE Facture f SET f.statutPdf = :statut WHERE f.id IN :ids")
+    int marquerPdfPourIds(@Param("ids") Collection<Long> ids, @Param("statut") StatutPdf statut);
+}
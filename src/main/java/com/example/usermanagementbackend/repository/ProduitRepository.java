@@ -3,15 +3,21 @@ package com.example.usermanagementbackend.repository;
 
 import com.example.usermanagementbackend.entity.Produit;
 import com.example.usermanagementbackend.enums.Category;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public interface ProduitRepository extends JpaRepository<Produit, Long> { // Changement de Integer à Long
     Page<Produit> findByNomContaining(String nom, Pageable pageable);
@@ -29,6 +35,21 @@ public interface ProduitRepository extends JpaRepository<Produit, Long> { // Cha
             @Param("minStock") int minStock,
             Pageable pageable);
 
+    @Query("SELECT p FROM Produit p WHERE p.stock > :minStock AND p.id NOT IN :excludeIds ORDER BY p.salesCount DESC")
+    List<Produit> findTopByStockGreaterThanAndIdNotInOrderBySalesCountDesc(
+            @Param("minStock") int minStock,
+            @Param("excludeIds") Collection<Long> excludeIds,
+            Pageable pageable);
+
+    // Top-N sans requête COUNT : la limite est portée par le Pageable
+    @Query("SELECT p FROM Produit p ORDER BY p.salesCount DESC")
+    List<Produit> findTopOrderBySalesCountDesc(Pageable pageable);
+
+    // Parcours en flux (curseur JDBC) pour les grandes limites, à consommer dans une transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT p FROM Produit p ORDER BY p.salesCount DESC")
+    Stream<Produit> streamAllOrderBySalesCountDesc();
+
     @Query("SELECT p FROM Produit p WHERE p.category IN :categories AND p.stock > :minStock ORDER BY p.salesCount DESC")
     List<Produit> findByCategoryInAndStockGreaterThan(
             @Param("categories") Set<Category> categories,
@@ -41,18 +62,42 @@ public interface ProduitRepository extends JpaRepository<Produit, Long> { // Cha
             @Param("excludeIds") List<Long> excludeIds,
             @Param("minStock") int minStock,
             Pageable pageable);
-    // Recherche multi-critères
-    @Query("SELECT p FROM Produit p WHERE " +
-            "(:nom IS NULL OR p.nom LIKE %:nom%) AND " +
-            "(:category IS NULL OR p.category = :category) AND " +
-            "(:minPrice IS NULL OR p.prix >= :minPrice) AND " +
-            "(:maxPrice IS NULL OR p.prix <= :maxPrice) AND " +
-            "(:fournisseur IS NULL OR p.fournisseur LIKE %:fournisseur%)")
-    Page<Produit> searchProducts(
-            @Param("nom") String nom,
-            @Param("category") Category category,
-            @Param("minPrice") Double minPrice,
-            @Param("maxPrice") Double maxPrice,
-            @Param("fournisseur") String fournisseur,
-            Pageable pageable);
+    // Chargement par lots (keyset sur l'id) des champs indexés par ProduitSearchIndex
+    @Query("SELECT p.id, p.nom, p.fournisseur, p.category, p.prix, p.salesCount FROM Produit p WHERE p.id > :afterId ORDER BY p.id")
+    List<Object[]> findIndexationAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT p.id, p.nom, p.fournisseur, p.category, p.prix, p.salesCount FROM Produit p WHERE p.id IN :ids")
+    List<Object[]> findIndexationByIds(@Param("ids") Collection<Long> ids);
+
+    // Lecture par lots (keyset sur l'id) des candidats aux promotions suggérées : ventes faibles et expiration proche
+    @Query("SELECT p.id, p.nom FROM Produit p WHERE p.id > :afterId " +
+            "AND p.dateExpiration BETWEEN :debut AND :fin " +
+            "AND (p.salesCount IS NULL OR p.salesCount < :seuilVentes) ORDER BY p.id")
+    List<Object[]> findCandidatsSuggestionAfter(@Param("afterId") Long afterId,
+                                                @Param("debut") Date debut,
+                                                @Param("fin") Date fin,
+                                                @Param("seuilVentes") int seuilVentes,
+                                                Pageable pageable);
+
+    // Stock de plusieurs produits en une requête (validation d'une ou plusieurs commandes)
+    @Query("SELECT p.id, p.stock, p.nom FROM Produit p WHERE p.id IN :ids")
+    List<Object[]> findStocksByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Écritures atomiques du stock (StockReservationService), version incrémentée pour les verrous optimistes
+    @Modifying
+    @Query("UPDATE Produit p SET p.stock = p.stock - :qte, p.version = p.version + 1 WHERE p.id = :id AND p.stock >= :qte")
+    int decrementerStockSiDisponible(@Param("id") Long id, @Param("qte") int qte);
+
+    @Modifying
+    @Query("UPDATE Produit p SET p.stock = p.stock + :qte, p.version = p.version + 1 WHERE p.id = :id")
+    int incrementerStock(@Param("id") Long id, @Param("qte") int qte);
+
+    @Modifying
+    @Query("UPDATE Produit p SET p.stock = p.stock + p.quantiteReapprovisionnement, p.version = p.version + 1 " +
+            "WHERE p.id = :id AND p.autoReapprovisionnement = true AND p.stock + :enMemoire <= p.seuilMin")
+    int reapprovisionnerSiSousSeuil(@Param("id") Long id, @Param("enMemoire") int enMemoire);
+
+    @Modifying
+    @Query("UPDATE Produit p SET p.salesCount = COALESCE(p.salesCount, 0) + :ventes, p.version = p.version + 1 WHERE p.id = :id")
+    int incrementerVentes(@Param("id") Long id, @Param("ventes") int ventes);
 }
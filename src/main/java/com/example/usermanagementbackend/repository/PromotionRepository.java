@@ -2,7 +2,12 @@ package com.example.usermanagementbackend.repository;
 
 import com.example.usermanagementbackend.entity.Promotion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,4 +16,24 @@ public interface PromotionRepository extends JpaRepository<Promotion, Integer> {
     Optional<Promotion> findByNom(String nom);
     Optional<Promotion> findByConditionPromotionAndActiveTrue(String condition);
     List<Promotion> findByConditionPromotionInAndActiveTrue(List<String> conditionPromotions);
-}
\ No newline at end of file
+    List<Promotion> findByNomIn(Collection<String> noms);
+
+    // Chargement du moteur de promotions : promotions actives et leurs produits en une requête
+    @Query("SELECT DISTINCT p FROM Promotion p LEFT JOIN FETCH p.produits WHERE p.active = true")
+    List<Promotion> findActivesAvecProduits();
+
+    // Vue /promotions/dynamic : Black Friday (même inactive) et promotions actives des conditions suivies
+    @Query("SELECT DISTINCT p FROM Promotion p LEFT JOIN FETCH p.produits " +
+            "WHERE p.nom = :nomBlackFriday OR (p.active = true AND p.conditionPromotion IN :conditions) ORDER BY p.id")
+    List<Promotion> findPourVueDynamique(@Param("nomBlackFriday") String nomBlackFriday,
+                                         @Param("conditions") Collection<String> conditions);
+
+    // Opérations groupées : une instruction UPDATE, sans chargement des entités (listeners JPA non déclenchés)
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Promotion p SET p.active = :active WHERE p.id IN :ids AND p.active <> :active")
+    int updateActiveByIdIn(@Param("ids") Collection<Integer> ids, @Param("active") boolean active);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Promotion p SET p.active = false WHERE p.active = true AND p.dateFin < :date")
+    int desactiverExpireesAvant(@Param("date") Date date);
+}
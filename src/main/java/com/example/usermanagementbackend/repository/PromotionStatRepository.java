@@ -0,0 +1,50 @@
+package com.example.usermanagementbackend.repository;
+
+import com.example.usermanagementbackend.entity.PromotionStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+public interface PromotionStatRepository extends JpaRepository<PromotionStat, Integer> {
+
+    // Incrément atomique côté base (upsert MySQL) : pas de lecture préalable, pas de mise à jour perdue
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO promotion_stat (promotion_id, usage_count, total_revenue_impact, derniere_utilisation) " +
+            "VALUES (:promotionId, :nombre, :impact, :date) " +
+            "ON DUPLICATE KEY UPDATE usage_count = usage_count + VALUES(usage_count), " +
+            "total_revenue_impact = total_revenue_impact + VALUES(total_revenue_impact), " +
+            "derniere_utilisation = GREATEST(COALESCE(derniere_utilisation, VALUES(derniere_utilisation)), VALUES(derniere_utilisation))",
+            nativeQuery = true)
+    int incrementer(@Param("promotionId") Integer promotionId,
+                    @Param("nombre") long nombre,
+                    @Param("impact") double impact,
+                    @Param("date") Date date);
+
+    @Modifying
+    @Query(value = "DELETE FROM promotion_stat", nativeQuery = true)
+    int viderRollup();
+
+    // Reconstruction complète par un seul GROUP BY sur l'historique
+    @Modifying
+    @Query(value = "INSERT INTO promotion_stat (promotion_id, usage_count, total_revenue_impact, derniere_utilisation) " +
+            "SELECT promotion_id, COUNT(*), COALESCE(SUM(montant_initial - montant_apres_reduction), 0), MAX(date_application) " +
+            "FROM promotion_usage WHERE promotion_id IS NOT NULL GROUP BY promotion_id",
+            nativeQuery = true)
+    int reconstruireRollup();
+
+    // Promotions utilisées ou actives, avec leurs agrégats, en une requête
+    @Query("SELECT p.id, p.nom, COALESCE(s.usageCount, 0), COALESCE(s.totalRevenueImpact, 0) " +
+            "FROM Promotion p LEFT JOIN PromotionStat s ON s.promotionId = p.id " +
+            "WHERE p.active = true OR s.usageCount > 0 " +
+            "ORDER BY p.id")
+    List<Object[]> findAnalytics();
+
+    @Query("SELECT COALESCE(SUM(s.usageCount), 0) FROM PromotionStat s")
+    long sommeUtilisations();
+}
@@ -1,10 +1,21 @@
 package com.example.usermanagementbackend.repository;
 
 import com.example.usermanagementbackend.entity.Purchase;
+import com.example.usermanagementbackend.enums.Category;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.Set;
 
 public interface PurchaseRepository extends JpaRepository<Purchase, Long> {
     List<Purchase> findByUserId(Long userId);
-}
\ No newline at end of file
+
+    // Historique réduit aux identifiants, sans charger les achats ni leurs produits
+    @Query("SELECT DISTINCT pr.id FROM Purchase p JOIN p.produits pr WHERE p.userId = :userId")
+    List<Long> findProduitIdsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT DISTINCT pr.category FROM Purchase p JOIN p.produits pr WHERE p.userId = :userId AND pr.category IS NOT NULL")
+    Set<Category> findCategoriesByUserId(@Param("userId") Long userId);
+}
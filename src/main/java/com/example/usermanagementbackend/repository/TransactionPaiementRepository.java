@@ -1,9 +1,12 @@
 package com.example.usermanagementbackend.repository;
 
 import com.example.usermanagementbackend.entity.TransactionPaiement;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -24,4 +27,13 @@ public interface TransactionPaiementRepository extends JpaRepository<Transaction
     @EntityGraph(attributePaths = {"commandes"})
     @Query("SELECT t FROM TransactionPaiement t WHERE t.id = :id")
     Optional<TransactionPaiement> findByIdWithCommandes(Long id);
-}
\ No newline at end of file
+
+    // Règlement : verrou d'écriture sur la ligne, deux confirmations du même paiement sont sérialisées
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM TransactionPaiement t WHERE t.id = :id")
+    Optional<TransactionPaiement> findByIdForUpdate(@Param("id") Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM TransactionPaiement t WHERE t.paymentIntentId = :paymentIntentId")
+    Optional<TransactionPaiement> findByPaymentIntentIdForUpdate(@Param("paymentIntentId") String paymentIntentId);
+}
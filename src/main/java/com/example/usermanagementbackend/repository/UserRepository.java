@@ -1,7 +1,10 @@
 package com.example.usermanagementbackend.repository;
 
 import com.example.usermanagementbackend.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -16,4 +19,9 @@ public interface UserRepository extends JpaRepository<User, Long> {
     long countByRole(String role);
 
     List<User> findByNomContainingIgnoreCaseOrPrenomContainingIgnoreCaseOrEmailContainingIgnoreCase(String nom, String prenom, String email);
+
+    // Chargement par lots (keyset sur l'id) des descripteurs faciaux pour l'index en mémoire
+    @Query("SELECT u.id, u.faceEmbedding, u.faceDescriptor FROM User u " +
+            "WHERE (u.faceEmbedding IS NOT NULL OR u.faceDescriptor IS NOT NULL) AND u.id > :afterId ORDER BY u.id")
+    List<Object[]> findFaceDescriptorsAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
@@ -0,0 +1,33 @@
+package com.example.usermanagementbackend.scheduler;
+
+import com.example.usermanagementbackend.service.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+public class BlobSweeper {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobSweeper.class);
+
+    private final List<BlobStore> blobStores;
+
+    public BlobSweeper(List<BlobStore> blobStores) {
+        this.blobStores = blobStores;
+    }
+
+    // Fichiers sans référence, orphelins et temporaires abandonnés, puis dossiers vides
+    @Scheduled(fixedDelayString = "${blob.balayage-ms:3600000}", initialDelayString = "${blob.balayage-ms:3600000}")
+    public void balayer() {
+        for (BlobStore blobStore : blobStores) {
+            try {
+                logger.info("Balayage du stockage : {}", blobStore.balayer());
+            } catch (Exception e) {
+                logger.error("Échec du balayage du stockage: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.usermanagementbackend.scheduler;
+
+import com.example.usermanagementbackend.entity.FaceDescriptorConverter;
+import com.example.usermanagementbackend.service.FaceIndexService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Convertit par lots les descripteurs faciaux texte (colonne face_descriptor) vers le
+ * format binaire (face_descriptor_bin). Chaque lot est écrit en un seul batch JDBC et
+ * validé dans sa propre transaction : une interruption reprend simplement au prochain démarrage.
+ */
+@Service
+public class FaceDescriptorMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(FaceDescriptorMigration.class);
+    private static final int TAILLE_LOT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FaceDescriptorConverter converter = new FaceDescriptorConverter();
+
+    public FaceDescriptorMigration(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrerAuDemarrage() {
+        try {
+            int total = migrer();
+            if (total > 0) {
+                logger.info("Migration des descripteurs faciaux terminée : {} utilisateurs convertis", total);
+            }
+        } catch (Exception e) {
+            logger.error("Migration des descripteurs faciaux interrompue : {}", e.getMessage());
+        }
+    }
+
+    public int migrer() {
+        int total = 0;
+        long dernierId = 0L;
+        while (true) {
+            List<Map<String, Object>> lignes = jdbcTemplate.queryForList(
+                    "SELECT id, face_descriptor FROM users " +
+                            "WHERE face_descriptor IS NOT NULL AND face_descriptor_bin IS NULL AND id > ? " +
+                            "ORDER BY id LIMIT ?",
+                    dernierId, TAILLE_LOT);
+            if (lignes.isEmpty()) {
+                return total;
+            }
+
+            List<Object[]> conversions = new ArrayList<>(lignes.size());
+            for (Map<String, Object> ligne : lignes) {
+                long id = ((Number) ligne.get("id")).longValue();
+                dernierId = id;
+                try {
+                    float[] descripteur = FaceIndexService.parserDescripteur((String) ligne.get("face_descriptor"));
+                    conversions.add(new Object[]{converter.convertToDatabaseColumn(descripteur), id});
+                } catch (IllegalArgumentException e) {
+                    // Laissé en texte : l'index l'ignore déjà, inutile de bloquer la migration
+                    logger.warn("Descripteur facial non convertible pour l'utilisateur {} : {}", id, e.getMessage());
+                }
+            }
+
+            if (!conversions.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                        "UPDATE users SET face_descriptor_bin = ?, face_descriptor = NULL WHERE id = ?",
+                        conversions));
+                total += conversions.size();
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.usermanagementbackend.scheduler;
+
+import com.example.usermanagementbackend.entity.BatchCheckpoint;
+import com.example.usermanagementbackend.entity.Produit;
+import com.example.usermanagementbackend.entity.Promotion;
+import com.example.usermanagementbackend.repository.BatchCheckpointRepository;
+import com.example.usermanagementbackend.repository.ProduitRepository;
+import com.example.usermanagementbackend.repository.PromotionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Génération nocturne des promotions suggérées (ventes faibles + expiration proche), découpée en lots :
+ * lecture keyset des candidats → construction des promotions → écriture. Chaque lot est validé avec
+ * son point de reprise dans la même transaction ; après un arrêt brutal, l'exécution du jour reprend
+ * au dernier identifiant validé.
+ * <p>
+ * Une promotion par nom : les produits homonymes, dans un lot ou d'un lot à l'autre, sont rattachés à la même
+ * promotion suggérée.
+ */
+@Service
+public class PromotionSuggestionJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromotionSuggestionJob.class);
+
+    public static final String NOM_JOB = "suggestPromotions";
+    public static final String PREFIXE_NOM = "AI Suggested Promotion for ";
+    private static final int SEUIL_VENTES = 10;
+    private static final int JOURS_AVANT_EXPIRATION = 10;
+    private static final int DUREE_PROMOTION_JOURS = 7;
+    private static final double POURCENTAGE_REDUCTION = 45;
+    private static final String CONDITION = "EXPIRATION_AND_LOW_SALES";
+
+    private record Candidat(Long id, String nom) {
+    }
+
+    private final ProduitRepository produitRepository;
+    private final PromotionRepository promotionRepository;
+    private final BatchCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int tailleLot;
+
+    private final AtomicBoolean enCours = new AtomicBoolean(false);
+    private volatile Map<String, Object> derniereExecution = Map.of("statut", "JAMAIS_EXECUTE");
+
+    public PromotionSuggestionJob(ProduitRepository produitRepository,
+                                  PromotionRepository promotionRepository,
+                                  BatchCheckpointRepository checkpointRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${promotion.suggestion.taille-lot:200}") int tailleLot) {
+        this.produitRepository = produitRepository;
+        this.promotionRepository = promotionRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.tailleLot = tailleLot;
+    }
+
+    @Scheduled(cron = "0 0 0 * * ?")
+    public void executerNocturne() {
+        try {
+            executer();
+        } catch (Exception e) {
+            logger.error("Job {} interrompu : {}", NOM_JOB, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> executer() {
+        if (!enCours.compareAndSet(false, true)) {
+            throw new IllegalStateException("Le job " + NOM_JOB + " est déjà en cours d'exécution");
+        }
+        try {
+            return executerLots();
+        } finally {
+            enCours.set(false);
+        }
+    }
+
+    public Map<String, Object> statistiques() {
+        return derniereExecution;
+    }
+
+    private Map<String, Object> executerLots() {
+        long debut = System.currentTimeMillis();
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now(zone);
+        Date debutFenetre = Date.from(today.atStartOfDay(zone).toInstant());
+        Date finFenetre = Date.from(today.plusDays(JOURS_AVANT_EXPIRATION).atStartOfDay(zone).toInstant());
+
+        BatchCheckpoint checkpoint = demarrer(today);
+        long repriseDepuisId = checkpoint.getDernierId();
+        long dernierId = repriseDepuisId;
+        long lus = 0, ecrits = 0, ignores = 0, lots = 0;
+        logger.info("Job {} démarré à partir de l'id {}", NOM_JOB, dernierId);
+
+        while (true) {
+            // Lecture
+            List<Candidat> lot = produitRepository.findCandidatsSuggestionAfter(
+                            dernierId, debutFenetre, finFenetre, SEUIL_VENTES, PageRequest.of(0, tailleLot))
+                    .stream()
+                    .map(ligne -> new Candidat((Long) ligne[0], (String) ligne[1]))
+                    .toList();
+            if (lot.isEmpty()) {
+                break;
+            }
+            long idFinLot = lot.get(lot.size() - 1).id();
+
+            // Traitement
+            List<Promotion> promotions = traiter(lot, today, zone);
+
+            // Écriture + point de reprise, dans la même transaction
+            int ecritsLot;
+            try {
+                ecritsLot = ecrire(promotions, debutFenetre, idFinLot, lot.size(), 0);
+            } catch (Exception e) {
+                logger.warn("Lot jusqu'à l'id {} en échec ({}), reprise élément par élément", idFinLot, e.getMessage());
+                ecritsLot = ecrireUnParUn(promotions, debutFenetre);
+                int ignoresLot = promotions.size() - ecritsLot;
+                ignores += ignoresLot;
+                avancer(idFinLot, lot.size(), ecritsLot, ignoresLot);
+            }
+
+            lus += lot.size();
+            ecrits += ecritsLot;
+            lots++;
+            dernierId = idFinLot;
+        }
+
+        checkpoint = checkpointRepository.findById(NOM_JOB).orElse(checkpoint);
+        checkpoint.setStatut(BatchCheckpoint.TERMINE);
+        checkpoint.setDateFin(LocalDateTime.now());
+        checkpointRepository.save(checkpoint);
+
+        long duree = System.currentTimeMillis() - debut;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("statut", BatchCheckpoint.TERMINE);
+        stats.put("dateExecution", today.toString());
+        stats.put("repriseDepuisId", repriseDepuisId);
+        stats.put("lots", lots);
+        stats.put("elementsLus", lus);
+        stats.put("elementsEcrits", ecrits);
+        stats.put("elementsIgnores", ignores);
+        stats.put("totalEcritsDuJour", checkpoint.getElementsEcrits());
+        stats.put("dureeMs", duree);
+        stats.put("debitParSeconde", duree > 0 ? lus * 1000.0 / duree : (double) lus);
+        derniereExecution = stats;
+        logger.info("Job {} terminé : {}", NOM_JOB, stats);
+        return stats;
+    }
+
+    /**
+     * Reprend l'exécution du jour si elle a été interrompue, sinon en commence une nouvelle.
+     */
+    private BatchCheckpoint demarrer(LocalDate today) {
+        return transactionTemplate.execute(status -> {
+            BatchCheckpoint checkpoint = checkpointRepository.findById(NOM_JOB).orElseGet(() -> new BatchCheckpoint(NOM_JOB));
+            boolean reprise = BatchCheckpoint.EN_COURS.equals(checkpoint.getStatut()) && today.equals(checkpoint.getDateExecution());
+            if (!reprise) {
+                checkpoint.setDateExecution(today);
+                checkpoint.setDernierId(0L);
+                checkpoint.setElementsLus(0);
+                checkpoint.setElementsEcrits(0);
+                checkpoint.setElementsIgnores(0);
+                checkpoint.setDateDebut(LocalDateTime.now());
+                checkpoint.setDateFin(null);
+            }
+            checkpoint.setStatut(BatchCheckpoint.EN_COURS);
+            return checkpointRepository.save(checkpoint);
+        });
+    }
+
+    private List<Promotion> traiter(List<Candidat> lot, LocalDate today, ZoneId zone) {
+        Date dateDebut = new Date();
+        Date dateFin = Date.from(today.plusDays(DUREE_PROMOTION_JOURS).atStartOfDay(zone).toInstant());
+        // Produits homonymes du lot regroupés sous une seule promotion
+        Map<String, List<Long>> produitsParNom = new LinkedHashMap<>();
+        for (Candidat candidat : lot) {
+            produitsParNom.computeIfAbsent(PREFIXE_NOM + candidat.nom(), nom -> new ArrayList<>()).add(candidat.id());
+        }
+        List<Promotion> promotions = new ArrayList<>(produitsParNom.size());
+        produitsParNom.forEach((nom, produitIds) -> {
+            Promotion promo = new Promotion();
+            promo.setNom(nom);
+            promo.setPourcentageReduction(POURCENTAGE_REDUCTION);
+            promo.setConditionPromotion(CONDITION);
+            promo.setDateDebut(dateDebut);
+            promo.setDateFin(dateFin);
+            promo.setActive(true);
+            promo.setProduitIds(produitIds);
+            promotions.add(promo);
+        });
+        return promotions;
+    }
+
+    private int ecrire(List<Promotion> promotions, Date debutJour, long idFinLot, int lus, int ignores) {
+        Integer ecrits = transactionTemplate.execute(status -> {
+            // Une seule requête pour retrouver les promotions déjà suggérées du lot
+            Map<String, Promotion> existantes = promotionRepository.findByNomIn(
+                            promotions.stream().map(Promotion::getNom).collect(Collectors.toSet()))
+                    .stream()
+                    .collect(Collectors.toMap(Promotion::getNom, Function.identity(), (a, b) -> a));
+            List<Promotion> aEnregistrer = promotions.stream()
+                    .map(promo -> fusionner(existantes.get(promo.getNom()), promo, debutJour))
+                    .toList();
+            promotionRepository.saveAll(aEnregistrer);
+            avancerDansTransaction(idFinLot, lus, aEnregistrer.size(), ignores);
+            return aEnregistrer.size();
+        });
+        return ecrits != null ? ecrits : 0;
+    }
+
+    private int ecrireUnParUn(List<Promotion> promotions, Date debutJour) {
+        int ecrits = 0;
+        for (Promotion suggeree : promotions) {
+            // Copie neuve : l'id IDENTITY affecté avant le rollback du lot ne désigne aucune ligne
+            Promotion promo = copier(suggeree);
+            try {
+                // findByNomIn : tolère les doublons de nom laissés par les versions précédentes du job
+                transactionTemplate.executeWithoutResult(status -> promotionRepository.save(
+                        fusionner(promotionRepository.findByNomIn(List.of(promo.getNom())).stream().findFirst().orElse(null),
+                                promo, debutJour)));
+                ecrits++;
+            } catch (Exception e) {
+                logger.error("Promotion suggérée ignorée pour {} : {}", promo.getNom(), e.getMessage());
+            }
+        }
+        return ecrits;
+    }
+
+    private static Promotion copier(Promotion suggeree) {
+        Promotion copie = new Promotion();
+        copie.setNom(suggeree.getNom());
+        copie.setPourcentageReduction(suggeree.getPourcentageReduction());
+        copie.setConditionPromotion(suggeree.getConditionPromotion());
+        copie.setDateDebut(suggeree.getDateDebut());
+        copie.setDateFin(suggeree.getDateFin());
+        copie.setActive(suggeree.isActive());
+        copie.setProduitIds(suggeree.getProduitIds());
+        return copie;
+    }
+
+    private Promotion fusionner(Promotion existante, Promotion suggeree, Date debutJour) {
+        Promotion cible = existante != null ? existante : suggeree;
+        // Déjà écrite aujourd'hui (lot précédent, ou avant une reprise) : les produits homonymes s'ajoutent ;
+        // une suggestion d'un jour précédent est remplacée
+        boolean duJour = existante != null && CONDITION.equals(existante.getConditionPromotion())
+                && existante.getDateDebut() != null && !existante.getDateDebut().before(debutJour);
+        List<Produit> produits = duJour ? new ArrayList<>(existante.getProduits()) : new ArrayList<>();
+        for (Long produitId : suggeree.getProduitIds()) {
+            if (produits.stream().noneMatch(produit -> produitId.equals(produit.getId()))) {
+                produits.add(produitRepository.getReferenceById(produitId));
+            }
+        }
+        cible.setPourcentageReduction(suggeree.getPourcentageReduction());
+        cible.setConditionPromotion(suggeree.getConditionPromotion());
+        if (!duJour) {
+            cible.setDateDebut(suggeree.getDateDebut());
+        }
+        cible.setDateFin(suggeree.getDateFin());
+        cible.setActive(true);
+        cible.setProduits(produits);
+        return cible;
+    }
+
+    private void avancer(long idFinLot, int lus, int ecrits, int ignores) {
+        transactionTemplate.executeWithoutResult(status -> avancerDansTransaction(idFinLot, lus, ecrits, ignores));
+    }
+
+    private void avancerDansTransaction(long idFinLot, int lus, int ecrits, int ignores) {
+        BatchCheckpoint checkpoint = checkpointRepository.findById(NOM_JOB).orElseGet(() -> new BatchCheckpoint(NOM_JOB));
+        checkpoint.setDernierId(idFinLot);
+        checkpoint.setElementsLus(checkpoint.getElementsLus() + lus);
+        checkpoint.setElementsEcrits(checkpoint.getElementsEcrits() + ecrits);
+        checkpoint.setElementsIgnores(checkpoint.getElementsIgnores() + ignores);
+        checkpointRepository.save(checkpoint);
+    }
+}
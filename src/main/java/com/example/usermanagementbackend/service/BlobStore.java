@@ -0,0 +1,61 @@
+package com.example.usermanagementbackend.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stockage de fichiers par clé. La clé est un simple nom de fichier (sans dossier), utilisable tel quel
+ * dans les URL de téléchargement.
+ */
+public interface BlobStore {
+
+    /**
+     * Stocke le contenu et ajoute une référence ; un contenu déjà présent n'est pas recopié.
+     *
+     * @param extension extension sans point, peut être null
+     * @return la clé du fichier
+     */
+    String stocker(InputStream contenu, String extension) throws IOException;
+
+    default String stocker(byte[] contenu, String extension) throws IOException {
+        return stocker(new ByteArrayInputStream(contenu), extension);
+    }
+
+    /**
+     * Stocke le contenu sans référence, pour un fichier dont le propriétaire n'est pas encore connu (upload préalable
+     * à l'enregistrement). Sans {@link #retenir(String)} avant le délai de grâce, il est supprimé par le balayage.
+     */
+    String deposer(InputStream contenu, String extension) throws IOException;
+
+    /**
+     * Ajoute une référence à un fichier déjà stocké ; false si la clé ne désigne aucun fichier.
+     */
+    boolean retenir(String cle);
+
+    /**
+     * Chemin du fichier d'une clé, ou null si la clé n'est pas valide pour ce stockage.
+     */
+    Path chemin(String cle);
+
+    /**
+     * Retire une référence ; le fichier est supprimé par le balayage quand plus rien ne le référence.
+     */
+    void liberer(String cle);
+
+    /**
+     * Supprime les fichiers libérés et orphelins, puis les dossiers vides ; retourne les compteurs du passage.
+     */
+    Map<String, Object> balayer();
+
+    static String extension(String nomFichier) {
+        if (nomFichier == null || nomFichier.lastIndexOf('.') < 0) {
+            return null;
+        }
+        String extension = nomFichier.substring(nomFichier.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return extension.matches("[a-z0-9]{1,10}") ? extension : null;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.usermanagementbackend.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Modèle item-to-item de co-achat construit à partir des achats (purchase_produit) et des
+ * lignes de commande. Pour chaque produit on garde ses K meilleurs voisins (similarité cosinus
+ * des co-occurrences) dans des tableaux primitifs : recommander revient à lire K entrées par
+ * produit de l'historique. Reconstruit chaque nuit, mis à jour à chaque nouveau panier.
+ */
+@Component
+public class CoPurchaseModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoPurchaseModel.class);
+
+    public static final int K = 20;
+    // Au-delà, un panier (import B2B) n'apporte que du bruit et coûte O(n²) paires
+    private static final int TAILLE_MAX_PANIER = 50;
+
+    public record Voisins(long[] ids, float[] scores) {
+    }
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "co-purchase-model");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Compteurs bruts, modifiés uniquement sous le verrou de l'instance
+    private Map<Long, Map<Long, Integer>> coOccurrences = new HashMap<>();
+    private Map<Long, Integer> frequences = new HashMap<>();
+    // Vue servie aux lectures
+    private volatile ConcurrentHashMap<Long, Voisins> voisins = new ConcurrentHashMap<>();
+    private volatile boolean pret = false;
+
+    public CoPurchaseModel(EntityManager entityManager, TransactionTemplate transactionTemplate) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void construireAuDemarrage() {
+        executor.submit(this::reconstruireSansErreur);
+    }
+
+    @Scheduled(cron = "0 30 2 * * *")
+    public void reconstructionNocturne() {
+        executor.submit(this::reconstruireSansErreur);
+    }
+
+    @PreDestroy
+    public void arreter() {
+        executor.shutdownNow();
+    }
+
+    public boolean estPret() {
+        return pret;
+    }
+
+    public void reconstruire() {
+        long debut = System.currentTimeMillis();
+        Map<Long, Map<Long, Integer>> co = new HashMap<>();
+        Map<Long, Integer> freq = new HashMap<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            parcourirPaniers("SELECT p.id, pr.id FROM Purchase p JOIN p.produits pr ORDER BY p.id", co, freq);
+            parcourirPaniers("SELECT l.commande.id, l.produit.id FROM LigneCommande l " +
+                    "WHERE l.produit IS NOT NULL ORDER BY l.commande.id", co, freq);
+        });
+
+        ConcurrentHashMap<Long, Voisins> vue = new ConcurrentHashMap<>();
+        for (Map.Entry<Long, Map<Long, Integer>> entree : co.entrySet()) {
+            vue.put(entree.getKey(), topK(entree.getKey(), entree.getValue(), freq));
+        }
+
+        synchronized (this) {
+            coOccurrences = co;
+            frequences = freq;
+            voisins = vue;
+            pret = true;
+        }
+        logger.info("Modèle de co-achat construit : {} produits en {} ms", vue.size(), System.currentTimeMillis() - debut);
+    }
+
+    /**
+     * Intègre un nouveau panier après le commit de la transaction courante, hors du chemin de la requête.
+     */
+    public void enregistrerPanier(Collection<Long> produitIds) {
+        List<Long> panier = produitIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (panier.isEmpty()) return;
+
+        Runnable miseAJour = () -> executor.submit(() -> {
+            synchronized (this) {
+                ajouterPanier(panier, coOccurrences, frequences);
+                for (Long produitId : panier) {
+                    Map<Long, Integer> ligne = coOccurrences.get(produitId);
+                    if (ligne != null) {
+                        voisins.put(produitId, topK(produitId, ligne, frequences));
+                    }
+                }
+            }
+        });
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    miseAJour.run();
+                }
+            });
+        } else {
+            miseAJour.run();
+        }
+    }
+
+    /**
+     * Produits recommandés pour un historique, triés par score décroissant, historique exclu.
+     */
+    public List<Long> recommander(Collection<Long> historique, int limite) {
+        Set<Long> dejaAchetes = new HashSet<>(historique);
+        Map<Long, Float> scores = new HashMap<>();
+        for (Long produitId : dejaAchetes) {
+            Voisins v = voisins.get(produitId);
+            if (v == null) continue;
+            for (int i = 0; i < v.ids().length; i++) {
+                long voisin = v.ids()[i];
+                if (!dejaAchetes.contains(voisin)) {
+                    scores.merge(voisin, v.scores()[i], Float::sum);
+                }
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Float>comparingByValue().reversed())
+                .limit(limite)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private void reconstruireSansErreur() {
+        try {
+            reconstruire();
+        } catch (Exception e) {
+            logger.error("Échec de la construction du modèle de co-achat : {}", e.getMessage());
+        }
+    }
+
+    private void parcourirPaniers(String jpql, Map<Long, Map<Long, Integer>> co, Map<Long, Integer> freq) {
+        try (Stream<Object[]> lignes = entityManager.createQuery(jpql, Object[].class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, 1000)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()) {
+            Long panierCourant = null;
+            List<Long> panier = new ArrayList<>();
+            for (Iterator<Object[]> it = lignes.iterator(); it.hasNext(); ) {
+                Object[] ligne = it.next();
+                Long panierId = (Long) ligne[0];
+                if (!panierId.equals(panierCourant)) {
+                    ajouterPanier(panier, co, freq);
+                    panier.clear();
+                    panierCourant = panierId;
+                }
+                panier.add((Long) ligne[1]);
+            }
+            ajouterPanier(panier, co, freq);
+        }
+    }
+
+    private static void ajouterPanier(List<Long> panier, Map<Long, Map<Long, Integer>> co, Map<Long, Integer> freq) {
+        List<Long> produits = panier.stream().distinct().limit(TAILLE_MAX_PANIER).toList();
+        for (Long a : produits) {
+            freq.merge(a, 1, Integer::sum);
+            Map<Long, Integer> ligne = co.computeIfAbsent(a, id -> new HashMap<>());
+            for (Long b : produits) {
+                if (!a.equals(b)) {
+                    ligne.merge(b, 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private static Voisins topK(Long produitId, Map<Long, Integer> ligne, Map<Long, Integer> freq) {
+        int frequence = freq.getOrDefault(produitId, 1);
+        PriorityQueue<Map.Entry<Long, Float>> meilleurs = new PriorityQueue<>(K + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<Long, Integer> entree : ligne.entrySet()) {
+            int frequenceVoisin = freq.getOrDefault(entree.getKey(), 1);
+            float score = (float) (entree.getValue() / Math.sqrt((double) frequence * frequenceVoisin));
+            meilleurs.add(Map.entry(entree.getKey(), score));
+            if (meilleurs.size() > K) {
+                meilleurs.poll();
+            }
+        }
+
+        int n = meilleurs.size();
+        long[] ids = new long[n];
+        float[] scores = new float[n];
+        for (int i = n - 1; i >= 0; i--) {
+            Map.Entry<Long, Float> entree = meilleurs.poll();
+            ids[i] = entree.getKey();
+            scores[i] = entree.getValue();
+        }
+        return new Voisins(ids, scores);
+    }
+}
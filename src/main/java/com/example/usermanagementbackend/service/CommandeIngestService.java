@@ -0,0 +1,234 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Commande;
+import com.example.usermanagementbackend.entity.LigneCommande;
+import com.example.usermanagementbackend.entity.User;
+import com.example.usermanagementbackend.repository.ProduitRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Création de commandes par JDBC : validation du stock de tous les produits en une requête IN,
+ * puis un batch pour les commandes et un batch pour toutes les lignes (insert multi-lignes avec
+ * rewriteBatchedStatements), le tout dans une seule transaction.
+ */
+@Service
+public class CommandeIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandeIngestService.class);
+    private static final Long USER_PAR_DEFAUT = 1L;
+
+    public record LigneImport(Long produitId, int qte, double prixUnitaire, double total, double ttc) {
+    }
+
+    public record CommandeImport(String clientNom, String status, String adresse, String telephone, String gouvernement,
+                                 Long userId, Long livreurId, List<LigneImport> lignes) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProduitRepository produitRepository;
+    private final CoPurchaseModel coPurchaseModel;
+    private final StockReservationService stockReservationService;
+
+    public CommandeIngestService(JdbcTemplate jdbcTemplate, ProduitRepository produitRepository, CoPurchaseModel coPurchaseModel,
+                                 StockReservationService stockReservationService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.produitRepository = produitRepository;
+        this.coPurchaseModel = coPurchaseModel;
+        this.stockReservationService = stockReservationService;
+    }
+
+    @Transactional
+    public Long creer(CommandeImport commande) {
+        return importer(List.of(commande)).get(0);
+    }
+
+    /**
+     * Importe un lot de commandes ; tout ou rien. Retourne les identifiants générés dans l'ordre du lot.
+     */
+    @Transactional
+    public List<Long> importer(List<CommandeImport> commandes) {
+        if (commandes == null || commandes.isEmpty()) {
+            throw new IllegalArgumentException("Aucune commande à importer");
+        }
+        long debut = System.currentTimeMillis();
+        validerStock(commandes);
+
+        // 1. Commandes : un batch, clés générées récupérées dans l'ordre
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(
+                        "INSERT INTO commandes (client_nom, statut, adresse, telephone, gouvernement, user_id, livreur_id) " +
+                                "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        CommandeImport c = commandes.get(i);
+                        ps.setString(1, c.clientNom());
+                        ps.setString(2, c.status());
+                        ps.setString(3, c.adresse());
+                        ps.setString(4, c.telephone());
+                        ps.setString(5, c.gouvernement());
+                        ps.setLong(6, c.userId());
+                        if (c.livreurId() != null) {
+                            ps.setLong(7, c.livreurId());
+                        } else {
+                            ps.setNull(7, Types.BIGINT);
+                        }
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return commandes.size();
+                    }
+                },
+                keyHolder);
+
+        List<Long> ids = keyHolder.getKeyList().stream()
+                .map(cles -> ((Number) cles.values().iterator().next()).longValue())
+                .toList();
+        if (ids.size() != commandes.size()) {
+            throw new IllegalStateException("Clés générées incomplètes : " + ids.size() + " pour " + commandes.size() + " commandes");
+        }
+
+        // 2. Lignes de toutes les commandes : un seul batch
+        List<Object[]> lignes = new ArrayList<>();
+        for (int i = 0; i < commandes.size(); i++) {
+            for (LigneImport ligne : commandes.get(i).lignes()) {
+                lignes.add(new Object[]{ids.get(i), ligne.produitId(), ligne.qte(), ligne.prixUnitaire(), ligne.total(), ligne.ttc()});
+            }
+        }
+        if (!lignes.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO lignes_commande (commande_id, produit_id, qte, prix_unitaire, total, ttc) VALUES (?, ?, ?, ?, ?, ?)",
+                    lignes);
+        }
+
+        commandes.forEach(c -> coPurchaseModel.enregistrerPanier(c.lignes().stream().map(LigneImport::produitId).toList()));
+        logger.info("{} commandes et {} lignes insérées en {} ms", commandes.size(), lignes.size(), System.currentTimeMillis() - debut);
+        return ids;
+    }
+
+    /**
+     * Conversion pour le chemin JPA (CommandeService.saveCommande) : les produits sont des références, pas des objets partiels.
+     */
+    public Commande versEntite(CommandeImport source) {
+        Commande commande = new Commande();
+        commande.setClientNom(source.clientNom());
+        try {
+            commande.setStatus(Commande.OrderStatus.valueOf(source.status()));
+        } catch (Exception e) {
+            commande.setStatus(Commande.OrderStatus.PENDING);
+        }
+        commande.setAdresse(source.adresse());
+        commande.setTelephone(source.telephone());
+        commande.setGouvernement(source.gouvernement());
+        commande.setLivreurId(source.livreurId());
+        User user = new User();
+        user.setId(source.userId());
+        commande.setUser(user);
+
+        List<LigneCommande> lignes = new ArrayList<>();
+        for (LigneImport source2 : source.lignes()) {
+            LigneCommande ligne = new LigneCommande();
+            ligne.setCommande(commande);
+            ligne.setProduit(produitRepository.getReferenceById(source2.produitId()));
+            ligne.setQte(source2.qte());
+            ligne.setPrixUnitaire(source2.prixUnitaire());
+            ligne.setTotal(source2.total());
+            ligne.setTtc(source2.ttc());
+            lignes.add(ligne);
+        }
+        commande.setLignesCommande(lignes);
+        return commande;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static CommandeImport depuisPayload(Map<String, Object> payload) {
+        Map<String, Object> userMap = (Map<String, Object>) payload.get("user");
+        Long userId = userMap != null && userMap.get("id") != null
+                ? Long.valueOf(userMap.get("id").toString())
+                : USER_PAR_DEFAUT;
+
+        List<LigneImport> lignes = new ArrayList<>();
+        List<Map<String, Object>> lignesData = (List<Map<String, Object>>) payload.get("lignesCommande");
+        if (lignesData != null) {
+            for (Map<String, Object> ligneData : lignesData) {
+                Map<String, Object> produitMap = (Map<String, Object>) ligneData.get("produit");
+                if (produitMap == null || produitMap.get("id") == null) {
+                    throw new IllegalArgumentException("Produit invalide pour la ligne");
+                }
+                Long produitId = Long.valueOf(produitMap.get("id").toString());
+                int qte = ligneData.get("qte") != null ? ((Number) ligneData.get("qte")).intValue() : 1;
+                double prixUnitaire = nombre(ligneData.get("prixUnitaire"), 0.0);
+                double total = nombre(ligneData.get("total"), prixUnitaire * qte);
+                double ttc = nombre(ligneData.get("ttc"), total);
+                lignes.add(new LigneImport(produitId, qte, prixUnitaire, total, ttc));
+            }
+        }
+
+        return new CommandeImport(
+                texte(payload.get("clientNom"), ""),
+                texte(payload.get("status"), "PENDING"),
+                texte(payload.get("adresse"), ""),
+                texte(payload.get("telephone"), ""),
+                texte(payload.get("gouvernement"), ""),
+                userId,
+                payload.get("livreurId") != null ? Long.valueOf(payload.get("livreurId").toString()) : null,
+                lignes);
+    }
+
+    // Quantités cumulées par produit sur tout le lot, comparées au stock vendable (base lue en une seule requête
+    // + unités des compteurs en mémoire des produits très demandés)
+    private void validerStock(List<CommandeImport> commandes) {
+        Map<Long, Integer> quantites = new HashMap<>();
+        commandes.forEach(c -> c.lignes().forEach(l -> quantites.merge(l.produitId(), l.qte(), Integer::sum)));
+        if (quantites.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Object[]> stocks = new HashMap<>();
+        for (Object[] ligne : produitRepository.findStocksByIdIn(quantites.keySet())) {
+            stocks.put((Long) ligne[0], ligne);
+        }
+        quantites.forEach((produitId, qte) -> {
+            Object[] stock = stocks.get(produitId);
+            if (stock == null) {
+                throw new IllegalArgumentException("Produit non trouvé avec l'ID: " + produitId);
+            }
+            if (stockReservationService.stockDisponible(produitId, (Integer) stock[1]) < qte) {
+                throw new IllegalArgumentException("Stock insuffisant pour le produit: " + stock[2]);
+            }
+        });
+    }
+
+    private static String texte(Object valeur, String defaut) {
+        return valeur != null ? valeur.toString() : defaut;
+    }
+
+    private static double nombre(Object valeur, double defaut) {
+        if (valeur == null) {
+            return defaut;
+        }
+        if (valeur instanceof Number n) {
+            return n.doubleValue();
+        }
+        try {
+            return Double.parseDouble(valeur.toString());
+        } catch (NumberFormatException e) {
+            return defaut;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.usermanagementbackend.service;
 
+import com.example.usermanagementbackend.dto.CommandeDTO;
+import com.example.usermanagementbackend.dto.CommandeResumeDTO;
 import com.example.usermanagementbackend.entity.Commande;
 import com.example.usermanagementbackend.entity.LigneCommande;
 import com.example.usermanagementbackend.entity.Commande.OrderStatus;
@@ -8,25 +10,45 @@ import com.example.usermanagementbackend.entity.User;
 import com.example.usermanagementbackend.repository.CommandeRepository;
 import com.example.usermanagementbackend.repository.ProduitRepository;
 import com.example.usermanagementbackend.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
 public class CommandeService {
 
     private static final Logger logger = LoggerFactory.getLogger(CommandeService.class);
+    private static final int TAILLE_PAGE_MAX = 100;
+    public static final int TAILLE_LISTE_DEFAUT = 100;
+    public static final int TAILLE_LISTE_MAX = 1000;
+    private static final Set<String> TRIS_COMMANDE = Set.of("id", "dateCreation", "total", "clientNom", "status");
 
     private final CommandeRepository commandeRepository;
     private final ProduitRepository produitRepository;
     private final UserRepository userRepository;
+    private final CoPurchaseModel coPurchaseModel;
+    private final EntityManager entityManager;
+    private final StockReservationService stockReservationService;
 
     private static final List<String> TUNISIAN_GOVERNORATES = Arrays.asList(
             "Ariana", "Beja", "Ben Arous", "Bizerte", "Gabes", "Gafsa", "Jendouba",
@@ -37,10 +59,16 @@ public class CommandeService {
 
     public CommandeService(CommandeRepository commandeRepository,
                            ProduitRepository produitRepository,
-                           UserRepository userRepository) {
+                           UserRepository userRepository,
+                           CoPurchaseModel coPurchaseModel,
+                           EntityManager entityManager,
+                           StockReservationService stockReservationService) {
         this.commandeRepository = commandeRepository;
         this.produitRepository = produitRepository;
         this.userRepository = userRepository;
+        this.coPurchaseModel = coPurchaseModel;
+        this.entityManager = entityManager;
+        this.stockReservationService = stockReservationService;
     }
 
     @Transactional(readOnly = true)
@@ -51,6 +79,88 @@ public class CommandeService {
         return commandes;
     }
 
+    /**
+     * Liste des commandes en flux : seules les colonnes du DTO sont lues, via un curseur JDBC,
+     * et chaque ligne est transmise au consommateur sans être conservée. Pagination par clé (id > afterId),
+     * limit commandes au plus (voir tailleListe).
+     */
+    @Transactional(readOnly = true)
+    public void streamCommandesListe(Long afterId, int limit, Consumer<CommandeDTO> consumer) {
+        TypedQuery<Object[]> query = entityManager.createQuery(
+                        "SELECT c.id, c.clientNom, c.status, c.adresse, c.telephone, c.livreurId FROM Commande c " +
+                                "WHERE c.id > :afterId ORDER BY c.id", Object[].class)
+                .setParameter("afterId", afterId != null ? afterId : 0L)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, 500)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setMaxResults(limit);
+        try (Stream<Object[]> lignes = query.getResultStream()) {
+            lignes.forEach(ligne -> {
+                CommandeDTO dto = new CommandeDTO((Long) ligne[0], (String) ligne[1],
+                        ligne[2] != null ? ligne[2].toString() : "PENDING", (String) ligne[3], (String) ligne[4]);
+                dto.setLivreurId((Long) ligne[5]);
+                consumer.accept(dto);
+            });
+        }
+    }
+
+    // Taille de page de la liste : TAILLE_LISTE_DEFAUT sans paramètre, ramenée à TAILLE_LISTE_MAX au-delà
+    public static int tailleListe(Integer limit) {
+        return limit == null ? TAILLE_LISTE_DEFAUT : Math.min(limit, TAILLE_LISTE_MAX);
+    }
+
+    /**
+     * afterId de la page suivante : id de la dernière commande de la page, ou null s'il n'y a rien après.
+     * Lu sur la clé primaire seule ; une suppression entre cette lecture et le flux peut faire relire une
+     * commande à la page suivante, jamais en sauter une (les id IDENTITY ne s'insèrent qu'après).
+     */
+    @Transactional(readOnly = true)
+    public Long curseurSuivant(Long afterId, int limit) {
+        if (limit <= 0) {
+            return null;
+        }
+        List<Long> ids = entityManager.createQuery(
+                        "SELECT c.id FROM Commande c WHERE c.id > :afterId ORDER BY c.id", Long.class)
+                .setParameter("afterId", afterId != null ? afterId : 0L)
+                .setFirstResult(limit - 1)
+                .setMaxResults(2)
+                .getResultList();
+        return ids.size() == 2 ? ids.get(0) : null;
+    }
+
+    /**
+     * Page de commandes complètes : une requête pour la page, une pour les lignes et produits de cette page.
+     */
+    @Transactional(readOnly = true)
+    public Page<Commande> getCommandesPage(OrderStatus status, Long userId, int page, int size, String triPar) {
+        Page<Commande> commandes = commandeRepository.findPage(status, userId, pageRequest(page, size, triPar));
+        List<Long> ids = commandes.getContent().stream().map(Commande::getId).toList();
+        if (!ids.isEmpty()) {
+            // Les lignes sont attachées aux commandes déjà présentes dans le contexte de persistance
+            commandeRepository.findWithLignesAndProduitsByIdIn(ids);
+        }
+        logger.info("Fetched commandes page {} ({} of {})", page, commandes.getNumberOfElements(), commandes.getTotalElements());
+        return commandes;
+    }
+
+    // Mode liste : projection DTO, sans chargement d'entités
+    @Transactional(readOnly = true)
+    public Page<CommandeResumeDTO> getCommandesResumes(OrderStatus status, Long userId, int page, int size, String triPar) {
+        return commandeRepository.findResumes(status, userId, pageRequest(page, size, triPar));
+    }
+
+    private PageRequest pageRequest(int page, int size, String triPar) {
+        Sort.Direction direction = Sort.Direction.DESC;
+        String propriete = "id";
+        if (triPar != null && !triPar.isEmpty()) {
+            direction = triPar.startsWith("-") ? Sort.Direction.DESC : Sort.Direction.ASC;
+            propriete = triPar.startsWith("-") ? triPar.substring(1) : triPar;
+        }
+        if (!TRIS_COMMANDE.contains(propriete)) {
+            throw new IllegalArgumentException("Tri non supporté : " + propriete);
+        }
+        return PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), TAILLE_PAGE_MAX), direction, propriete);
+    }
+
     @Transactional(readOnly = true)
     public Optional<Commande> getCommandeById(Long id) {
         logger.info("Fetching commande with id: {}", id);
@@ -119,14 +229,10 @@ public class CommandeService {
                 throw new IllegalArgumentException("LignesCommande cannot be null or empty");
             }
             logger.info("Processing {} lignesCommande", lignes.size());
+            Map<Long, Produit> produits = chargerProduits(lignes);
             for (LigneCommande ligne : lignes) {
-                logger.info("Processing ligne with qte: {}", ligne.getQte());
                 ligne.setCommande(commande);
-                Long produitId = ligne.getProduit().getId();
-                logger.info("Fetching produit with id: {}", produitId);
-                Produit produit = produitRepository.findById(produitId)
-                        .orElseThrow(() -> new IllegalArgumentException("Produit not found with id: " + produitId));
-                logger.info("Produit found: id={}, nom={}", produit.getId(), produit.getNom());
+                Produit produit = produits.get(ligne.getProduit().getId());
                 ligne.setProduit(produit);
                 int qte = ligne.getQte();
                 double prix = produit.getPrix();
@@ -145,12 +251,16 @@ public class CommandeService {
 
             // Validate commande
             logger.info("Validating commande");
-            validateOrder(commande);
+            validateOrder(commande, user, produits);
 
             // Save to database
             logger.info("Saving commande to database");
             Commande saved = commandeRepository.save(commande);
             logger.info("Commande saved with id: {}", saved.getId());
+            coPurchaseModel.enregistrerPanier(lignes.stream()
+                    .filter(l -> l.getProduit() != null)
+                    .map(l -> l.getProduit().getId())
+                    .toList());
             return saved;
         } catch (Exception e) {
             logger.error("Error saving commande: {}", e.getMessage(), e);
@@ -173,10 +283,10 @@ public class CommandeService {
         existing.setLignesCommande(updatedCommande.getLignesCommande());
 
         List<LigneCommande> lignes = existing.getLignesCommande();
+        Map<Long, Produit> produits = lignes != null ? chargerProduits(lignes) : Map.of();
         if (lignes != null) {
             for (LigneCommande ligne : lignes) {
-                Produit produit = produitRepository.findById(ligne.getProduit().getId())
-                        .orElseThrow(() -> new IllegalArgumentException("Produit not found with id: " + ligne.getProduit().getId()));
+                Produit produit = produits.get(ligne.getProduit().getId());
                 ligne.setProduit(produit);
                 ligne.setPrixUnitaire(produit.getPrix());
                 ligne.setTotal(ligne.getQte() * ligne.getPrixUnitaire());
@@ -185,10 +295,15 @@ public class CommandeService {
             existing.setTotal(lignes.stream().mapToDouble(LigneCommande::getTotal).sum());
         }
 
-        validateOrder(existing);
+        User user = null;
+        if (existing.getUser() != null && existing.getUser().getId() != null) {
+            user = userRepository.findById(existing.getUser().getId())
+                    .orElseThrow(() -> new IllegalArgumentException("User non trouvé"));
+        }
+        validateOrder(existing, user, produits);
 
         if (updatedCommande.getStatus() != null) {
-            transitionOrderStatus(existing, updatedCommande.getStatus());
+            transitionOrderStatus(existing, updatedCommande.getStatus(), produits);
         }
 
         Commande updated = commandeRepository.save(existing);
@@ -208,33 +323,29 @@ public class CommandeService {
         logger.info("Commande deleted with id: {}", id);
     }
 
-    private void validateOrder(Commande commande) {
+    // Aucune requête ici : l'utilisateur et les produits sont ceux déjà chargés par l'appelant
+    private void validateOrder(Commande commande, User user, Map<Long, Produit> produits) {
         logger.info("Validating commande");
         if (commande.getLignesCommande() == null || commande.getLignesCommande().isEmpty()) {
             logger.error("Validation failed: LignesCommande is null or empty");
             throw new IllegalArgumentException("La commande doit contenir au moins une ligne");
         }
 
-        for (LigneCommande ligne : commande.getLignesCommande()) {
-            if (ligne.getProduit() == null || ligne.getProduit().getId() == null) {
-                logger.error("Validation failed: Produit is invalid for ligne");
-                throw new IllegalArgumentException("Produit invalide pour la ligne");
+        // Stock comparé à la quantité cumulée du produit sur toutes les lignes
+        quantitesParProduit(commande.getLignesCommande()).forEach((produitId, qte) -> {
+            Produit produit = produits.get(produitId);
+            if (produit == null) {
+                throw new IllegalArgumentException("Produit non trouvé");
             }
-            Produit produit = produitRepository.findById(ligne.getProduit().getId())
-                    .orElseThrow(() -> new IllegalArgumentException("Produit non trouvé"));
-            if (produit.getStock() < ligne.getQte()) {
+            if (stockReservationService.stockDisponible(produit) < qte) {
                 logger.error("Validation failed: Insufficient stock for produit: {}", produit.getNom());
                 throw new IllegalArgumentException("Stock insuffisant pour le produit: " + produit.getNom());
             }
-        }
+        });
 
-        if (commande.getUser() != null && commande.getUser().getId() != null) {
-            User user = userRepository.findById(commande.getUser().getId())
-                    .orElseThrow(() -> new IllegalArgumentException("User non trouvé"));
-            if (user.getCreditLimit() != null && commande.getTotal() > user.getCreditLimit()) {
-                logger.error("Validation failed: Total exceeds credit limit: {}", user.getCreditLimit());
-                throw new IllegalArgumentException("Le total dépasse la limite de crédit: " + user.getCreditLimit());
-            }
+        if (user != null && user.getCreditLimit() != null && commande.getTotal() > user.getCreditLimit()) {
+            logger.error("Validation failed: Total exceeds credit limit: {}", user.getCreditLimit());
+            throw new IllegalArgumentException("Le total dépasse la limite de crédit: " + user.getCreditLimit());
         }
 
         if (commande.getTelephone() != null && !commande.getTelephone().matches("^[0-9]{8}$")) {
@@ -256,6 +367,13 @@ public class CommandeService {
 
     @Transactional
     public void transitionOrderStatus(Commande commande, OrderStatus newStatus) {
+        Map<Long, Produit> produits = newStatus == OrderStatus.SHIPPED && commande.getLignesCommande() != null
+                ? chargerProduits(commande.getLignesCommande())
+                : Map.of();
+        transitionOrderStatus(commande, newStatus, produits);
+    }
+
+    private void transitionOrderStatus(Commande commande, OrderStatus newStatus, Map<Long, Produit> produits) {
         logger.info("Transitioning commande status to: {}", newStatus);
         OrderStatus currentStatus = commande.getStatus();
         boolean validTransition = switch (newStatus) {
@@ -276,14 +394,53 @@ public class CommandeService {
 
         commande.setStatus(newStatus);
         if (newStatus == OrderStatus.SHIPPED && commande.getLignesCommande() != null) {
-            for (LigneCommande ligne : commande.getLignesCommande()) {
-                Produit produit = produitRepository.findById(ligne.getProduit().getId())
-                        .orElseThrow(() -> new IllegalArgumentException("Produit non trouvé"));
-                produit.setStock(produit.getStock() - ligne.getQte());
-                produitRepository.save(produit);
-            }
+            decrementerStock(produits, quantitesParProduit(commande.getLignesCommande()));
         }
         commandeRepository.save(commande);
         logger.info("Commande status transitioned to: {}", newStatus);
     }
-}
\ No newline at end of file
+
+    // Tous les produits référencés par les lignes, en une requête, indexés par id
+    private Map<Long, Produit> chargerProduits(List<LigneCommande> lignes) {
+        Set<Long> ids = new HashSet<>();
+        for (LigneCommande ligne : lignes) {
+            if (ligne.getProduit() == null || ligne.getProduit().getId() == null) {
+                logger.error("Validation failed: Produit is invalid for ligne");
+                throw new IllegalArgumentException("Produit invalide pour la ligne");
+            }
+            ids.add(ligne.getProduit().getId());
+        }
+        Map<Long, Produit> produits = new HashMap<>();
+        produitRepository.findAllById(ids).forEach(produit -> produits.put(produit.getId(), produit));
+        for (Long id : ids) {
+            if (!produits.containsKey(id)) {
+                throw new IllegalArgumentException("Produit not found with id: " + id);
+            }
+        }
+        logger.info("Loaded {} produits for {} lignes", produits.size(), lignes.size());
+        return produits;
+    }
+
+    private static Map<Long, Integer> quantitesParProduit(List<LigneCommande> lignes) {
+        Map<Long, Integer> quantites = new LinkedHashMap<>();
+        for (LigneCommande ligne : lignes) {
+            quantites.merge(ligne.getProduit().getId(), ligne.getQte() != null ? ligne.getQte() : 0, Integer::sum);
+        }
+        return quantites;
+    }
+
+    /**
+     * Décrément conditionnel du stock de tous les produits de la commande (voir StockReservationService),
+     * puis report de la nouvelle valeur sur les entités déjà chargées.
+     */
+    private void decrementerStock(Map<Long, Produit> produits, Map<Long, Integer> quantites) {
+        stockReservationService.reserverTout(quantites);
+        logger.info("Stock decremented for {} produits", quantites.size());
+        quantites.forEach((produitId, qte) -> {
+            Produit produit = produits.get(produitId);
+            if (produit != null) {
+                stockReservationService.aligner(produit, -qte);
+            }
+        });
+    }
+}
@@ -4,12 +4,12 @@ import com.example.usermanagementbackend.entity.Evenement;
 import com.example.usermanagementbackend.entity.User;
 import com.example.usermanagementbackend.repository.EvenementRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
@@ -18,11 +18,14 @@ public class EvenementService {
 
     private final EvenementRepository evenementRepository;
     private final SendGridEmailService sendGridEmailService; // Service d'envoi d'email
+    private final BlobStore uploadsBlobStore;
 
     @Autowired
-    public EvenementService(EvenementRepository evenementRepository, SendGridEmailService sendGridEmailService) {
+    public EvenementService(EvenementRepository evenementRepository, SendGridEmailService sendGridEmailService,
+                            @Qualifier("uploadsBlobStore") BlobStore uploadsBlobStore) {
         this.evenementRepository = evenementRepository;
         this.sendGridEmailService = sendGridEmailService;
+        this.uploadsBlobStore = uploadsBlobStore;
     }
 
     public List<Evenement> getAllEvenements() {
@@ -36,6 +39,7 @@ public class EvenementService {
     public Evenement createEvenement(Evenement evenement) {
         evenement.setStatut(Evenement.StatutEvenement.PLANIFIE);
         Evenement savedEvent = evenementRepository.save(evenement);
+        retenirImage(savedEvent.getImageUrl());
 
         try {
             // Générer le corps de l'email texte
@@ -57,6 +61,7 @@ public class EvenementService {
     public Evenement updateEvenement(Long id, Evenement evenementDetails) {
         return evenementRepository.findById(id)
                 .map(evenement -> {
+                    String ancienneImage = cleImage(evenement.getImageUrl());
                     evenement.setNom(evenementDetails.getNom());
                     evenement.setDescription(evenementDetails.getDescription());
                     evenement.setDateDebut(evenementDetails.getDateDebut());
@@ -67,7 +72,16 @@ public class EvenementService {
                     evenement.setImageUrl(evenementDetails.getImageUrl());
                     evenement.setStatut(evenementDetails.getStatut());
                     evenement.setCategories(evenementDetails.getCategories());
-                    return evenementRepository.save(evenement);
+                    Evenement enregistre = evenementRepository.save(evenement);
+                    // Image remplacée : la nouvelle est retenue, l'ancienne libérée
+                    String nouvelleImage = cleImage(enregistre.getImageUrl());
+                    if (!Objects.equals(ancienneImage, nouvelleImage)) {
+                        retenirImage(enregistre.getImageUrl());
+                        if (ancienneImage != null) {
+                            uploadsBlobStore.liberer(ancienneImage);
+                        }
+                    }
+                    return enregistre;
                 })
                 .orElseThrow(() -> new RuntimeException("Événement non trouvé"));
     }
@@ -82,14 +96,10 @@ public class EvenementService {
                 evenement.getParticipants().clear(); // Vider les participants
             }
 
-            // Supprimer l'image physique si elle existe
-            if (evenement.getImageUrl() != null) {
-                try {
-                    Path imagePath = Paths.get("uploads", Paths.get(evenement.getImageUrl()).getFileName().toString());
-                    Files.deleteIfExists(imagePath);
-                } catch (IOException e) {
-                    e.printStackTrace(); // Log mais ne pas bloquer
-                }
+            // Libérer l'image (supprimée par le balayage si plus rien ne la référence)
+            String image = cleImage(evenement.getImageUrl());
+            if (image != null) {
+                uploadsBlobStore.liberer(image);
             }
 
             evenementRepository.delete(evenement); // Maintenant, suppression OK
@@ -98,6 +108,21 @@ public class EvenementService {
 
 
 
+    private void retenirImage(String imageUrl) {
+        String cle = cleImage(imageUrl);
+        if (cle != null) {
+            uploadsBlobStore.retenir(cle);
+        }
+    }
+
+    // Clé de stockage d'une URL d'image (/api/evenements/image/<clé>)
+    private static String cleImage(String imageUrl) {
+        if (imageUrl == null || imageUrl.isBlank()) {
+            return null;
+        }
+        return Paths.get(imageUrl).getFileName().toString();
+    }
+
     // Générer le contenu d'email texte brut
     private String genererContenuEmailTexte(Evenement evenement) {
         return "Bonjour,\n\n" +
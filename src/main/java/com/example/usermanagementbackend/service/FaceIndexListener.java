@@ -0,0 +1,84 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Garde l'index facial synchronisé avec les inscriptions, modifications et suppressions d'utilisateurs.
+ * Écouteur Hibernate « post-commit », enregistré au démarrage : appelé seulement une fois la transaction validée,
+ * un rollback n'atteint donc pas l'index, et l'entité User ne dépend pas de la couche service.
+ */
+@Component
+public class FaceIndexListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final FaceIndexService faceIndexService;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public FaceIndexListener(FaceIndexService faceIndexService, EntityManagerFactory entityManagerFactory) {
+        this.faceIndexService = faceIndexService;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void enregistrer() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().requireService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof User user) {
+            apresEnregistrement(user);
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof User user) {
+            apresEnregistrement(user);
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof User user) {
+            faceIndexService.retirer(user.getId());
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return User.class.equals(persister.getMappedClass());
+    }
+
+    private void apresEnregistrement(User user) {
+        float[] descripteur;
+        try {
+            descripteur = FaceIndexService.descripteurDe(user.getFaceEmbedding(), user.getLegacyFaceDescriptor());
+        } catch (IllegalArgumentException e) {
+            descripteur = null;
+        }
+        faceIndexService.mettreAJour(user.getId(), descripteur);
+    }
+}
@@ -0,0 +1,460 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongPredicate;
+
+/**
+ * Index en mémoire des descripteurs faciaux (128 floats) pour la connexion par visage.
+ * Les descripteurs sont stockés dans un tableau de floats contigu et organisés en
+ * vantage-point tree : une recherche du plus proche voisin ne parcourt qu'une petite
+ * partie des utilisateurs au lieu de recharger et re-parser toute la table.
+ * Les inscriptions/modifications arrivent dans un delta, fusionné périodiquement dans l'arbre.
+ */
+@Service
+public class FaceIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FaceIndexService.class);
+
+    public static final int DIMENSION = 128;
+    public static final float SEUIL_CORRESPONDANCE = 0.6f;
+    private static final int TAILLE_LOT_CHARGEMENT = 1000;
+    private static final float[] SUPPRIME = new float[0];
+
+    private final UserRepository userRepository;
+
+    private volatile VpTree arbre = VpTree.construire(new long[0], new float[0]);
+    private volatile boolean charge = false;
+    // Modifications depuis la dernière construction de l'arbre (SUPPRIME = utilisateur retiré)
+    private volatile ConcurrentHashMap<Long, float[]> delta = new ConcurrentHashMap<>();
+    // Delta écarté au début d'un rechargement, encore consulté jusqu'à la publication du nouvel arbre
+    private volatile Map<Long, float[]> deltaFige = Map.of();
+    private final Object verrouConstruction = new Object();
+    private final AtomicBoolean chargementEnCours = new AtomicBoolean(false);
+    private final ExecutorService chargeur = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "face-index-chargement");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public FaceIndexService(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    // Chargement en arrière-plan : les connexions passent par le parcours de la table en attendant
+    @EventListener(ApplicationReadyEvent.class)
+    public void chargerAuDemarrage() {
+        chargerEnArrierePlan();
+    }
+
+    @PreDestroy
+    public void arreter() {
+        chargeur.shutdownNow();
+    }
+
+    private void chargerEnArrierePlan() {
+        if (!chargementEnCours.compareAndSet(false, true)) {
+            return;
+        }
+        chargeur.execute(() -> {
+            try {
+                recharger();
+            } catch (Exception e) {
+                logger.error("Impossible de charger l'index facial : {}", e.getMessage());
+            } finally {
+                chargementEnCours.set(false);
+            }
+        });
+    }
+
+    /**
+     * Recharge entièrement l'index depuis la base, par lots ordonnés par id.
+     */
+    public void recharger() {
+        synchronized (verrouConstruction) {
+            // Échange avant le chargement : une inscription validée pendant la lecture reste dans le nouveau delta
+            deltaFige = delta;
+            delta = new ConcurrentHashMap<>();
+
+            List<Long> ids = new ArrayList<>();
+            List<float[]> descripteurs = new ArrayList<>();
+            long dernierId = 0L;
+            List<Object[]> lot;
+            do {
+                lot = userRepository.findFaceDescriptorsAfter(dernierId, PageRequest.of(0, TAILLE_LOT_CHARGEMENT));
+                for (Object[] ligne : lot) {
+                    Long id = (Long) ligne[0];
+                    dernierId = id;
+                    try {
+                        float[] descripteur = descripteurDe((float[]) ligne[1], (String) ligne[2]);
+                        if (descripteur != null && descripteur.length == DIMENSION) {
+                            ids.add(id);
+                            descripteurs.add(descripteur);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        logger.warn("Descripteur facial ignoré pour l'utilisateur {} : {}", id, e.getMessage());
+                    }
+                }
+            } while (lot.size() == TAILLE_LOT_CHARGEMENT);
+
+            arbre = VpTree.construire(ids, descripteurs);
+            deltaFige = Map.of();
+            charge = true;
+            logger.info("Index facial chargé : {} descripteurs", ids.size());
+        }
+    }
+
+    /**
+     * Cherche l'utilisateur dont le descripteur est le plus proche, à une distance inférieure au seuil.
+     */
+    public Optional<Long> trouverCorrespondance(float[] requete) {
+        if (requete == null || requete.length != DIMENSION) {
+            return Optional.empty();
+        }
+        if (!charge) {
+            // Index pas encore prêt (démarrage, échec du chargement) : pas d'attente sur le thread de la requête
+            chargerEnArrierePlan();
+            return parcourirTable(requete);
+        }
+
+        Map<Long, float[]> fige = deltaFige;
+        Map<Long, float[]> courantDelta = delta;
+        VpTree courant = arbre;
+        VpTree.Resultat resultat = courant.plusProche(requete, SEUIL_CORRESPONDANCE,
+                id -> courantDelta.containsKey(id) || fige.containsKey(id));
+
+        for (Map.Entry<Long, float[]> entree : fige.entrySet()) {
+            if (!courantDelta.containsKey(entree.getKey())) {
+                comparer(requete, entree.getKey(), entree.getValue(), resultat);
+            }
+        }
+        for (Map.Entry<Long, float[]> entree : courantDelta.entrySet()) {
+            comparer(requete, entree.getKey(), entree.getValue(), resultat);
+        }
+
+        return resultat.id >= 0 ? Optional.of(resultat.id) : Optional.empty();
+    }
+
+    // Recherche exhaustive par lots ordonnés par id, sans garder les descripteurs en mémoire
+    private Optional<Long> parcourirTable(float[] requete) {
+        long meilleurId = -1;
+        float meilleureDistance = SEUIL_CORRESPONDANCE;
+        long dernierId = 0L;
+        List<Object[]> lot;
+        do {
+            lot = userRepository.findFaceDescriptorsAfter(dernierId, PageRequest.of(0, TAILLE_LOT_CHARGEMENT));
+            for (Object[] ligne : lot) {
+                Long id = (Long) ligne[0];
+                dernierId = id;
+                try {
+                    float[] descripteur = descripteurDe((float[]) ligne[1], (String) ligne[2]);
+                    if (descripteur != null && descripteur.length == DIMENSION) {
+                        float distance = distance(requete, descripteur, 0);
+                        if (distance < meilleureDistance) {
+                            meilleureDistance = distance;
+                            meilleurId = id;
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Descripteur illisible : ignoré, comme au chargement de l'index
+                }
+            }
+        } while (lot.size() == TAILLE_LOT_CHARGEMENT);
+        return meilleurId >= 0 ? Optional.of(meilleurId) : Optional.empty();
+    }
+
+    public void mettreAJour(Long userId, float[] descripteur) {
+        if (userId == null) return;
+        if (descripteur == null || descripteur.length != DIMENSION) {
+            retirer(userId);
+            return;
+        }
+
+        float[] actuel = delta.get(userId);
+        if (actuel == null) {
+            actuel = deltaFige.get(userId);
+        }
+        if (actuel == null) {
+            actuel = arbre.descripteur(userId);
+        }
+        if (!Arrays.equals(actuel, descripteur)) {
+            delta.put(userId, descripteur);
+        }
+    }
+
+    public void retirer(Long userId) {
+        if (userId == null) return;
+        float[] fige = deltaFige.get(userId);
+        if (arbre.contient(userId) || (fige != null && fige != SUPPRIME)) {
+            delta.put(userId, SUPPRIME);
+        } else {
+            delta.remove(userId);
+        }
+    }
+
+    public int taille() {
+        int taille = arbre.taille();
+        Map<Long, float[]> modifications = new HashMap<>(deltaFige);
+        modifications.putAll(delta);
+        for (Map.Entry<Long, float[]> entree : modifications.entrySet()) {
+            boolean dansArbre = arbre.contient(entree.getKey());
+            if (entree.getValue() == SUPPRIME) {
+                if (dansArbre) taille--;
+            } else if (!dansArbre) {
+                taille++;
+            }
+        }
+        return taille;
+    }
+
+    /**
+     * Fusionne le delta dans un nouvel arbre, publié atomiquement.
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void fusionnerDelta() {
+        if (delta.isEmpty() || !charge) return;
+
+        synchronized (verrouConstruction) {
+            Map<Long, float[]> modifications = new HashMap<>(delta);
+            VpTree ancien = arbre;
+
+            List<Long> ids = new ArrayList<>(ancien.taille() + modifications.size());
+            List<float[]> descripteurs = new ArrayList<>(ancien.taille() + modifications.size());
+            for (int i = 0; i < ancien.taille(); i++) {
+                long id = ancien.ids[i];
+                if (!modifications.containsKey(id)) {
+                    ids.add(id);
+                    descripteurs.add(Arrays.copyOfRange(ancien.donnees, i * DIMENSION, (i + 1) * DIMENSION));
+                }
+            }
+            for (Map.Entry<Long, float[]> entree : modifications.entrySet()) {
+                if (entree.getValue() != SUPPRIME) {
+                    ids.add(entree.getKey());
+                    descripteurs.add(entree.getValue());
+                }
+            }
+
+            arbre = VpTree.construire(ids, descripteurs);
+            // Ne retire que les entrées qui n'ont pas été modifiées pendant la construction
+            modifications.forEach((id, descripteur) -> delta.remove(id, descripteur));
+        }
+    }
+
+    private static void comparer(float[] requete, Long id, float[] descripteur, VpTree.Resultat resultat) {
+        if (descripteur == SUPPRIME) return;
+        float distance = distance(requete, descripteur, 0);
+        if (distance < resultat.distance) {
+            resultat.distance = distance;
+            resultat.id = id;
+        }
+    }
+
+    /**
+     * Descripteur binaire s'il existe, sinon l'ancien format texte pas encore migré.
+     */
+    public static float[] descripteurDe(float[] binaire, String texte) {
+        if (binaire != null) return binaire;
+        if (texte == null || texte.isBlank()) return null;
+        return parserDescripteur(texte);
+    }
+
+    public static float[] parserDescripteur(String descriptorStr) {
+        try {
+            String[] parts = descriptorStr.replace("[", "").replace("]", "").split(",");
+            float[] descriptor = new float[parts.length];
+
+            for (int i = 0; i < parts.length; i++) {
+                descriptor[i] = Float.parseFloat(parts[i].trim());
+            }
+
+            return descriptor;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Format de descripteur facial invalide");
+        }
+    }
+
+    static float distance(float[] requete, float[] donnees, int offset) {
+        float sum = 0f;
+        for (int i = 0; i < DIMENSION; i++) {
+            float diff = requete[i] - donnees[offset + i];
+            sum += diff * diff;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * Vantage-point tree immuable sur des descripteurs stockés à plat (point i = donnees[i*128 .. i*128+127]).
+     * Chaque nœud correspond à un point ; les tableaux de nœuds sont indexés dans l'ordre de construction.
+     */
+    static final class VpTree {
+
+        final long[] ids;
+        final float[] donnees;
+        private final int[] point;
+        private final float[] rayon;
+        private final int[] interieur;
+        private final int[] exterieur;
+        private final Map<Long, Integer> positions;
+        private int racine = -1;
+        private int prochainNoeud = 0;
+
+        static final class Resultat {
+            long id = -1;
+            float distance;
+        }
+
+        private VpTree(long[] ids, float[] donnees) {
+            int n = ids.length;
+            this.ids = ids;
+            this.donnees = donnees;
+            this.point = new int[n];
+            this.rayon = new float[n];
+            this.interieur = new int[n];
+            this.exterieur = new int[n];
+            this.positions = new HashMap<>(Math.max(16, n * 2));
+            for (int i = 0; i < n; i++) {
+                positions.put(ids[i], i);
+            }
+        }
+
+        static VpTree construire(List<Long> ids, List<float[]> descripteurs) {
+            long[] tableauIds = new long[ids.size()];
+            float[] donnees = new float[ids.size() * DIMENSION];
+            for (int i = 0; i < tableauIds.length; i++) {
+                tableauIds[i] = ids.get(i);
+                System.arraycopy(descripteurs.get(i), 0, donnees, i * DIMENSION, DIMENSION);
+            }
+            return construire(tableauIds, donnees);
+        }
+
+        static VpTree construire(long[] ids, float[] donnees) {
+            VpTree arbre = new VpTree(ids, donnees);
+            int n = ids.length;
+            int[] indices = new int[n];
+            for (int i = 0; i < n; i++) indices[i] = i;
+            arbre.racine = arbre.construireNoeud(indices, new float[n], 0, n);
+            return arbre;
+        }
+
+        int taille() {
+            return ids.length;
+        }
+
+        boolean contient(long id) {
+            return positions.containsKey(id);
+        }
+
+        float[] descripteur(long id) {
+            Integer position = positions.get(id);
+            if (position == null) return null;
+            return Arrays.copyOfRange(donnees, position * DIMENSION, (position + 1) * DIMENSION);
+        }
+
+        private int construireNoeud(int[] indices, float[] distances, int debut, int fin) {
+            if (debut >= fin) return -1;
+
+            int noeud = prochainNoeud++;
+            echanger(indices, distances, debut, ThreadLocalRandom.current().nextInt(debut, fin));
+            int vantage = indices[debut];
+            point[noeud] = vantage;
+
+            if (fin - debut == 1) {
+                interieur[noeud] = -1;
+                exterieur[noeud] = -1;
+                return noeud;
+            }
+
+            float[] vp = Arrays.copyOfRange(donnees, vantage * DIMENSION, (vantage + 1) * DIMENSION);
+            for (int i = debut + 1; i < fin; i++) {
+                distances[i] = distance(vp, donnees, indices[i] * DIMENSION);
+            }
+
+            int median = (debut + 1 + fin) / 2;
+            selectionner(indices, distances, debut + 1, fin - 1, median);
+            rayon[noeud] = distances[median];
+
+            interieur[noeud] = construireNoeud(indices, distances, debut + 1, median);
+            exterieur[noeud] = construireNoeud(indices, distances, median, fin);
+            return noeud;
+        }
+
+        Resultat plusProche(float[] requete, float seuil, LongPredicate ignorer) {
+            Resultat resultat = new Resultat();
+            resultat.distance = seuil;
+            chercher(racine, requete, ignorer, resultat);
+            return resultat;
+        }
+
+        private void chercher(int noeud, float[] requete, LongPredicate ignorer, Resultat resultat) {
+            if (noeud < 0) return;
+
+            int p = point[noeud];
+            float d = distance(requete, donnees, p * DIMENSION);
+            if (d < resultat.distance && !ignorer.test(ids[p])) {
+                resultat.distance = d;
+                resultat.id = ids[p];
+            }
+
+            float r = rayon[noeud];
+            if (d < r) {
+                chercher(interieur[noeud], requete, ignorer, resultat);
+                if (d + resultat.distance >= r) {
+                    chercher(exterieur[noeud], requete, ignorer, resultat);
+                }
+            } else {
+                chercher(exterieur[noeud], requete, ignorer, resultat);
+                if (d - resultat.distance <= r) {
+                    chercher(interieur[noeud], requete, ignorer, resultat);
+                }
+            }
+        }
+
+        // Quickselect : place en position k l'élément de rang k, plus petits à gauche, plus grands à droite
+        private static void selectionner(int[] indices, float[] distances, int gauche, int droite, int k) {
+            while (gauche < droite) {
+                float pivot = distances[(gauche + droite) >>> 1];
+                int i = gauche;
+                int j = droite;
+                while (i <= j) {
+                    while (distances[i] < pivot) i++;
+                    while (distances[j] > pivot) j--;
+                    if (i <= j) {
+                        echanger(indices, distances, i, j);
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j) {
+                    droite = j;
+                } else if (k >= i) {
+                    gauche = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private static void echanger(int[] indices, float[] distances, int i, int j) {
+            int indice = indices[i];
+            indices[i] = indices[j];
+            indices[j] = indice;
+            float distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+        }
+    }
+}
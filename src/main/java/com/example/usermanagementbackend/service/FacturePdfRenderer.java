@@ -0,0 +1,367 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Commande;
+import com.example.usermanagementbackend.entity.Facture;
+import com.example.usermanagementbackend.entity.LigneFacture;
+import com.example.usermanagementbackend.entity.TransactionPaiement;
+import com.example.usermanagementbackend.enums.StatutPdf;
+import com.example.usermanagementbackend.repository.FactureRepository;
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.events.PdfDocumentEvent;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.kernel.pdf.xobject.PdfFormXObject;
+import com.itextpdf.layout.Canvas;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.Style;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.TextAlignment;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rendu des factures PDF hors des transactions métier : les rendus sont planifiés après le commit et exécutés
+ * par un pool borné (un thread par cœur par défaut). Chaque rendu charge la facture en une requête, rend le
+ * document en mémoire sans connexion ouverte, puis le range dans le stockage des factures (facturesBlobStore). Le statut est suivi
+ * sur la facture (EN_ATTENTE, EN_COURS, GENERE, ECHEC) ; un échec n'annule plus la facture.
+ * <p>
+ * Polices et gabarit d'en-tête/pied de page sont préparés une fois au démarrage. File pleine : le thread
+ * appelant rend lui-même la facture (contre-pression, en particulier pour la régénération par période).
+ */
+@Component
+public class FacturePdfRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(FacturePdfRenderer.class);
+    private static final int TAILLE_LOT_STATUT = 500;
+    private static final float MARGE_HAUT = 90;
+    private static final float MARGE_BAS = 70;
+    private static final float MARGE_COTE = 36;
+
+    private final FactureRepository factureRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BlobStore facturesBlobStore;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService lanceurLots = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "facture-pdf-lot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Factures en file, pas encore démarrées : une modification pendant l'attente ne crée pas de second rendu
+    private final Set<Long> planifiees = ConcurrentHashMap.newKeySet();
+
+    // Polices analysées une fois ; les PdfFont, propres à un document, en sont dérivées à chaque rendu
+    private final FontProgram police;
+    private final FontProgram policeGras;
+    // En-tête et pied de page rendus une fois, recopiés comme XObject sur chaque page
+    private final byte[] gabarit;
+
+    private final AtomicLong rendus = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+    private final AtomicLong dureeTotaleMs = new AtomicLong();
+
+    public FacturePdfRenderer(FactureRepository factureRepository,
+                              TransactionTemplate transactionTemplate,
+                              @Qualifier("facturesBlobStore") BlobStore facturesBlobStore,
+                              @Value("${facture.pdf.threads:0}") int threads,
+                              @Value("${facture.pdf.file-capacite:500}") int capacite) throws IOException {
+        this.factureRepository = factureRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.facturesBlobStore = facturesBlobStore;
+
+        int nombreThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger numero = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(nombreThreads, nombreThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacite),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "facture-pdf-" + numero.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.police = FontProgramFactory.createFont(StandardFonts.HELVETICA);
+        this.policeGras = FontProgramFactory.createFont(StandardFonts.HELVETICA_BOLD);
+        this.gabarit = construireGabarit();
+    }
+
+    // Rendus interrompus par un arrêt : repris au démarrage
+    @EventListener(ApplicationReadyEvent.class)
+    public void reprendre() {
+        List<Long> ids = factureRepository.findIdsByStatutPdfIn(List.of(StatutPdf.EN_ATTENTE, StatutPdf.EN_COURS));
+        if (!ids.isEmpty()) {
+            logger.info("Reprise de {} rendus PDF en attente", ids.size());
+            lanceurLots.execute(() -> ids.forEach(this::planifier));
+        }
+    }
+
+    @PreDestroy
+    public void arreter() throws InterruptedException {
+        lanceurLots.shutdownNow();
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    // Clé enregistrée sur la facture ; à défaut, ancien fichier invoice_<id>.pdf à la racine du stockage
+    public Path chemin(Facture facture) {
+        String cle = facture.getPdfCle() != null ? facture.getPdfCle() : "invoice_" + facture.getId() + ".pdf";
+        return facturesBlobStore.chemin(cle);
+    }
+
+    /**
+     * Planifie le rendu une fois la transaction courante validée (immédiatement hors transaction).
+     */
+    public void planifierApresCommit(Long factureId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    planifier(factureId);
+                }
+            });
+        } else {
+            planifier(factureId);
+        }
+    }
+
+    public void planifier(Long factureId) {
+        if (!planifiees.add(factureId)) {
+            return;
+        }
+        try {
+            workers.execute(() -> rendre(factureId));
+        } catch (RejectedExecutionException e) {
+            // Arrêt en cours : le statut EN_ATTENTE est repris au prochain démarrage
+            planifiees.remove(factureId);
+        }
+    }
+
+    /**
+     * Régénère les PDF des factures datées de la période ; retourne le nombre de factures planifiées.
+     */
+    public int regenererPeriode(LocalDate debut, LocalDate fin) {
+        List<Long> ids = factureRepository.findIdsByDateFactureBetween(debut, fin);
+        for (int i = 0; i < ids.size(); i += TAILLE_LOT_STATUT) {
+            List<Long> lot = ids.subList(i, Math.min(i + TAILLE_LOT_STATUT, ids.size()));
+            transactionTemplate.executeWithoutResult(status -> factureRepository.marquerPdfPourIds(lot, StatutPdf.EN_ATTENTE));
+        }
+        lanceurLots.execute(() -> ids.forEach(this::planifier));
+        logger.info("Régénération de {} factures PDF du {} au {}", ids.size(), debut, fin);
+        return ids.size();
+    }
+
+    public Map<String, Object> statistiques() {
+        long nbRendus = rendus.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", workers.getMaximumPoolSize());
+        stats.put("actifs", workers.getActiveCount());
+        stats.put("enFile", workers.getQueue().size());
+        stats.put("rendus", nbRendus);
+        stats.put("echecs", echecs.get());
+        stats.put("dureeMoyenneMs", nbRendus == 0 ? 0 : dureeTotaleMs.get() / nbRendus);
+        return stats;
+    }
+
+    private void rendre(Long factureId) {
+        planifiees.remove(factureId);
+        long debut = System.currentTimeMillis();
+        try {
+            Facture facture = transactionTemplate.execute(status -> {
+                factureRepository.marquerPdf(factureId, StatutPdf.EN_COURS, null);
+                Facture chargee = factureRepository.findForRendu(factureId).orElse(null);
+                if (chargee != null) {
+                    Hibernate.initialize(chargee.getCommande().getTransactions());
+                }
+                return chargee;
+            });
+            if (facture == null) {
+                return;
+            }
+
+            byte[] pdf = rendu(facture);
+            String cle = enregistrer(factureId, pdf);
+
+            rendus.incrementAndGet();
+            dureeTotaleMs.addAndGet(System.currentTimeMillis() - debut);
+            logger.info("PDF generated successfully for invoice {}: {}", factureId, cle);
+        } catch (Exception e) {
+            echecs.incrementAndGet();
+            logger.error("Erreur lors de la génération du PDF pour la facture ID {}: {}", factureId, e.getMessage());
+            String message = e.getMessage() != null && e.getMessage().length() > 500 ? e.getMessage().substring(0, 500) : e.getMessage();
+            try {
+                transactionTemplate.executeWithoutResult(status -> factureRepository.marquerPdf(factureId, StatutPdf.ECHEC, message));
+            } catch (Exception ignored) {
+                // Statut laissé EN_COURS : repris au prochain démarrage
+            }
+        }
+    }
+
+    // Nouveau contenu référencé et clé posée sur la facture dans la même transaction ; l'ancien PDF est libéré ensuite
+    private String enregistrer(Long factureId, byte[] pdf) {
+        return transactionTemplate.execute(status -> {
+            String cleEnBase = factureRepository.findPdfCle(factureId);
+            String ancienne = cleEnBase != null ? cleEnBase : "invoice_" + factureId + ".pdf";
+            String cle;
+            try {
+                cle = facturesBlobStore.stocker(pdf, "pdf");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            factureRepository.marquerPdfGenere(factureId, LocalDateTime.now(), cle);
+            if (!ancienne.equals(cle)) {
+                facturesBlobStore.liberer(ancienne);
+            }
+            return cle;
+        });
+    }
+
+    private byte[] rendu(Facture facture) throws IOException {
+        if (facture.getUser() == null) {
+            throw new IllegalStateException("Utilisateur manquant pour la facture ID " + facture.getId());
+        }
+
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream(16 * 1024);
+        PdfDocument pdfDoc = new PdfDocument(new PdfWriter(sortie));
+        try (PdfDocument modele = new PdfDocument(new PdfReader(new ByteArrayInputStream(gabarit)))) {
+            PdfFormXObject fond = modele.getFirstPage().copyAsFormXObject(pdfDoc);
+            pdfDoc.addEventHandler(PdfDocumentEvent.START_PAGE, event ->
+                    new PdfCanvas(((PdfDocumentEvent) event).getPage()).addXObjectAt(fond, 0, 0));
+
+            PdfFont normal = PdfFontFactory.createFont(police, PdfEncodings.WINANSI);
+            PdfFont gras = PdfFontFactory.createFont(policeGras, PdfEncodings.WINANSI);
+            Style titre = new Style().setFont(gras);
+
+            Document doc = new Document(pdfDoc, PageSize.A4);
+            doc.setMargins(MARGE_HAUT, MARGE_COTE, MARGE_BAS, MARGE_COTE);
+            doc.setFont(normal);
+
+            // User Information
+            doc.add(new Paragraph("Détails de la Facture").addStyle(titre));
+            doc.add(new Paragraph(""));
+            doc.add(new Paragraph("Informations Utilisateur").addStyle(titre));
+            doc.add(new Paragraph("Nom: " + ouNA(facture.getUser().getNom())));
+            doc.add(new Paragraph("Email: " + ouNA(facture.getUser().getEmail())));
+            doc.add(new Paragraph("Téléphone: " + ouNA(facture.getUser().getNumeroDeTelephone())));
+            doc.add(new Paragraph(""));
+
+            // Delivery Information
+            Commande commande = facture.getCommande();
+            doc.add(new Paragraph("Informations de Livraison").addStyle(titre));
+            doc.add(new Paragraph("Téléphone: " + ouNA(commande.getTelephone())));
+            doc.add(new Paragraph("Gouvernorat: " + ouNA(commande.getGouvernement())));
+            doc.add(new Paragraph("Adresse: " + ouNA(commande.getAdresse())));
+            doc.add(new Paragraph(""));
+
+            // Invoice Details
+            doc.add(new Paragraph("Détails de la Facture").addStyle(titre));
+            doc.add(new Paragraph("Numéro de Facture: " + ouNA(facture.getNumeroFacture())));
+            doc.add(new Paragraph("Date de Facture: " + (facture.getDateFacture() != null ? facture.getDateFacture().toString() : "N/A")));
+            doc.add(new Paragraph("Commande ID: " + commande.getId()));
+            doc.add(new Paragraph("Statut: " + (commande.getStatus() != null ? commande.getStatus().toString() : "N/A")));
+            doc.add(new Paragraph(""));
+
+            // Payment Status
+            Set<TransactionPaiement> transactions = commande.getTransactions();
+            TransactionPaiement transaction = transactions.isEmpty() ? null : transactions.iterator().next();
+            doc.add(new Paragraph("Statut du paiement: " + (transaction == null ? "Non payé" : transaction.getPaymentStatus())));
+            if (transaction != null && transaction.getPaymentIntentId() != null) {
+                doc.add(new Paragraph("ID Paiement Stripe: " + transaction.getPaymentIntentId()));
+            }
+            doc.add(new Paragraph(""));
+
+            // Invoice Lines Table (lignes chargées avec la facture)
+            List<LigneFacture> lignesFacture = facture.getLignesFacture();
+            if (lignesFacture != null && !lignesFacture.isEmpty()) {
+                Table table = new Table(new float[]{2, 2, 1, 1, 1, 1});
+                for (String entete : List.of("Produit", "Description", "Quantité", "Prix Unitaire", "Total HT", "TTC")) {
+                    table.addHeaderCell(new Cell().add(new Paragraph(entete).addStyle(titre)));
+                }
+                for (LigneFacture ligne : lignesFacture) {
+                    table.addCell(new Cell().add(new Paragraph(ligne.getProduit() != null ? ouNA(ligne.getProduit().getNom()) : "N/A")));
+                    table.addCell(new Cell().add(new Paragraph(ligne.getProduit() != null ? ouNA(ligne.getProduit().getDescription()) : "N/A")));
+                    table.addCell(new Cell().add(new Paragraph(String.valueOf(ligne.getQte()))));
+                    table.addCell(new Cell().add(new Paragraph(String.format("%.2f", ligne.getPrixUnitaire() != null ? ligne.getPrixUnitaire() : 0.0))));
+                    table.addCell(new Cell().add(new Paragraph(String.format("%.2f", ligne.getTotal() != null ? ligne.getTotal() : 0.0))));
+                    table.addCell(new Cell().add(new Paragraph(String.format("%.2f", ligne.getTtc() != null ? ligne.getTtc() : 0.0))));
+                }
+                doc.add(table);
+                doc.add(new Paragraph(""));
+            } else {
+                doc.add(new Paragraph("Aucune ligne de facture disponible."));
+                doc.add(new Paragraph(""));
+            }
+
+            // Total Amount
+            doc.add(new Paragraph("Montant Total: TND " + String.format("%.2f", facture.getMontantTotal() != null ? facture.getMontantTotal() : 0.0)).addStyle(titre));
+            doc.close();
+        }
+        return sortie.toByteArray();
+    }
+
+    private byte[] construireGabarit() throws IOException {
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+        PdfDocument pdfDoc = new PdfDocument(new PdfWriter(sortie));
+        PdfPage page = pdfDoc.addNewPage(PageSize.A4);
+        PdfFont normal = PdfFontFactory.createFont(police, PdfEncodings.WINANSI);
+        PdfFont gras = PdfFontFactory.createFont(policeGras, PdfEncodings.WINANSI);
+        Rectangle taille = page.getPageSize();
+        float largeur = taille.getWidth() - 2 * MARGE_COTE;
+
+        PdfCanvas pdfCanvas = new PdfCanvas(page);
+        Canvas entete = new Canvas(pdfCanvas, new Rectangle(MARGE_COTE, taille.getTop() - 70, largeur, 40));
+        entete.add(new Paragraph("FACTURE").setFont(gras).setFontSize(18));
+        entete.close();
+        pdfCanvas.moveTo(MARGE_COTE, taille.getTop() - 75).lineTo(taille.getRight() - MARGE_COTE, taille.getTop() - 75).stroke();
+
+        pdfCanvas.moveTo(MARGE_COTE, MARGE_BAS - 20).lineTo(taille.getRight() - MARGE_COTE, MARGE_BAS - 20).stroke();
+        Canvas pied = new Canvas(pdfCanvas, new Rectangle(MARGE_COTE, 20, largeur, 28));
+        pied.add(new Paragraph("Document généré automatiquement - merci pour votre confiance")
+                .setFont(normal).setFontSize(8).setTextAlignment(TextAlignment.CENTER));
+        pied.close();
+
+        pdfDoc.close();
+        return sortie.toByteArray();
+    }
+
+    private static String ouNA(String valeur) {
+        return valeur == null || valeur.trim().isEmpty() ? "N/A" : valeur;
+    }
+}
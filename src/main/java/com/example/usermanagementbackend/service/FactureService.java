@@ -1,45 +1,40 @@
 package com.example.usermanagementbackend.service;
 
 import com.example.usermanagementbackend.entity.*;
+import com.example.usermanagementbackend.enums.StatutPdf;
 import com.example.usermanagementbackend.repository.CommandeRepository;
 import com.example.usermanagementbackend.repository.FactureRepository;
-import com.example.usermanagementbackend.repository.TransactionPaiementRepository;
-import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
-import com.itextpdf.layout.element.Cell;
-import com.itextpdf.layout.element.Paragraph;
-import com.itextpdf.layout.element.Table;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 
 @Service
 public class FactureService {
 
     private static final Logger logger = LoggerFactory.getLogger(FactureService.class);
-    private static final double TAX_RATE = 0.20; // Consistent with LigneFactureService
 
     private final FactureRepository factureRepository;
     private final CommandeRepository commandeRepository;
     private final LigneFactureService ligneFactureService;
-    private final TransactionPaiementRepository transactionPaiementRepository;
+    private final FacturePdfRenderer facturePdfRenderer;
+    private final BlobStore facturesBlobStore;
 
     public FactureService(FactureRepository factureRepository, CommandeRepository commandeRepository,
-                          LigneFactureService ligneFactureService, TransactionPaiementRepository transactionPaiementRepository) {
+                          LigneFactureService ligneFactureService, FacturePdfRenderer facturePdfRenderer, @Qualifier("facturesBlobStore") BlobStore facturesBlobStore) {
         this.factureRepository = factureRepository;
         this.commandeRepository = commandeRepository;
         this.ligneFactureService = ligneFactureService;
-        this.transactionPaiementRepository = transactionPaiementRepository;
+        this.facturePdfRenderer = facturePdfRenderer;
+        this.facturesBlobStore = facturesBlobStore;
     }
 
     public List<Facture> getAllFactures() {
@@ -105,6 +100,7 @@ public class FactureService {
         if (facture.getNumeroFacture() == null) {
             facture.setNumeroFacture("FACT-" + System.currentTimeMillis());
         }
+        facture.setStatutPdf(StatutPdf.EN_ATTENTE);
 
         Facture savedFacture = factureRepository.save(facture);
 
@@ -120,13 +116,57 @@ public class FactureService {
                 savedFacture.getUser() != null ? savedFacture.getUser().getNom() : "null",
                 savedFacture.getCommande().getId());
 
-        try {
-            generateInvoicePDF(savedFacture);
-        } catch (Exception e) {
-            logger.error("Erreur lors de la génération du PDF pour la facture ID {}: {}", savedFacture.getId(), e.getMessage());
-            throw new RuntimeException("Échec de la génération du PDF pour la facture", e);
+        facturePdfRenderer.planifierApresCommit(savedFacture.getId());
+
+        return savedFacture;
+    }
+
+    /**
+     * Facture unique d'une transaction réglée, construite à partir des commandes déjà chargées
+     * (utilisateur, lignes et produits). Les lignes sont persistées en cascade, le PDF est planifié après le commit.
+     */
+    @Transactional
+    public Facture creerFactureTransaction(Long transactionId, List<Commande> commandes) {
+        Commande premiere = commandes.get(0);
+        User user = premiere.getUser();
+
+        Facture facture = new Facture();
+        List<LigneFacture> lignesFacture = new ArrayList<>();
+        double montantTotal = 0.0;
+        for (Commande commande : commandes) {
+            for (LigneCommande ligneCommande : commande.getLignesCommande()) {
+                LigneFacture ligneFacture = new LigneFacture();
+                ligneFacture.setFacture(facture);
+                ligneFacture.setProduit(ligneCommande.getProduit());
+                ligneFacture.setQte(ligneCommande.getQte() != null ? ligneCommande.getQte() : 0);
+                ligneFacture.setPrixUnitaire(ligneCommande.getPrixUnitaire() != null ? ligneCommande.getPrixUnitaire() : 0.0);
+                ligneFacture.setTotal(ligneCommande.getTotal());
+                ligneFacture.setTtc(ligneCommande.getTtc() != null ? ligneCommande.getTtc() : ligneCommande.getTotal());
+                lignesFacture.add(ligneFacture);
+                montantTotal += ligneFacture.getTtc();
+            }
+        }
+
+        if (user.getCreditLimit() != null && montantTotal > user.getCreditLimit()) {
+            throw new IllegalArgumentException("Le montant total de la facture dépasse la limite de crédit de l'utilisateur");
         }
+        if (montantTotal <= 0) {
+            throw new IllegalArgumentException("Le montant total de la facture doit être supérieur à 0");
+        }
+
+        facture.setCommande(premiere);
+        facture.setUser(user);
+        facture.setMontantTotal(montantTotal);
+        facture.setDateFacture(LocalDate.now());
+        // Numéro stable : une transaction ne produit qu'une facture
+        facture.setNumeroFacture("FACT-TRANS-" + transactionId);
+        facture.setLignesFacture(lignesFacture);
+        facture.setStatutPdf(StatutPdf.EN_ATTENTE);
+
+        Facture savedFacture = factureRepository.save(facture);
+        logger.info("Facture créée: ID={}, transaction={}, {} lignes", savedFacture.getId(), transactionId, lignesFacture.size());
 
+        facturePdfRenderer.planifierApresCommit(savedFacture.getId());
         return savedFacture;
     }
 
@@ -150,6 +190,7 @@ public class FactureService {
             existing.setUser(existing.getCommande().getUser());
         }
 
+        existing.setStatutPdf(StatutPdf.EN_ATTENTE);
         Facture savedFacture = factureRepository.save(existing);
 
         // Log the facture data before generating PDF
@@ -158,119 +199,33 @@ public class FactureService {
                 savedFacture.getUser() != null ? savedFacture.getUser().getNom() : "null",
                 savedFacture.getCommande().getId());
 
-        try {
-            generateInvoicePDF(savedFacture);
-        } catch (Exception e) {
-            logger.error("Erreur lors de la génération du PDF pour la facture mise à jour ID {}: {}", savedFacture.getId(), e.getMessage());
-            throw new RuntimeException("Échec de la génération du PDF pour la facture mise à jour", e);
-        }
+        facturePdfRenderer.planifierApresCommit(savedFacture.getId());
 
         return savedFacture;
     }
 
-    public void deleteFacture(Long id) {
-        if (!factureRepository.existsById(id)) {
-            throw new RuntimeException("Facture non trouvée avec l'ID: " + id);
+    public int regenererPdf(LocalDate debut, LocalDate fin) {
+        if (debut == null || fin == null || fin.isBefore(debut)) {
+            throw new IllegalArgumentException("Période invalide");
         }
-        factureRepository.deleteById(id);
+        return facturePdfRenderer.regenererPeriode(debut, fin);
     }
 
-    private void generateInvoicePDF(Facture facture) {
-        String pdfPath = "invoices/invoice_" + facture.getId() + ".pdf";
-        try {
-            if (facture == null || facture.getCommande() == null) {
-                throw new IllegalArgumentException("Facture ou commande invalide");
-            }
-
-            // Validate critical data
-            if (facture.getUser() == null) {
-                logger.warn("Utilisateur manquant pour la facture ID {}", facture.getId());
-                throw new IllegalStateException("Utilisateur manquant pour la facture ID " + facture.getId());
-            }
-
-            Path invoicesDir = Paths.get("invoices");
-            if (!Files.exists(invoicesDir)) {
-                Files.createDirectories(invoicesDir);
-                logger.info("Created 'invoices' directory at: {}", invoicesDir.toAbsolutePath());
-            }
+    public Path getCheminPdf(Facture facture) {
+        return facturePdfRenderer.chemin(facture);
+    }
 
-            PdfDocument pdfDoc = new PdfDocument(new PdfWriter(pdfPath));
-            Document doc = new Document(pdfDoc);
-
-            // User Information
-            doc.add(new Paragraph("Détails de la Facture").setBold());
-            doc.add(new Paragraph(""));
-            doc.add(new Paragraph("Informations Utilisateur").setBold());
-            String userName = facture.getUser().getNom() != null ? facture.getUser().getNom() : "N/A";
-            doc.add(new Paragraph("Nom: " + userName));
-            String userEmail = facture.getUser().getEmail() != null ? facture.getUser().getEmail() : "N/A";
-            doc.add(new Paragraph("Email: " + userEmail));
-            String userPhone = facture.getUser().getNumeroDeTelephone() != null ? facture.getUser().getNumeroDeTelephone() : "N/A";
-            doc.add(new Paragraph("Téléphone: " + userPhone));
-            doc.add(new Paragraph(""));
-
-            // Delivery Information
-            Commande commande = facture.getCommande();
-            doc.add(new Paragraph("Informations de Livraison").setBold());
-            doc.add(new Paragraph("Téléphone: " + (commande.getTelephone() != null ? commande.getTelephone() : "N/A")));
-            doc.add(new Paragraph("Gouvernorat: " + (commande.getGouvernement() != null ? commande.getGouvernement() : "N/A")));
-            doc.add(new Paragraph("Adresse: " + (commande.getAdresse() != null ? commande.getAdresse() : "N/A")));
-            doc.add(new Paragraph(""));
-
-            // Invoice Details
-            doc.add(new Paragraph("Détails de la Facture").setBold());
-            doc.add(new Paragraph("Numéro de Facture: " + (facture.getNumeroFacture() != null ? facture.getNumeroFacture() : "N/A")));
-            doc.add(new Paragraph("Date de Facture: " + (facture.getDateFacture() != null ? facture.getDateFacture().toString() : "N/A")));
-            doc.add(new Paragraph("Commande ID: " + commande.getId()));
-            doc.add(new Paragraph("Statut: " + (commande.getStatus() != null ? commande.getStatus().toString() : "N/A")));
-            doc.add(new Paragraph(""));
-
-            // Payment Status
-            Set<TransactionPaiement> transactions = commande.getTransactions();
-            String paymentStatus = transactions.isEmpty() ? "Non payé" : transactions.iterator().next().getPaymentStatus();
-            doc.add(new Paragraph("Statut du paiement: " + paymentStatus));
-            if (!transactions.isEmpty()) {
-                TransactionPaiement transaction = transactions.iterator().next();
-                if (transaction.getPaymentIntentId() != null) {
-                    doc.add(new Paragraph("ID Paiement Stripe: " + transaction.getPaymentIntentId()));
-                }
-            }
-            doc.add(new Paragraph(""));
-
-            // Invoice Lines Table
-            List<LigneFacture> lignesFacture = ligneFactureService.getLignesFactureByFactureId(facture.getId());
-            if (!lignesFacture.isEmpty()) {
-                Table table = new Table(new float[]{2, 2, 1, 1, 1, 1});
-                table.addHeaderCell(new Cell().add(new Paragraph("Produit").setBold()));
-                table.addHeaderCell(new Cell().add(new Paragraph("Description").setBold()));
-                table.addHeaderCell(new Cell().add(new Paragraph("Quantité").setBold()));
-                table.addHeaderCell(new Cell().add(new Paragraph("Prix Unitaire").setBold()));
-                table.addHeaderCell(new Cell().add(new Paragraph("Total HT").setBold()));
-                table.addHeaderCell(new Cell().add(new Paragraph("TTC").setBold()));
-
-                for (LigneFacture ligne : lignesFacture) {
-                    table.addCell(new Cell().add(new Paragraph(ligne.getProduit() != null && ligne.getProduit().getNom() != null ? ligne.getProduit().getNom() : "N/A")));
-                    table.addCell(new Cell().add(new Paragraph(ligne.getProduit() != null && ligne.getProduit().getDescription() != null ? ligne.getProduit().getDescription() : "N/A")));
-                    table.addCell(new Cell().add(new Paragraph(String.valueOf(ligne.getQte()))));
-                    table.addCell(new Cell().add(new Paragraph(String.format("%.2f", ligne.getPrixUnitaire()))));
-                    table.addCell(new Cell().add(new Paragraph(String.format("%.2f", ligne.getTotal() != null ? ligne.getTotal() : 0.0))));
-                    table.addCell(new Cell().add(new Paragraph(String.format("%.2f", ligne.getTtc() != null ? ligne.getTtc() : 0.0))));
-                }
-
-                doc.add(table);
-                doc.add(new Paragraph(""));
-            } else {
-                doc.add(new Paragraph("Aucune ligne de facture disponible."));
-                doc.add(new Paragraph(""));
-            }
+    public Map<String, Object> getStatistiquesPdf() {
+        return facturePdfRenderer.statistiques();
+    }
 
-            // Total Amount
-            doc.add(new Paragraph("Montant Total: TND " + String.format("%.2f", facture.getMontantTotal() != null ? facture.getMontantTotal() : 0.0)).setBold());
-            doc.close();
-            logger.info("PDF generated successfully at: {}", pdfPath);
-        } catch (Exception e) {
-            logger.error("Erreur lors de la génération du PDF: {} ({})", pdfPath, e.getMessage());
-            throw new RuntimeException("Erreur lors de la génération du PDF: " + pdfPath, e);
+    @Transactional
+    public void deleteFacture(Long id) {
+        if (!factureRepository.existsById(id)) {
+            throw new RuntimeException("Facture non trouvée avec l'ID: " + id);
         }
+        String pdfCle = factureRepository.findPdfCle(id);
+        factureRepository.deleteById(id);
+        facturesBlobStore.liberer(pdfCle != null ? pdfCle : "invoice_" + id + ".pdf");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package com.example.usermanagementbackend.service;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Envoi de fichiers locaux (factures PDF, images uploadées) sans les charger en mémoire : le corps est une
+ * FileSystemResource recopiée par blocs dans la réponse. Spring MVC traite alors seul les requêtes Range (206)
+ * et répond 304 aux If-None-Match / If-Modified-Since grâce aux validateurs ETag et Last-Modified posés ici.
+ */
+@Service
+public class FichierStreamingService {
+
+    public ResponseEntity<Resource> servir(Path fichier, String nomTelechargement, boolean pieceJointe, CacheControl cacheControl) {
+        if (fichier == null || !Files.isRegularFile(fichier) || !Files.isReadable(fichier)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        BasicFileAttributes attributs;
+        try {
+            attributs = Files.readAttributes(fichier, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return ResponseEntity.notFound().build();
+        }
+        long modifie = attributs.lastModifiedTime().toMillis();
+        // Taille + date de modification : change à chaque réécriture du fichier (rendu PDF, nouvel upload)
+        String etag = "\"" + Long.toHexString(attributs.size()) + "-" + Long.toHexString(modifie) + "\"";
+
+        ContentDisposition disposition = (pieceJointe ? ContentDisposition.attachment() : ContentDisposition.inline())
+                .filename(nomTelechargement != null ? nomTelechargement : fichier.getFileName().toString())
+                .build();
+
+        return ResponseEntity.ok()
+                .contentType(typeDe(fichier))
+                .eTag(etag)
+                .lastModified(modifie)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                .body(new FileSystemResource(fichier));
+    }
+
+    // Type déduit de l'extension, puis du contenu via le système ; octet-stream à défaut
+    private MediaType typeDe(Path fichier) {
+        return MediaTypeFactory.getMediaType(fichier.getFileName().toString())
+                .orElseGet(() -> {
+                    try {
+                        String type = Files.probeContentType(fichier);
+                        return type != null ? MediaType.parseMediaType(type) : MediaType.APPLICATION_OCTET_STREAM;
+                    } catch (Exception e) {
+                        return MediaType.APPLICATION_OCTET_STREAM;
+                    }
+                });
+    }
+}
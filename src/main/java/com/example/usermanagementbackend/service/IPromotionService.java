@@ -1,5 +1,6 @@
 package com.example.usermanagementbackend.service;
 
+import com.example.usermanagementbackend.dto.PromotionDynamiqueDTO;
 import com.example.usermanagementbackend.entity.Produit;
 import com.example.usermanagementbackend.entity.Promotion;
 
@@ -13,11 +14,11 @@ public interface IPromotionService {
     Promotion createPromotion(Promotion promotion);
     Promotion updatePromotion(Integer id, Promotion promotion);
     void deletePromotion(Integer id);
-    void appliquerPromotionExpirationProduit();
-    void bulkActivate(List<Integer> ids);
-    void bulkDeactivate(List<Integer> ids);
+    Map<String, Object> appliquerPromotionExpirationProduit();
+    int bulkActivate(List<Integer> ids);
+    int bulkDeactivate(List<Integer> ids);
     void bulkDelete(List<Integer> ids);
     List<Produit> getProduitsProchesExpiration();
     // Nouvelle méthode pour récupérer les promotions dynamiques
-    Map<String, List<Map<String, Object>>> getDynamicPromotions();
+    Map<String, List<PromotionDynamiqueDTO>> getDynamicPromotions();
 }
@@ -7,8 +7,8 @@ import com.example.usermanagementbackend.mapper.LivreurMapper;
 import com.example.usermanagementbackend.repository.LivreurRepository;
 import com.example.usermanagementbackend.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.MediaType;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -16,10 +16,9 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 
 import java.io.IOException;
-import java.nio.file.*;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,8 +30,12 @@ public class LivreurService {
     @Autowired
     private UserRepository userRepository;
 
-    @Value("${upload.directory}")
-    private String uploadDir;
+    @Autowired
+    private FichierStreamingService fichierStreamingService;
+
+    @Autowired
+    @Qualifier("uploadsBlobStore")
+    private BlobStore uploadsBlobStore;
 
     public List<LivreurDTO> getAllLivreurs() {
         return livreurRepository.findAll().stream()
@@ -49,6 +52,7 @@ public class LivreurService {
         return LivreurMapper.toDTO(livreur);
     }
 
+    // Renvoie l'URL servie par getPhoto (GET /api/livreurs/{id}/photo), qui résout la clé vers son chemin partitionné
     public String uploadPhoto(Long livreurId, MultipartFile file) throws IOException {
         Livreur livreur = livreurRepository.findById(livreurId)
                 .orElseThrow(() -> new ResponseStatusException(
@@ -56,26 +60,24 @@ public class LivreurService {
                         "Livreur not found with id: " + livreurId
                 ));
 
-        String fileName = UUID.randomUUID().toString() + "_" + file.getOriginalFilename();
-        Path uploadPath = Paths.get(uploadDir);
+        String fileName = uploadsBlobStore.stocker(file.getInputStream(), BlobStore.extension(file.getOriginalFilename()));
 
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
+        // Release old photo if exists
+        String anciennePhoto = livreur.getPhoto();
+        livreur.setPhoto(fileName);
+        try {
+            livreurRepository.save(livreur);
+        } catch (RuntimeException e) {
+            // Aucune ligne ne référence le nouveau blob : sa référence est rendue
+            uploadsBlobStore.liberer(fileName);
+            throw e;
         }
-
-        Path filePath = uploadPath.resolve(fileName);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-
-        // Delete old photo if exists
-        if (livreur.getPhoto() != null) {
-            Path oldFilePath = uploadPath.resolve(livreur.getPhoto());
-            Files.deleteIfExists(oldFilePath);
+        // Toujours libérée, même identique : stocker() a pris une nouvelle référence
+        if (anciennePhoto != null) {
+            uploadsBlobStore.liberer(anciennePhoto);
         }
 
-        livreur.setPhoto(fileName);
-        livreurRepository.save(livreur);
-
-        return "/uploads/" + fileName;
+        return "/api/livreurs/" + livreurId + "/photo";
     }
 
     public ResponseEntity<?> getPhoto(Long id) {
@@ -85,32 +87,10 @@ public class LivreurService {
                 return ResponseEntity.notFound().build();
             }
 
-            Path path = Paths.get(uploadDir, filename);
-            if (!Files.exists(path)) {
-                return ResponseEntity.notFound().build();
-            }
-
-            try {
-                byte[] content = Files.readAllBytes(path);
-                return ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_JPEG)
-                        .body(content);
-            } catch (IOException e) {
-                return ResponseEntity.internalServerError().build();
-            }
+            return fichierStreamingService.servir(uploadsBlobStore.chemin(filename), filename, false, CacheControl.maxAge(1, TimeUnit.HOURS));
         }).orElse(ResponseEntity.notFound().build());
     }
 
-    private MediaType getMediaType(String filename) {
-        if (filename.endsWith(".png")) {
-            return MediaType.IMAGE_PNG;
-        } else if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) {
-            return MediaType.IMAGE_JPEG;
-        } else {
-            return MediaType.APPLICATION_OCTET_STREAM;
-        }
-    }
-
     public LivreurDTO createLivreurForUser(Long userId) {
         try {
             // Find the user
@@ -0,0 +1,74 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Produit;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Invalide le cache catalogue pour toute écriture d'entité Produit (CRUD, promotions), une fois la transaction
+ * validée : une lecture concurrente ne peut plus remettre en cache l'état d'avant le commit.
+ * Les UPDATE groupés de StockReservationService et PromotionService invalident eux-mêmes le cache.
+ */
+@Component
+public class ProduitCacheListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final ProduitCatalogCache produitCatalogCache;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public ProduitCacheListener(ProduitCatalogCache produitCatalogCache, EntityManagerFactory entityManagerFactory) {
+        this.produitCatalogCache = produitCatalogCache;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void enregistrer() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().requireService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Produit produit) {
+            produitCatalogCache.invaliderMaintenant(produit.getId());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Produit produit) {
+            produitCatalogCache.invaliderMaintenant(produit.getId());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Produit produit) {
+            produitCatalogCache.invaliderMaintenant(produit.getId());
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return Produit.class.equals(persister.getMappedClass());
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Produit;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cache en lecture du catalogue produits (Caffeine) : produits par id, liste complète et
+ * vue précalculée des meilleures ventes. Invalidé après le commit de chaque écriture sur Produit :
+ * par ProduitCacheListener pour les entités, par invalider() pour les UPDATE groupés.
+ * <p>
+ * Le cache ne contient jamais d'entité gérée : il garde des copies détachées, sans la collection paresseuse
+ * promotions (non sérialisée), et chaque lecture reçoit sa propre copie, que l'appelant peut modifier.
+ */
+@Component
+public class ProduitCatalogCache {
+
+    public static final int TAILLE_TOP_VENTES = 100;
+
+    private static final String CLE_CATALOGUE = "catalogue";
+    private static final String CLE_TOP_VENTES = "top-ventes";
+
+    private final Cache<Long, Produit> produitsParId;
+    private final Cache<String, List<Produit>> listes;
+
+    public ProduitCatalogCache(@Value("${produit.cache.taille-max:10000}") long tailleMax,
+                               @Value("${produit.cache.ttl-minutes:10}") long ttlMinutes) {
+        this.produitsParId = Caffeine.newBuilder()
+                .maximumSize(tailleMax)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        this.listes = Caffeine.newBuilder()
+                .maximumSize(16)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+    }
+
+    public Produit produit(Long id, Function<Long, Produit> chargement) {
+        return copie(produitsParId.get(id, cle -> copie(chargement.apply(cle))));
+    }
+
+    public List<Produit> catalogue(Supplier<List<Produit>> chargement) {
+        return copies(listes.get(CLE_CATALOGUE, cle -> copies(chargement.get())));
+    }
+
+    public List<Produit> topVentes(Supplier<List<Produit>> chargement) {
+        return copies(listes.get(CLE_TOP_VENTES, cle -> copies(chargement.get())));
+    }
+
+    /**
+     * À appeler après tout UPDATE groupé sur produit : invalide tout de suite puis de nouveau après le commit.
+     */
+    public void invalider(Long id) {
+        invaliderMaintenant(id);
+        // Une lecture concurrente peut recharger l'ancienne valeur avant le commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invaliderMaintenant(id);
+                }
+            });
+        }
+    }
+
+    public void invaliderTout() {
+        produitsParId.invalidateAll();
+        listes.invalidateAll();
+    }
+
+    // Écouteur post-commit : la transaction est déjà validée
+    void invaliderMaintenant(Long id) {
+        if (id != null) {
+            produitsParId.invalidate(id);
+        }
+        listes.invalidateAll();
+    }
+
+    private static List<Produit> copies(List<Produit> produits) {
+        List<Produit> copies = new ArrayList<>(produits.size());
+        for (Produit produit : produits) {
+            copies.add(copie(produit));
+        }
+        return copies;
+    }
+
+    private static Produit copie(Produit source) {
+        Produit copie = new Produit();
+        copie.setId(source.getId());
+        copie.setNom(source.getNom());
+        copie.setDateExpiration(source.getDateExpiration() != null ? new Date(source.getDateExpiration().getTime()) : null);
+        copie.setDescription(source.getDescription());
+        copie.setPrix(source.getPrix());
+        copie.setDevise(source.getDevise());
+        copie.setTaxe(source.getTaxe());
+        copie.setStock(source.getStock());
+        copie.setSeuilMin(source.getSeuilMin());
+        copie.setFournisseur(source.getFournisseur());
+        copie.setFournisseurId(source.getFournisseurId());
+        copie.setAutoReapprovisionnement(source.isAutoReapprovisionnement());
+        copie.setQuantiteReapprovisionnement(source.getQuantiteReapprovisionnement());
+        copie.setCategory(source.getCategory());
+        copie.setImage(source.getImage());
+        copie.setSalesCount(source.getSalesCount());
+        copie.setVersion(source.getVersion());
+        copie.setPromotions(new ArrayList<>());
+        return copie;
+    }
+
+    public Map<String, Object> statistiques() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("produits", statistiques(produitsParId.stats(), produitsParId.estimatedSize()));
+        stats.put("listes", statistiques(listes.stats(), listes.estimatedSize()));
+        return stats;
+    }
+
+    private Map<String, Object> statistiques(CacheStats cacheStats, long taille) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("taille", taille);
+        stats.put("hits", cacheStats.hitCount());
+        stats.put("misses", cacheStats.missCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        stats.put("evictions", cacheStats.evictionCount());
+        stats.put("tempsChargementMoyenMs", cacheStats.averageLoadPenalty() / 1_000_000.0);
+        return stats;
+    }
+}
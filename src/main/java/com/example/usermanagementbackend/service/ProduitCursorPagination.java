@@ -0,0 +1,160 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.dto.ProduitCursorPageDTO;
+import com.example.usermanagementbackend.entity.Produit;
+import com.example.usermanagementbackend.enums.Category;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Pagination par curseur (keyset) des produits : chaque page reprend après la dernière clé
+ * de tri et le dernier id, sans OFFSET ni COUNT, donc en temps constant quelle que soit la profondeur.
+ * Le curseur est un jeton opaque (Base64 de "tri|valeur|id").
+ */
+@Component
+public class ProduitCursorPagination {
+
+    public static final int TAILLE_MAX = 100;
+
+    /**
+     * Champs de tri autorisés, tous couverts par un index (l'id est implicitement inclus par InnoDB).
+     */
+    public enum TriProduit {
+        ID("id"), NOM("nom"), PRIX("prix"), VENTES("salesCount");
+
+        private final String propriete;
+
+        TriProduit(String propriete) {
+            this.propriete = propriete;
+        }
+
+        public String getPropriete() {
+            return propriete;
+        }
+
+        public static TriProduit depuis(String propriete) {
+            for (TriProduit tri : values()) {
+                if (tri.propriete.equals(propriete)) return tri;
+            }
+            throw new IllegalArgumentException("⚠️ Tri non supporté: " + propriete);
+        }
+
+        Object valeur(Produit produit) {
+            return switch (this) {
+                case ID -> produit.getId();
+                case NOM -> produit.getNom();
+                case PRIX -> produit.getPrix();
+                case VENTES -> produit.getSalesCount();
+            };
+        }
+
+        Object parser(String valeur) {
+            return switch (this) {
+                case ID -> Long.valueOf(valeur);
+                case NOM -> valeur;
+                case PRIX -> Double.valueOf(valeur);
+                case VENTES -> Integer.valueOf(valeur);
+            };
+        }
+    }
+
+    private final EntityManager entityManager;
+
+    public ProduitCursorPagination(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Transactional(readOnly = true)
+    public ProduitCursorPageDTO page(String curseur, int taille, String triPar, Category category, boolean avecTotal) {
+        if (taille < 1 || taille > TAILLE_MAX) {
+            throw new IllegalArgumentException("⚠️ La taille de page doit être comprise entre 1 et " + TAILLE_MAX);
+        }
+
+        boolean descendant = triPar != null && triPar.startsWith("-");
+        TriProduit tri = triPar == null || triPar.isEmpty()
+                ? TriProduit.ID
+                : TriProduit.depuis(descendant ? triPar.substring(1) : triPar);
+        String champ = "p." + tri.getPropriete();
+        String sens = descendant ? "DESC" : "ASC";
+        String comparaison = descendant ? "<" : ">";
+
+        StringBuilder jpql = new StringBuilder("SELECT p FROM Produit p WHERE 1 = 1");
+        if (category != null) {
+            jpql.append(" AND p.category = :category");
+        }
+        if (tri == TriProduit.NOM) {
+            // Les produits sans nom n'ont pas de clé de tri exploitable
+            jpql.append(" AND p.nom IS NOT NULL");
+        }
+
+        Object[] position = curseur != null && !curseur.isEmpty() ? decoder(curseur, tri) : null;
+        if (position != null) {
+            if (tri == TriProduit.ID) {
+                jpql.append(" AND p.id ").append(comparaison).append(" :dernierId");
+            } else {
+                jpql.append(" AND (").append(champ).append(' ').append(comparaison).append(" :derniereValeur OR (")
+                        .append(champ).append(" = :derniereValeur AND p.id ").append(comparaison).append(" :dernierId))");
+            }
+        }
+        jpql.append(" ORDER BY ");
+        if (tri != TriProduit.ID) {
+            jpql.append(champ).append(' ').append(sens).append(", ");
+        }
+        jpql.append("p.id ").append(sens);
+
+        TypedQuery<Produit> query = entityManager.createQuery(jpql.toString(), Produit.class);
+        if (category != null) {
+            query.setParameter("category", category);
+        }
+        if (position != null) {
+            query.setParameter("dernierId", position[1]);
+            if (tri != TriProduit.ID) {
+                query.setParameter("derniereValeur", position[0]);
+            }
+        }
+        // Une ligne de plus pour savoir s'il existe une page suivante
+        List<Produit> produits = new ArrayList<>(query.setMaxResults(taille + 1).getResultList());
+
+        boolean suivante = produits.size() > taille;
+        if (suivante) {
+            produits = produits.subList(0, taille);
+        }
+        String prochainCurseur = suivante ? encoder(tri, produits.get(produits.size() - 1)) : null;
+
+        Long total = null;
+        if (avecTotal) {
+            TypedQuery<Long> count = entityManager.createQuery(
+                    "SELECT COUNT(p) FROM Produit p WHERE (:category IS NULL OR p.category = :category)", Long.class);
+            total = count.setParameter("category", category).getSingleResult();
+        }
+        return new ProduitCursorPageDTO(produits, prochainCurseur, suivante, total);
+    }
+
+    private static String encoder(TriProduit tri, Produit dernier) {
+        String brut = tri.name() + "|" + tri.valeur(dernier) + "|" + dernier.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(brut.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object[] decoder(String curseur, TriProduit tri) {
+        try {
+            String brut = new String(Base64.getUrlDecoder().decode(curseur), StandardCharsets.UTF_8);
+            int premier = brut.indexOf('|');
+            int dernier = brut.lastIndexOf('|');
+            if (premier < 0 || premier == dernier || !brut.substring(0, premier).equals(tri.name())) {
+                throw new IllegalArgumentException("curseur incompatible avec le tri demandé");
+            }
+            Object valeur = tri.parser(brut.substring(premier + 1, dernier));
+            Long id = Long.valueOf(brut.substring(dernier + 1));
+            return new Object[]{valeur, id};
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("⚠️ Curseur invalide: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Produit;
+import com.example.usermanagementbackend.enums.Category;
+import com.example.usermanagementbackend.repository.ProduitRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Index inversé en mémoire pour la recherche de produits (nom, fournisseur).
+ * Les termes sont normalisés (minuscules, sans accents) et indexés par champ ; un index de
+ * trigrammes sur le vocabulaire permet la recherche par sous-chaîne et la recherche approchée.
+ * Il est maintenu après le commit des écritures : par ProduitSearchIndexListener pour les entités, par
+ * reindexerApresCommit pour les UPDATE groupés (ventes, remises) qui ne passent pas par Hibernate.
+ */
+@Component
+public class ProduitSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProduitSearchIndex.class);
+
+    private static final int TAILLE_LOT_CHARGEMENT = 1000;
+    private static final double[] BORNES_PRIX = {5, 10, 20, 50, 100};
+
+    private static final double SCORE_EXACT = 3.0;
+    private static final double SCORE_PREFIXE = 2.0;
+    private static final double SCORE_SOUS_CHAINE = 1.5;
+    private static final double SCORE_APPROCHE = 1.0;
+
+    public enum Champ {
+        NOM(2.0), FOURNISSEUR(1.0);
+
+        private final double poids;
+
+        Champ(double poids) {
+            this.poids = poids;
+        }
+    }
+
+    public record Critere(String texte, Set<Champ> champs) {
+    }
+
+    public record Resultat(List<Long> ids, long total,
+                           Map<String, Long> facetteCategories, Map<String, Long> facettePrix) {
+    }
+
+    private static final class Document {
+        long id;
+        String nomTri;
+        Map<Champ, Set<String>> termes = new EnumMap<>(Champ.class);
+        Category category;
+        double prix;
+        int salesCount;
+    }
+
+    private final ProduitRepository produitRepository;
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final Map<Champ, TreeMap<String, Set<Long>>> postings = new EnumMap<>(Champ.class);
+    private final Map<String, Set<String>> termesParTrigramme = new HashMap<>();
+    private volatile boolean charge = false;
+
+    public ProduitSearchIndex(ProduitRepository produitRepository) {
+        this.produitRepository = produitRepository;
+        for (Champ champ : Champ.values()) {
+            postings.put(champ, new TreeMap<>());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void chargerAuDemarrage() {
+        try {
+            recharger();
+        } catch (Exception e) {
+            logger.error("Impossible de charger l'index de recherche produits : {}", e.getMessage());
+        }
+    }
+
+    public void recharger() {
+        verrou.writeLock().lock();
+        try {
+            documents.clear();
+            postings.values().forEach(Map::clear);
+            termesParTrigramme.clear();
+
+            long dernierId = 0L;
+            List<Object[]> lot;
+            do {
+                lot = produitRepository.findIndexationAfter(dernierId, PageRequest.of(0, TAILLE_LOT_CHARGEMENT));
+                for (Object[] ligne : lot) {
+                    dernierId = (Long) ligne[0];
+                    ajouter(document(dernierId, (String) ligne[1], (String) ligne[2], (Category) ligne[3],
+                            ligne[4] != null ? ((Number) ligne[4]).doubleValue() : 0.0,
+                            ligne[5] != null ? ((Number) ligne[5]).intValue() : 0));
+                }
+            } while (lot.size() == TAILLE_LOT_CHARGEMENT);
+
+            charge = true;
+            logger.info("Index de recherche produits chargé : {} produits, {} termes",
+                    documents.size(), termesParTrigramme.size());
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    public void indexer(Produit produit) {
+        if (produit.getId() == null) return;
+        remplacer(document(produit.getId(), produit.getNom(), produit.getFournisseur(),
+                produit.getCategory(), produit.getPrix(),
+                produit.getSalesCount() != null ? produit.getSalesCount() : 0));
+    }
+
+    private void remplacer(Document document) {
+        verrou.writeLock().lock();
+        try {
+            retirerDocument(document.id);
+            ajouter(document);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Relit en base les produits modifiés par un UPDATE groupé, une fois la transaction en cours validée
+     * (immédiatement hors transaction). Un rollback laisse l'index inchangé.
+     */
+    public void reindexerApresCommit(Collection<Long> ids) {
+        if (ids.isEmpty()) return;
+        List<Long> aRelire = List.copyOf(ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reindexer(aRelire);
+                }
+            });
+        } else {
+            reindexer(aRelire);
+        }
+    }
+
+    private void reindexer(List<Long> ids) {
+        try {
+            Set<Long> absents = new HashSet<>(ids);
+            for (int i = 0; i < ids.size(); i += TAILLE_LOT_CHARGEMENT) {
+                for (Object[] ligne : produitRepository.findIndexationByIds(ids.subList(i, Math.min(i + TAILLE_LOT_CHARGEMENT, ids.size())))) {
+                    Document document = document((Long) ligne[0], (String) ligne[1], (String) ligne[2], (Category) ligne[3],
+                            ligne[4] != null ? ((Number) ligne[4]).doubleValue() : 0.0,
+                            ligne[5] != null ? ((Number) ligne[5]).intValue() : 0);
+                    absents.remove(document.id);
+                    remplacer(document);
+                }
+            }
+            absents.forEach(this::retirer);
+        } catch (Exception e) {
+            // L'index reste utilisable ; les valeurs seront corrigées à la prochaine écriture ou au prochain rechargement
+            logger.warn("Réindexation des produits {} impossible : {}", ids, e.getMessage());
+        }
+    }
+
+    public void retirer(Long id) {
+        if (id == null) return;
+        verrou.writeLock().lock();
+        try {
+            retirerDocument(id);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tous les critères texte doivent correspondre (ET), chaque mot pouvant correspondre
+     * exactement, par préfixe, par sous-chaîne ou à une ou deux fautes près.
+     * Les facettes sont calculées sur les résultats texte, avant les filtres catégorie/prix.
+     */
+    public Resultat rechercher(List<Critere> criteres, Category category, Double minPrice, Double maxPrice,
+                               String tri, int page, int taille) {
+        if (!charge) {
+            recharger();
+        }
+
+        verrou.readLock().lock();
+        try {
+            Map<Long, Double> scores = null;
+            for (Critere critere : criteres) {
+                Map<Long, Double> scoresCritere = scores(critere);
+                if (scoresCritere == null) continue;
+                scores = scores == null ? scoresCritere : intersection(scores, scoresCritere);
+            }
+
+            Collection<Long> candidats = scores != null ? scores.keySet() : documents.keySet();
+            Map<String, Long> facetteCategories = new TreeMap<>();
+            Map<String, Long> facettePrix = new LinkedHashMap<>();
+            for (int i = 0; i <= BORNES_PRIX.length; i++) {
+                facettePrix.put(libelleTranche(i), 0L);
+            }
+
+            List<Document> resultats = new ArrayList<>();
+            for (Long id : candidats) {
+                Document document = documents.get(id);
+                if (document == null) continue;
+
+                if (document.category != null) {
+                    facetteCategories.merge(document.category.name(), 1L, Long::sum);
+                }
+                facettePrix.merge(libelleTranche(tranche(document.prix)), 1L, Long::sum);
+
+                if (category != null && document.category != category) continue;
+                if (minPrice != null && document.prix < minPrice) continue;
+                if (maxPrice != null && document.prix > maxPrice) continue;
+                resultats.add(document);
+            }
+
+            resultats.sort(comparateur(tri, scores));
+            int debut = (int) Math.min((long) page * taille, resultats.size());
+            int fin = Math.min(debut + taille, resultats.size());
+            List<Long> ids = new ArrayList<>(fin - debut);
+            for (Document document : resultats.subList(debut, fin)) {
+                ids.add(document.id);
+            }
+            return new Resultat(ids, resultats.size(), facetteCategories, facettePrix);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Double> scores(Critere critere) {
+        if (critere.texte() == null || critere.champs().isEmpty()) return null;
+        List<String> jetons = tokeniser(critere.texte());
+        if (jetons.isEmpty()) return null;
+
+        Map<Long, Double> total = null;
+        for (String jeton : jetons) {
+            Map<Long, Double> scoresJeton = new HashMap<>();
+            for (Champ champ : critere.champs()) {
+                Map<String, Set<Long>> dictionnaire = postings.get(champ);
+                for (Map.Entry<String, Double> terme : termesCorrespondants(champ, jeton).entrySet()) {
+                    double score = terme.getValue() * champ.poids;
+                    for (Long id : dictionnaire.get(terme.getKey())) {
+                        scoresJeton.merge(id, score, Math::max);
+                    }
+                }
+            }
+            total = total == null ? scoresJeton : intersection(total, scoresJeton);
+            if (total.isEmpty()) break;
+        }
+        return total;
+    }
+
+    private Map<String, Double> termesCorrespondants(Champ champ, String jeton) {
+        TreeMap<String, Set<Long>> dictionnaire = postings.get(champ);
+        Map<String, Double> termes = new HashMap<>();
+        for (String terme : dictionnaire.subMap(jeton, true, jeton + Character.MAX_VALUE, false).keySet()) {
+            termes.put(terme, terme.equals(jeton) ? SCORE_EXACT : SCORE_PREFIXE);
+        }
+
+        if (jeton.length() >= 3) {
+            int maxErreurs = jeton.length() >= 8 ? 2 : jeton.length() >= 4 ? 1 : 0;
+            Set<String> candidats = new HashSet<>();
+            for (String trigramme : trigrammes(jeton)) {
+                candidats.addAll(termesParTrigramme.getOrDefault(trigramme, Collections.emptySet()));
+            }
+            for (String candidat : candidats) {
+                if (termes.containsKey(candidat) || !dictionnaire.containsKey(candidat)) continue;
+                if (candidat.contains(jeton)) {
+                    termes.put(candidat, SCORE_SOUS_CHAINE);
+                } else if (maxErreurs > 0 && Math.abs(candidat.length() - jeton.length()) <= maxErreurs
+                        && distanceEdition(jeton, candidat, maxErreurs) <= maxErreurs) {
+                    termes.put(candidat, SCORE_APPROCHE);
+                }
+            }
+        }
+        return termes;
+    }
+
+    private static Map<Long, Double> intersection(Map<Long, Double> a, Map<Long, Double> b) {
+        Map<Long, Double> petite = a.size() <= b.size() ? a : b;
+        Map<Long, Double> grande = petite == a ? b : a;
+        Map<Long, Double> resultat = new HashMap<>();
+        for (Map.Entry<Long, Double> entree : petite.entrySet()) {
+            Double autre = grande.get(entree.getKey());
+            if (autre != null) {
+                resultat.put(entree.getKey(), entree.getValue() + autre);
+            }
+        }
+        return resultat;
+    }
+
+    private static Comparator<Document> comparateur(String tri, Map<Long, Double> scores) {
+        String propriete = tri == null || tri.isBlank() ? "pertinence" : tri;
+        boolean descendant = propriete.startsWith("-");
+        if (descendant) {
+            propriete = propriete.substring(1);
+        }
+
+        Comparator<Document> comparateur = switch (propriete) {
+            case "nom" -> Comparator.comparing(document -> document.nomTri);
+            case "prix" -> Comparator.comparingDouble(document -> document.prix);
+            case "salesCount" -> Comparator.comparingInt(document -> document.salesCount);
+            case "id" -> Comparator.comparingLong(document -> document.id);
+            default -> null;
+        };
+
+        if (comparateur == null) {
+            ToDoubleFunction<Document> score = document -> scores == null ? 0.0 : scores.getOrDefault(document.id, 0.0);
+            return Comparator.comparingDouble(score).reversed()
+                    .thenComparing(Comparator.comparingInt((Document document) -> document.salesCount).reversed())
+                    .thenComparingLong(document -> document.id);
+        }
+        if (descendant) {
+            comparateur = comparateur.reversed();
+        }
+        return comparateur.thenComparingLong(document -> document.id);
+    }
+
+    private void ajouter(Document document) {
+        documents.put(document.id, document);
+        for (Map.Entry<Champ, Set<String>> entree : document.termes.entrySet()) {
+            TreeMap<String, Set<Long>> dictionnaire = postings.get(entree.getKey());
+            for (String terme : entree.getValue()) {
+                if (!termeConnu(terme)) {
+                    for (String trigramme : trigrammes(terme)) {
+                        termesParTrigramme.computeIfAbsent(trigramme, t -> new HashSet<>()).add(terme);
+                    }
+                }
+                dictionnaire.computeIfAbsent(terme, t -> new HashSet<>()).add(document.id);
+            }
+        }
+    }
+
+    private void retirerDocument(Long id) {
+        Document document = documents.remove(id);
+        if (document == null) return;
+
+        for (Map.Entry<Champ, Set<String>> entree : document.termes.entrySet()) {
+            TreeMap<String, Set<Long>> dictionnaire = postings.get(entree.getKey());
+            for (String terme : entree.getValue()) {
+                Set<Long> ids = dictionnaire.get(terme);
+                if (ids == null) continue;
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    dictionnaire.remove(terme);
+                    if (!termeConnu(terme)) {
+                        for (String trigramme : trigrammes(terme)) {
+                            Set<String> termes = termesParTrigramme.get(trigramme);
+                            if (termes != null && termes.remove(terme) && termes.isEmpty()) {
+                                termesParTrigramme.remove(trigramme);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean termeConnu(String terme) {
+        for (TreeMap<String, Set<Long>> dictionnaire : postings.values()) {
+            if (dictionnaire.containsKey(terme)) return true;
+        }
+        return false;
+    }
+
+    private static Document document(Long id, String nom, String fournisseur, Category category, double prix, int salesCount) {
+        Document document = new Document();
+        document.id = id;
+        document.nomTri = normaliser(nom);
+        document.termes.put(Champ.NOM, new HashSet<>(tokeniser(nom)));
+        document.termes.put(Champ.FOURNISSEUR, new HashSet<>(tokeniser(fournisseur)));
+        document.category = category;
+        document.prix = prix;
+        document.salesCount = salesCount;
+        return document;
+    }
+
+    static String normaliser(String texte) {
+        if (texte == null) return "";
+        String sansLigatures = texte.replace("œ", "oe").replace("Œ", "oe").replace("æ", "ae").replace("Æ", "ae");
+        return Normalizer.normalize(sansLigatures, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> tokeniser(String texte) {
+        List<String> jetons = new ArrayList<>();
+        for (String jeton : normaliser(texte).split("[^a-z0-9]+")) {
+            if (!jeton.isEmpty()) {
+                jetons.add(jeton);
+            }
+        }
+        return jetons;
+    }
+
+    private static List<String> trigrammes(String terme) {
+        String borne = "$" + terme + "$";
+        List<String> trigrammes = new ArrayList<>(borne.length());
+        for (int i = 0; i + 3 <= borne.length(); i++) {
+            trigrammes.add(borne.substring(i, i + 3));
+        }
+        return trigrammes;
+    }
+
+    // Levenshtein borné : abandonne dès que toute la ligne dépasse maxErreurs
+    private static int distanceEdition(String a, String b, int maxErreurs) {
+        int[] precedente = new int[b.length() + 1];
+        int[] courante = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) precedente[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            courante[0] = i;
+            int minLigne = courante[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cout = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                courante[j] = Math.min(Math.min(courante[j - 1] + 1, precedente[j] + 1), precedente[j - 1] + cout);
+                minLigne = Math.min(minLigne, courante[j]);
+            }
+            if (minLigne > maxErreurs) return maxErreurs + 1;
+            int[] tmp = precedente;
+            precedente = courante;
+            courante = tmp;
+        }
+        return precedente[b.length()];
+    }
+
+    private static int tranche(double prix) {
+        for (int i = 0; i < BORNES_PRIX.length; i++) {
+            if (prix < BORNES_PRIX[i]) return i;
+        }
+        return BORNES_PRIX.length;
+    }
+
+    private static String libelleTranche(int tranche) {
+        if (tranche == 0) return "0-" + (int) BORNES_PRIX[0];
+        if (tranche == BORNES_PRIX.length) return (int) BORNES_PRIX[tranche - 1] + "+";
+        return (int) BORNES_PRIX[tranche - 1] + "-" + (int) BORNES_PRIX[tranche];
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Produit;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maintient l'index de recherche à jour à chaque création, modification ou suppression de produit.
+ * Écouteur Hibernate « post-commit » : un enregistrement annulé par rollback n'est jamais indexé.
+ * Les UPDATE groupés (JPQL/JDBC) ne passent pas par ici : leurs appelants utilisent reindexerApresCommit.
+ */
+@Component
+public class ProduitSearchIndexListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final ProduitSearchIndex produitSearchIndex;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public ProduitSearchIndexListener(ProduitSearchIndex produitSearchIndex, EntityManagerFactory entityManagerFactory) {
+        this.produitSearchIndex = produitSearchIndex;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void enregistrer() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().requireService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Produit produit) {
+            produitSearchIndex.indexer(produit);
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Produit produit) {
+            produitSearchIndex.indexer(produit);
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Produit produit) {
+            produitSearchIndex.retirer(produit.getId());
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return Produit.class.equals(persister.getMappedClass());
+    }
+}
@@ -1,11 +1,15 @@
 package com.example.usermanagementbackend.service;
 
+import com.example.usermanagementbackend.dto.ProduitCursorPageDTO;
+import com.example.usermanagementbackend.dto.ProduitSearchResultDTO;
 import com.example.usermanagementbackend.entity.Produit;
 import com.example.usermanagementbackend.enums.Category;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface ProduitService {
     Produit creer(Produit produit);
@@ -20,12 +24,21 @@ public interface ProduitService {
 
     Page<Produit> lireProduitsPagine(int numeroPage, int taillePage, String triPar);
 
+    ProduitCursorPageDTO lireProduitsCurseur(String curseur, int taille, String triPar, Category category, boolean avecTotal);
+
+    // Première page de la recherche paginée (100 produits au plus) ; getTotalElements() donne le nombre réel de résultats
     Page<Produit> recherche(String recherche, String critere);
 
+    Page<Produit> recherche(String recherche, String critere, int page, int size);
+
     Page<Produit> findByCategory(Category category, int page, int pageSize, String sortBy);
 
     List<Produit> getTopSellingProducts(int limit);
 
+    void streamTopSellingProducts(int limit, Consumer<Produit> consumer);
+
+    Map<String, Object> getCacheStatistics();
+
     List<Produit> recommendProductsBasedOnHistory(Long userId, int limit);
 
     Page<Produit> searchProducts(
@@ -37,4 +50,7 @@ public interface ProduitService {
             int page,
             int size,
             String sort);
+
+    ProduitSearchResultDTO rechercheTexte(String texte, Category category, Double minPrice, Double maxPrice,
+                                          String sort, int page, int size);
 }
\ No newline at end of file
@@ -1,25 +1,34 @@
 package com.example.usermanagementbackend.service;
 
+import com.example.usermanagementbackend.dto.ProduitCursorPageDTO;
+import com.example.usermanagementbackend.dto.ProduitSearchResultDTO;
 import com.example.usermanagementbackend.entity.Produit;
 import com.example.usermanagementbackend.entity.Purchase;
 import com.example.usermanagementbackend.enums.Category;
 import com.example.usermanagementbackend.repository.MouvementStockRepository;
 import com.example.usermanagementbackend.repository.ProduitRepository;
 import com.example.usermanagementbackend.repository.PurchaseRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import com.example.usermanagementbackend.enums.TypeNotification;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -30,6 +39,13 @@ public class ProduitServiceImpl implements ProduitService {
     private final StockService stockService;
     private final MouvementStockRepository mouvementStockRepository;
     private final NotificationService notificationService;
+    private final ProduitCatalogCache produitCatalogCache;
+    private final EntityManager entityManager;
+    private final ProduitSearchIndex produitSearchIndex;
+    private final ProduitCursorPagination produitCursorPagination;
+    private final StockReservationService stockReservationService;
+
+    private static final int TAILLE_PAGE_RECHERCHE = 100;
     @Override
     @Transactional
     public Produit creer(Produit produit) {
@@ -61,8 +77,8 @@ public class ProduitServiceImpl implements ProduitService {
     @Override
     public List<Produit> lire() {
         try {
-            List<Produit> produits = produitRepository.findAll();
-            System.out.println("Produits récupérés : " + produits);
+            List<Produit> produits = produitCatalogCache.catalogue(produitRepository::findAll);
+            System.out.println("Produits récupérés : " + produits.size());
             return produits;
         } catch (Exception e) {
             System.err.println("Erreur lors de la récupération des produits : " + e.getMessage());
@@ -75,6 +91,9 @@ public class ProduitServiceImpl implements ProduitService {
     public Produit modifier(Long id, Produit produit) {
         try {
             System.out.println("Modification du produit ID=" + id + " avec : " + produit);
+            // Stock écrit en valeur absolue : les unités des compteurs en mémoire reviennent d'abord en base,
+            // avant le chargement pour que la version lue soit à jour
+            stockReservationService.rendre(id);
             return produitRepository.findById(id)
                     .map(p -> {
                         p.setPrix(produit.getPrix());
@@ -121,8 +140,13 @@ public class ProduitServiceImpl implements ProduitService {
     @Override
     public Produit lireParId(Long id) {
         try {
-            return produitRepository.findById(id)
-                    .orElseThrow(() -> new RuntimeException("❌ Produit avec ID " + id + " non trouvé"));
+            // Dans une transaction, l'appelant attend une entité gérée qu'il peut modifier
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                return produitRepository.findById(id)
+                        .orElseThrow(() -> new RuntimeException("❌ Produit avec ID " + id + " non trouvé"));
+            }
+            return produitCatalogCache.produit(id, cle -> produitRepository.findById(cle)
+                    .orElseThrow(() -> new RuntimeException("❌ Produit avec ID " + cle + " non trouvé")));
         } catch (Exception e) {
             System.err.println("Erreur lors de la récupération du produit ID=" + id + " : " + e.getMessage());
             throw new RuntimeException("Échec de la récupération du produit: " + e.getMessage(), e);
@@ -149,15 +173,26 @@ public class ProduitServiceImpl implements ProduitService {
         }
     }
 
+    @Override
+    public ProduitCursorPageDTO lireProduitsCurseur(String curseur, int taille, String triPar, Category category, boolean avecTotal) {
+        return produitCursorPagination.page(curseur, taille, triPar, category, avecTotal);
+    }
+
     @Override
     public Page<Produit> recherche(String recherche, String critere) {
+        return recherche(recherche, critere, 0, TAILLE_PAGE_RECHERCHE);
+    }
+
+    @Override
+    public Page<Produit> recherche(String recherche, String critere, int page, int size) {
         try {
-            PageRequest pageable = PageRequest.of(0, Integer.MAX_VALUE);
             switch (critere.toLowerCase()) {
                 case "nom":
-                    return produitRepository.findByNomContaining(recherche, pageable);
+                    return rechercheIndex(List.of(new ProduitSearchIndex.Critere(recherche, EnumSet.of(ProduitSearchIndex.Champ.NOM))),
+                            null, null, null, "pertinence", page, size);
                 case "fournisseur":
-                    return produitRepository.findByFournisseurContaining(recherche, pageable);
+                    return rechercheIndex(List.of(new ProduitSearchIndex.Critere(recherche, EnumSet.of(ProduitSearchIndex.Champ.FOURNISSEUR))),
+                            null, null, null, "pertinence", page, size);
                 case "prix":
                     String[] prixRange = recherche.split("-");
                     if (prixRange.length != 2) {
@@ -165,7 +200,7 @@ public class ProduitServiceImpl implements ProduitService {
                     }
                     double min = Double.parseDouble(prixRange[0]);
                     double max = Double.parseDouble(prixRange[1]);
-                    return produitRepository.findByPrixBetween(min, max, pageable);
+                    return rechercheIndex(List.of(), null, min, max, "prix", page, size);
                 default:
                     throw new IllegalArgumentException("⚠️ Critère non supporté: " + critere);
             }
@@ -201,16 +236,15 @@ public class ProduitServiceImpl implements ProduitService {
 
     @Override
     public List<Produit> recommendProductsBasedOnHistory(Long userId, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
         try {
             // 1. Récupérer l'historique d'achat de l'utilisateur
             List<Purchase> purchases = purchaseRepository.findByUserId(userId);
             if (purchases.isEmpty()) {
                 // Fallback : retourner les produits les plus vendus
-                return produitRepository.findAll(Sort.by(Sort.Direction.DESC, "salesCount"))
-                        .stream()
-                        .filter(p -> p.getStock() > 0)
-                        .limit(limit)
-                        .collect(Collectors.toList());
+                return produitRepository.findTopByStockGreaterThanOrderBySalesCountDesc(0, PageRequest.of(0, limit));
             }
 
             // 2. Identifier les catégories préférées
@@ -230,24 +264,19 @@ public class ProduitServiceImpl implements ProduitService {
             // 3. Recommander des produits des catégories préférées, triés par salesCount
             List<Produit> recommendations = new ArrayList<>();
             for (Category category : preferredCategories) {
-                List<Produit> categoryProducts = produitRepository.findByCategory(
-                                category,
-                                PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "salesCount"))
-                        ).getContent()
-                        .stream()
-                        .filter(p -> p.getStock() > 0)
-                        .collect(Collectors.toList());
+                List<Produit> categoryProducts = produitRepository.findByCategoryInAndStockGreaterThan(
+                        Set.of(category), 0, PageRequest.of(0, limit - recommendations.size()));
                 recommendations.addAll(categoryProducts);
                 if (recommendations.size() >= limit) break;
             }
 
             // 4. Compléter avec les produits les plus vendus si nécessaire
             if (recommendations.size() < limit) {
-                List<Produit> topSellingProducts = produitRepository.findAll(Sort.by(Sort.Direction.DESC, "salesCount"))
-                        .stream()
-                        .filter(p -> p.getStock() > 0 && !recommendations.contains(p))
-                        .limit(limit - recommendations.size())
-                        .collect(Collectors.toList());
+                PageRequest reste = PageRequest.of(0, limit - recommendations.size());
+                List<Produit> topSellingProducts = recommendations.isEmpty()
+                        ? produitRepository.findTopByStockGreaterThanOrderBySalesCountDesc(0, reste)
+                        : produitRepository.findTopByStockGreaterThanAndIdNotInOrderBySalesCountDesc(
+                                0, recommendations.stream().map(Produit::getId).collect(Collectors.toSet()), reste);
                 recommendations.addAll(topSellingProducts);
             }
 
@@ -261,10 +290,35 @@ public class ProduitServiceImpl implements ProduitService {
     }
     @Override
     public List<Produit> getTopSellingProducts(int limit) {
-        return produitRepository.findAll(Sort.by(Sort.Direction.DESC, "salesCount"))
-                .stream()
-                .limit(limit)
-                .toList();
+        if (limit < 0) {
+            throw new IllegalArgumentException("⚠️ La limite doit être positive");
+        }
+        if (limit <= ProduitCatalogCache.TAILLE_TOP_VENTES) {
+            List<Produit> topVentes = produitCatalogCache.topVentes(() -> produitRepository.findTopOrderBySalesCountDesc(
+                    PageRequest.of(0, ProduitCatalogCache.TAILLE_TOP_VENTES)));
+            return topVentes.subList(0, Math.min(limit, topVentes.size()));
+        }
+        return produitRepository.findTopOrderBySalesCountDesc(PageRequest.of(0, limit));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamTopSellingProducts(int limit, Consumer<Produit> consumer) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("⚠️ La limite doit être positive");
+        }
+        try (Stream<Produit> produits = produitRepository.streamAllOrderBySalesCountDesc()) {
+            produits.limit(limit).forEach(produit -> {
+                consumer.accept(produit);
+                // Garde le contexte de persistance vide quelle que soit la limite
+                entityManager.detach(produit);
+            });
+        }
+    }
+
+    @Override
+    public Map<String, Object> getCacheStatistics() {
+        return produitCatalogCache.statistiques();
     }
     @Override
     public Page<Produit> searchProducts(
@@ -278,32 +332,46 @@ public class ProduitServiceImpl implements ProduitService {
             String sort) {
 
         try {
-            // Gestion du tri
-            Sort.Direction direction = Sort.Direction.ASC;
-            String property = "id";
-
-            if (sort != null && !sort.isEmpty()) {
-                if (sort.startsWith("-")) {
-                    direction = Sort.Direction.DESC;
-                    property = sort.substring(1);
-                } else {
-                    property = sort;
-                }
-            }
-
-            Pageable pageable = PageRequest.of(page, size, direction, property);
-
-            return produitRepository.searchProducts(
-                    nom,
-                    category,
-                    minPrice,
-                    maxPrice,
-                    fournisseur,
-                    pageable);
+            List<ProduitSearchIndex.Critere> criteres = List.of(
+                    new ProduitSearchIndex.Critere(nom, EnumSet.of(ProduitSearchIndex.Champ.NOM)),
+                    new ProduitSearchIndex.Critere(fournisseur, EnumSet.of(ProduitSearchIndex.Champ.FOURNISSEUR)));
+            return rechercheIndex(criteres, category, minPrice, maxPrice, sort, page, size);
         } catch (Exception e) {
             throw new RuntimeException("Erreur lors de la recherche des produits", e);
         }
     }
 
-}
+    @Override
+    public ProduitSearchResultDTO rechercheTexte(String texte, Category category, Double minPrice, Double maxPrice,
+                                                 String sort, int page, int size) {
+        ProduitSearchIndex.Resultat resultat = produitSearchIndex.rechercher(
+                List.of(new ProduitSearchIndex.Critere(texte, EnumSet.allOf(ProduitSearchIndex.Champ.class))),
+                category, minPrice, maxPrice, sort, page, size);
+        return new ProduitSearchResultDTO(chargerDansOrdre(resultat.ids()), page, size, resultat.total(),
+                resultat.facetteCategories(), resultat.facettePrix());
+    }
 
+    private Page<Produit> rechercheIndex(List<ProduitSearchIndex.Critere> criteres, Category category,
+                                         Double minPrice, Double maxPrice, String sort, int page, int size) {
+        ProduitSearchIndex.Resultat resultat = produitSearchIndex.rechercher(
+                criteres, category, minPrice, maxPrice, sort, page, size);
+        return new PageImpl<>(chargerDansOrdre(resultat.ids()), PageRequest.of(page, size), resultat.total());
+    }
+
+    // Une seule requête IN pour la page, puis remise dans l'ordre de l'index
+    private List<Produit> chargerDansOrdre(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Produit> produitsParId = produitRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Produit::getId, p -> p));
+        List<Produit> produits = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Produit produit = produitsParId.get(id);
+            if (produit != null) {
+                produits.add(produit);
+            }
+        }
+        return produits;
+    }
+}
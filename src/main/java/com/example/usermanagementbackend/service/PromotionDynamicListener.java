@@ -0,0 +1,24 @@
+package com.example.usermanagementbackend.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+// Invalide la vue /promotions/dynamic après toute écriture JPA sur une promotion ou un produit
+@Component
+public class PromotionDynamicListener {
+
+    @Autowired
+    @Lazy
+    private PromotionDynamicReadModel promotionDynamicReadModel;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void apresModification(Object entite) {
+        promotionDynamicReadModel.invalider();
+    }
+}
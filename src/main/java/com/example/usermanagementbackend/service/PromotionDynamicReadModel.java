@@ -0,0 +1,163 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.dto.ProduitPromotionDTO;
+import com.example.usermanagementbackend.dto.PromotionDynamiqueDTO;
+import com.example.usermanagementbackend.entity.Produit;
+import com.example.usermanagementbackend.entity.Promotion;
+import com.example.usermanagementbackend.repository.PromotionRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Modèle de lecture de /promotions/dynamic : construit en une requête JOIN FETCH, projeté en DTO,
+ * sérialisé une fois et conservé avec son ETag jusqu'à la prochaine écriture sur une promotion ou un produit,
+ * ou jusqu'au changement d'année (date d'activation prévue du Black Friday).
+ */
+@Component
+public class PromotionDynamicReadModel {
+
+    public static final String BLACK_FRIDAY = "Black Friday";
+    private static final List<String> CONDITIONS = List.of("EXPIRATION_PRODUIT", "MONTANT_MIN", "EXPIRATION_AND_LOW_SALES");
+
+    public record Vue(Map<String, List<PromotionDynamiqueDTO>> contenu, byte[] json, String etag) {
+    }
+
+    // Vue, version des données lue avant sa construction et année de la date d'activation prévue
+    private record Entree(Vue vue, long version, int annee) {
+    }
+
+    private final PromotionRepository promotionRepository;
+    private final ObjectMapper objectMapper;
+    // Incrémentée à chaque invalidation : une vue construite sous une version dépassée n'est plus servie
+    private final AtomicLong version = new AtomicLong();
+    private volatile Entree entree;
+
+    public PromotionDynamicReadModel(PromotionRepository promotionRepository, ObjectMapper objectMapper) {
+        this.promotionRepository = promotionRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public Vue vue() {
+        int annee = LocalDate.now().getYear();
+        Entree courante = entree;
+        if (courante != null && courante.version() == version.get() && courante.annee() == annee) {
+            return courante.vue();
+        }
+        synchronized (this) {
+            long versionLue = version.get();
+            courante = entree;
+            if (courante != null && courante.version() == versionLue && courante.annee() == annee) {
+                return courante.vue();
+            }
+            Vue construite = construire(annee);
+            entree = new Entree(construite, versionLue, annee);
+            return construite;
+        }
+    }
+
+    public void invalider() {
+        version.incrementAndGet();
+        // Une lecture concurrente peut reconstruire la vue avec l'ancien état avant le commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private Vue construire(int annee) {
+        List<Promotion> promotions = promotionRepository.findPourVueDynamique(BLACK_FRIDAY, CONDITIONS);
+
+        List<PromotionDynamiqueDTO> blackFriday = new ArrayList<>();
+        List<PromotionDynamiqueDTO> expiration = new ArrayList<>();
+        List<PromotionDynamiqueDTO> lowSales = new ArrayList<>();
+        for (Promotion promo : promotions) {
+            if (BLACK_FRIDAY.equals(promo.getNom()) && blackFriday.isEmpty()) {
+                blackFriday.add(versDto(promo, !promo.isActive() ? LocalDate.of(annee, 11, 25) : null));
+            }
+            if (!promo.isActive()) {
+                continue;
+            }
+            String condition = promo.getConditionPromotion();
+            if ("EXPIRATION_PRODUIT".equals(condition) && expiration.isEmpty()) {
+                expiration.add(versDto(promo, null));
+            } else if ("MONTANT_MIN".equals(condition) || "EXPIRATION_AND_LOW_SALES".equals(condition)) {
+                lowSales.add(versDto(promo, null));
+            }
+        }
+        if (blackFriday.isEmpty()) {
+            blackFriday.add(blackFridayPrevu(LocalDate.of(annee, 11, 25)));
+        }
+
+        Map<String, List<PromotionDynamiqueDTO>> contenu = new LinkedHashMap<>();
+        contenu.put("blackFriday", blackFriday);
+        contenu.put("expiration", expiration);
+        contenu.put("lowSales", lowSales);
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(contenu);
+            return new Vue(Collections.unmodifiableMap(contenu), json, etag(json));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Sérialisation des promotions dynamiques impossible", e);
+        }
+    }
+
+    private PromotionDynamiqueDTO versDto(Promotion promo, LocalDate activationPrevue) {
+        PromotionDynamiqueDTO dto = new PromotionDynamiqueDTO();
+        dto.setId(promo.getId());
+        dto.setNom(promo.getNom());
+        dto.setPourcentageReduction(promo.getPourcentageReduction());
+        dto.setDateDebut(promo.getDateDebut());
+        dto.setDateFin(promo.getDateFin());
+        dto.setConditionPromotion(promo.getConditionPromotion());
+        dto.setActive(promo.isActive());
+        if (activationPrevue != null) {
+            dto.setDateActivationPrevue(activationPrevue.toString());
+        }
+        double facteur = 1 - promo.getPourcentageReduction() / 100.0;
+        for (Produit produit : promo.getProduits()) {
+            dto.getProduits().add(new ProduitPromotionDTO(
+                    produit.getId(),
+                    produit.getNom(),
+                    produit.getPrix(),
+                    produit.getPrix() * facteur,
+                    produit.getDevise() != null ? produit.getDevise() : "TND",
+                    produit.getDateExpiration()));
+        }
+        return dto;
+    }
+
+    private PromotionDynamiqueDTO blackFridayPrevu(LocalDate scheduledDate) {
+        PromotionDynamiqueDTO dto = new PromotionDynamiqueDTO();
+        dto.setNom(BLACK_FRIDAY);
+        dto.setPourcentageReduction(50.0);
+        dto.setConditionPromotion("BLACK_FRIDAY");
+        dto.setActive(false);
+        dto.setDateDebut(Date.from(scheduledDate.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        dto.setDateFin(Date.from(scheduledDate.plusDays(3).atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        dto.setDateActivationPrevue(scheduledDate.toString());
+        return dto;
+    }
+
+    private static String etag(byte[] json) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
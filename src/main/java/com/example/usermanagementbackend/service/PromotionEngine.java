@@ -0,0 +1,209 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.dto.PromotionActiveDTO;
+import com.example.usermanagementbackend.entity.Promotion;
+import com.example.usermanagementbackend.repository.PromotionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoublePredicate;
+
+/**
+ * Moteur de promotions compilées. Les promotions actives sont transformées en règles (prédicat + facteur)
+ * et indexées par identifiant et par type de condition dans un instantané immuable, remplacé d'un bloc
+ * (copy-on-write) à chaque modification ou échéance. Les lectures ne touchent pas la base, sauf tant
+ * qu'aucun instantané n'a pu être construit.
+ */
+@Component
+public class PromotionEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromotionEngine.class);
+
+    public enum TypeCondition {
+        ACHAT_GROUPE, MONTANT_MIN, EXPIRATION_PRODUIT, EXPIRATION_AND_LOW_SALES, BLACK_FRIDAY, AUTRE;
+
+        public static TypeCondition depuis(String condition) {
+            if (condition == null) {
+                return AUTRE;
+            }
+            try {
+                return valueOf(condition);
+            } catch (IllegalArgumentException e) {
+                return AUTRE;
+            }
+        }
+    }
+
+    /**
+     * Promotion compilée : la condition sur le montant et le facteur de réduction sont calculés une fois.
+     */
+    public record Regle(Integer id, String nom, TypeCondition type, double facteur, long finMs, DoublePredicate condition) {
+
+        static Regle compiler(Promotion promotion) {
+            TypeCondition type = TypeCondition.depuis(promotion.getConditionPromotion());
+            DoublePredicate condition = switch (type) {
+                case ACHAT_GROUPE -> montant -> montant >= 3;
+                case MONTANT_MIN -> montant -> montant > 100;
+                case EXPIRATION_PRODUIT -> montant -> true;
+                // Conditions sans règle de montant dans appliquerPromotion : aucune réduction sur un montant
+                default -> montant -> false;
+            };
+            return new Regle(promotion.getId(), promotion.getNom(), type,
+                    1 - promotion.getPourcentageReduction() / 100,
+                    promotion.getDateFin() != null ? promotion.getDateFin().getTime() : Long.MAX_VALUE,
+                    condition);
+        }
+
+        public boolean estValide(long maintenant) {
+            return finMs >= maintenant;
+        }
+
+        public double appliquer(double montant) {
+            return condition.test(montant) ? montant * facteur : montant;
+        }
+    }
+
+    private record Instantane(Map<Integer, Regle> parId,
+                              Map<TypeCondition, List<Regle>> parType,
+                              List<PromotionActiveDTO> promotions,
+                              long prochaineEcheance) {
+
+        static final Instantane VIDE = new Instantane(Map.of(), Map.of(), List.of(), Long.MAX_VALUE);
+    }
+
+    private final PromotionRepository promotionRepository;
+    private volatile Instantane instantane = Instantane.VIDE;
+    // Faux tant qu'aucune reconstruction n'a abouti : les lectures reconstruisent alors depuis la base
+    private volatile boolean construit = false;
+    // Génération demandée (incrémentée à chaque modification validée) et génération couverte par l'instantané
+    private final AtomicLong generationDemandee = new AtomicLong();
+    private volatile long generationConstruite;
+    // Une reconstruction est déjà en file de l'executor : les demandes suivantes s'y regroupent
+    private final AtomicBoolean reconstructionPlanifiee = new AtomicBoolean(false);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "promotion-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PromotionEngine(PromotionRepository promotionRepository) {
+        this.promotionRepository = promotionRepository;
+    }
+
+    @PreDestroy
+    public void arreter() {
+        executor.shutdownNow();
+    }
+
+    // Avant l'ouverture du serveur web : les premières requêtes trouvent déjà les promotions actives
+    @PostConstruct
+    public void chargerAuDemarrage() {
+        reconstruireSansErreur();
+    }
+
+    public synchronized void reconstruire() {
+        // Lue avant la requête : une modification validée pendant la lecture laisse une génération plus récente
+        long generation = generationDemandee.get();
+        List<Promotion> actives = promotionRepository.findActivesAvecProduits();
+        long maintenant = System.currentTimeMillis();
+
+        Map<Integer, Regle> parId = new HashMap<>();
+        Map<TypeCondition, List<Regle>> parType = new EnumMap<>(TypeCondition.class);
+        List<PromotionActiveDTO> promotions = new ArrayList<>(actives.size());
+        long prochaineEcheance = Long.MAX_VALUE;
+        for (Promotion promotion : actives) {
+            Regle regle = Regle.compiler(promotion);
+            parId.put(regle.id(), regle);
+            parType.computeIfAbsent(regle.type(), t -> new ArrayList<>()).add(regle);
+            promotions.add(PromotionActiveDTO.depuis(promotion));
+            if (regle.finMs() >= maintenant) {
+                prochaineEcheance = Math.min(prochaineEcheance, regle.finMs());
+            }
+        }
+
+        parType.replaceAll((type, regles) -> List.copyOf(regles));
+        instantane = new Instantane(Map.copyOf(parId), Collections.unmodifiableMap(parType),
+                List.copyOf(promotions), prochaineEcheance);
+        generationConstruite = generation;
+        construit = true;
+        logger.info("Moteur de promotions reconstruit : {} promotions actives", parId.size());
+    }
+
+    /**
+     * Demande une reconstruction en arrière-plan, après la fin de la transaction courante s'il y en a une.
+     * Chaque transaction enregistre sa propre demande ; le regroupement se fait côté executor.
+     */
+    public void invalider() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    demanderReconstruction();
+                }
+            });
+        } else {
+            demanderReconstruction();
+        }
+    }
+
+    private void demanderReconstruction() {
+        generationDemandee.incrementAndGet();
+        if (reconstructionPlanifiee.compareAndSet(false, true)) {
+            executor.submit(() -> {
+                // Libéré avant la lecture : une demande arrivant pendant la reconstruction en planifie une autre
+                reconstructionPlanifiee.set(false);
+                reconstruireSansErreur();
+            });
+        }
+    }
+
+    // Filet de sécurité : échéances atteintes et modifications qui contournent JPA
+    @Scheduled(fixedDelay = 60000)
+    public void verifierEcheances() {
+        if (generationDemandee.get() != generationConstruite || System.currentTimeMillis() > instantane.prochaineEcheance()) {
+            reconstruireSansErreur();
+        }
+    }
+
+    public Optional<Regle> regle(Integer promotionId) {
+        Regle regle = courant().parId().get(promotionId);
+        return regle != null && regle.estValide(System.currentTimeMillis()) ? Optional.of(regle) : Optional.empty();
+    }
+
+    public List<Regle> reglesParType(TypeCondition type) {
+        long maintenant = System.currentTimeMillis();
+        return courant().parType().getOrDefault(type, List.of()).stream().filter(r -> r.estValide(maintenant)).toList();
+    }
+
+    public List<PromotionActiveDTO> promotionsActives() {
+        return courant().promotions();
+    }
+
+    // Base indisponible au démarrage : chaque lecture retente le chargement jusqu'au premier succès
+    private Instantane courant() {
+        if (!construit) {
+            reconstruireSansErreur();
+        }
+        return instantane;
+    }
+
+    private void reconstruireSansErreur() {
+        try {
+            reconstruire();
+        } catch (Exception e) {
+            // generationConstruite inchangée : reprise par verifierEcheances
+            logger.error("Reconstruction du moteur de promotions impossible : {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Promotion;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+// Reconstruit l'index du moteur de promotions après toute écriture JPA sur une promotion
+@Component
+public class PromotionEngineListener {
+
+    @Autowired
+    @Lazy
+    private PromotionEngine promotionEngine;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void apresModification(Promotion promotion) {
+        promotionEngine.invalider();
+    }
+}
@@ -1,24 +1,36 @@
 package com.example.usermanagementbackend.service;
 
+import com.example.usermanagementbackend.dto.PromotionActiveDTO;
+import com.example.usermanagementbackend.dto.PromotionDynamiqueDTO;
 import com.example.usermanagementbackend.entity.*;
 import com.example.usermanagementbackend.repository.*;
+import com.example.usermanagementbackend.scheduler.PromotionSuggestionJob;
 import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class PromotionService implements IPromotionService {
     private static final Logger logger = LoggerFactory.getLogger(PromotionService.class);
+    // Borne la taille des listes IN (...) envoyées en une instruction
+    private static final int TAILLE_TRANCHE_IDS = 1000;
+    // Marqueur persistant (batch_checkpoint) : le rollup promotion_stat a été construit depuis promotion_usage
+    public static final String MARQUEUR_ROLLUP = "rollupPromotionStat";
 
     @Autowired
     private PromotionRepository promotionRepository;
@@ -29,7 +41,37 @@ public class PromotionService implements IPromotionService {
 
 
     @Autowired
-    private PromotionUsageRepository promotionUsageRepository;
+    private PromotionStatRepository promotionStatRepository;
+
+    @Autowired
+    private PromotionUsageRecorder promotionUsageRecorder;
+
+    @Autowired
+    private BatchCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private PromotionEngine promotionEngine;
+
+    @Autowired
+    private PromotionDynamicReadModel promotionDynamicReadModel;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProduitCatalogCache produitCatalogCache;
+
+    @Autowired
+    private ProduitSearchIndex produitSearchIndex;
+
+    @Autowired
+    private PromotionSuggestionJob promotionSuggestionJob;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int tailleLotJdbc;
 
     @Override
     public List<Promotion> getAllPromotions() {
@@ -61,9 +103,7 @@ public class PromotionService implements IPromotionService {
             throw new IllegalArgumentException("End date must be after start date");
         }
 
-        if (promotion.getProduits() == null) {
-            promotion.setProduits(new ArrayList<>());
-        }
+        promotion.setProduits(produitsGeres(promotion.getProduits()));
 
         System.out.println("Produits associés à la promotion avant sauvegarde : " + promotion.getProduits());
 
@@ -100,7 +140,7 @@ public class PromotionService implements IPromotionService {
             existing.setDateDebut(promotion.getDateDebut());
             existing.setDateFin(promotion.getDateFin());
             existing.setConditionPromotion(promotion.getConditionPromotion());
-            existing.setProduits(promotion.getProduits());
+            existing.setProduits(produitsGeres(promotion.getProduits()));
             existing.setActive(promotion.isActive());
 
             if (existing.getProduits() != null) {
@@ -135,87 +175,152 @@ public class PromotionService implements IPromotionService {
         promotionRepository.deleteById(id);
     }
 
+    // Calcul pur en mémoire ; l'utilisation est persistée en différé par PromotionUsageRecorder
     public double appliquerPromotion(double montantTotal, Promotion promotion) {
         if (promotion == null || promotion.getConditionPromotion() == null || !promotion.isActive()) {
             return montantTotal;
         }
+        PromotionEngine.Regle regle = promotion.getId() != null
+                ? promotionEngine.regle(promotion.getId()).orElseGet(() -> PromotionEngine.Regle.compiler(promotion))
+                : PromotionEngine.Regle.compiler(promotion);
+        return appliquerRegle(regle, montantTotal);
+    }
 
-        String condition = promotion.getConditionPromotion();
-        double reduction = promotion.getPourcentageReduction() / 100;
-        double montantApresReduction = montantTotal;
+    /**
+     * Application d'une promotion active par identifiant, sans accès à la base ; vide si la promotion
+     * n'est pas (ou plus) active.
+     */
+    public OptionalDouble appliquerPromotion(Integer promotionId, double montantTotal) {
+        return promotionEngine.regle(promotionId)
+                .map(regle -> OptionalDouble.of(appliquerRegle(regle, montantTotal)))
+                .orElse(OptionalDouble.empty());
+    }
 
-        if ("ACHAT_GROUPE".equals(condition) && montantTotal >= 3) {
-            montantApresReduction = montantTotal * (1 - reduction);
-        } else if ("MONTANT_MIN".equals(condition) && montantTotal > 100) {
-            montantApresReduction = montantTotal * (1 - reduction);
-        } else if ("EXPIRATION_PRODUIT".equals(condition)) {
-            montantApresReduction = montantTotal * (1 - reduction);
+    private double appliquerRegle(PromotionEngine.Regle regle, double montantTotal) {
+        double montantApresReduction = regle.appliquer(montantTotal);
+        if (regle.id() != null) {
+            promotionUsageRecorder.enregistrer(regle.id(), montantTotal, montantApresReduction);
         }
-
-        PromotionUsage usage = new PromotionUsage();
-        usage.setPromotion(promotion);
-        usage.setMontantInitial(montantTotal);
-        usage.setMontantApresReduction(montantApresReduction);
-        usage.setDateApplication(new Date());
-        promotionUsageRepository.save(usage);
-
         return montantApresReduction;
     }
 
     @Scheduled(cron = "0 0 0 * * ?")
-    public void verifierPromotionsActives() {
-        List<Promotion> promotions = promotionRepository.findAll();
-        Date today = new Date();
-
-        for (Promotion promo : promotions) {
-            if (promo.getDateFin() != null && promo.getDateFin().before(today)) {
-                promo.setActive(false);
-                promotionRepository.save(promo);
-            }
+    @Transactional
+    public int verifierPromotionsActives() {
+        int desactivees = promotionRepository.desactiverExpireesAvant(new Date());
+        if (desactivees > 0) {
+            invaliderPromotions();
         }
+        logger.info("Promotions expirées désactivées : {}", desactivees);
+        return desactivees;
     }
 
-    public List<Promotion> getPromotionsActives() {
-        List<Promotion> promotions = promotionRepository.findByActiveTrue();
-        promotions.forEach(promotion -> Hibernate.initialize(promotion.getProduits()));
-        return promotions;
+    public List<PromotionActiveDTO> getPromotionsActives() {
+        return promotionEngine.promotionsActives();
     }
 
     @Override
-    public void appliquerPromotionExpirationProduit() {
-        List<Produit> produits = produitRepository.findAll();
-        Date today = new Date();
+    @Scheduled(cron = "0 15 0 * * ?")
+    public Map<String, Object> appliquerPromotionExpirationProduit() {
+        long debut = System.currentTimeMillis();
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate todayLocal = LocalDate.now(zone);
+        Date today = Date.from(todayLocal.atStartOfDay(zone).toInstant());
+        Date endDate = Date.from(todayLocal.plusDays(5).atStartOfDay(zone).toInstant());
+
+        // Une seule requête bornée sur date_expiration, promotions chargées par JOIN FETCH
+        List<Produit> produitsProches = produitRepository.findProduitsProchesExpiration(today, endDate);
+
+        Map<String, Object> rapport = new LinkedHashMap<>();
+        rapport.put("produitsProchesExpiration", produitsProches.size());
+        if (produitsProches.isEmpty()) {
+            rapport.put("produitsModifies", 0);
+            rapport.put("lots", 0);
+            rapport.put("dureeMs", System.currentTimeMillis() - debut);
+            return rapport;
+        }
 
-        for (Produit produit : produits) {
-            if (produit.getDateExpiration() != null) {
-                LocalDate expirationDate = LocalDate.of(
-                        produit.getDateExpiration().getYear() + 1900,
-                        produit.getDateExpiration().getMonth() + 1,
-                        produit.getDateExpiration().getDate()
-                );
-                LocalDate todayLocal = today.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                long daysRemaining = java.time.temporal.ChronoUnit.DAYS.between(todayLocal, expirationDate);
-
-                if (daysRemaining <= 5 && daysRemaining >= 0) {
-                    Optional<Promotion> existingPromo = promotionRepository.findByConditionPromotionAndActiveTrue("EXPIRATION_PRODUIT");
-                    Promotion promo;
-                    if (existingPromo.isPresent()) {
-                        promo = existingPromo.get();
-                    } else {
-                        promo = new Promotion();
-                        promo.setNom("Promotion Expiration Produit");
-                        promo.setPourcentageReduction(40);
-                        promo.setConditionPromotion("EXPIRATION_PRODUIT");
-                        promo.setDateDebut(today);
-                        LocalDate dateFinLocal = todayLocal.plusDays(5);
-                        promo.setDateFin(Date.from(dateFinLocal.atStartOfDay(ZoneId.systemDefault()).toInstant()));
-                        promo.setActive(true);
-                        promo = promotionRepository.save(promo);
+        // Une seule recherche de la promotion, créée au besoin
+        Promotion promo = promotionRepository.findByConditionPromotionAndActiveTrue("EXPIRATION_PRODUIT")
+                .orElseGet(() -> {
+                    Promotion nouvelle = new Promotion();
+                    nouvelle.setNom("Promotion Expiration Produit");
+                    nouvelle.setPourcentageReduction(40);
+                    nouvelle.setConditionPromotion("EXPIRATION_PRODUIT");
+                    nouvelle.setDateDebut(new Date());
+                    nouvelle.setDateFin(endDate);
+                    nouvelle.setActive(true);
+                    return promotionRepository.save(nouvelle);
+                });
+        Integer promoId = promo.getId();
+        double facteur = 1 - promo.getPourcentageReduction() / 100;
+
+        List<Produit> aModifier = produitsProches.stream()
+                .filter(p -> p.getPromotions().stream().noneMatch(pr -> promoId.equals(pr.getId())))
+                .collect(Collectors.toList());
+
+        // Mise à jour des prix et des liaisons par batch JDBC, un lot validé par transaction.
+        // Remise relative (prix = prix * facteur) conditionnée par la version lue : un produit modifié entre-temps
+        // (édition du prix, application concurrente de la même promotion) est laissé pour le prochain passage.
+        List<Produit> appliques = new ArrayList<>();
+        int lots = 0;
+        for (int i = 0; i < aModifier.size(); i += tailleLotJdbc) {
+            List<Produit> lot = aModifier.subList(i, Math.min(i + tailleLotJdbc, aModifier.size()));
+            List<Produit> appliquesLot = transactionTemplate.execute(status -> {
+                int[][] resultats = jdbcTemplate.batchUpdate(
+                        "UPDATE produit SET prix = prix * ?, version = version + 1 WHERE id = ? AND version = ?", lot, lot.size(),
+                        (ps, produit) -> {
+                            ps.setDouble(1, facteur);
+                            ps.setLong(2, produit.getId());
+                            ps.setLong(3, produit.getVersion());
+                        });
+                List<Produit> modifies = new ArrayList<>();
+                int index = 0;
+                for (int[] resultatsLot : resultats) {
+                    for (int lignes : resultatsLot) {
+                        if (lignes > 0) {
+                            modifies.add(lot.get(index));
+                        }
+                        index++;
                     }
-                    appliquerPromotionSurProduit(produit, promo);
                 }
-            }
+                if (!modifies.isEmpty()) {
+                    // Clé unique (promotion_id, produit_id) : une liaison en double annule le lot
+                    jdbcTemplate.batchUpdate("INSERT INTO promotion_produit (promotion_id, produit_id) VALUES (?, ?)", modifies, modifies.size(),
+                            (ps, produit) -> {
+                                ps.setInt(1, promoId);
+                                ps.setLong(2, produit.getId());
+                            });
+                }
+                return modifies;
+            });
+            appliques.addAll(appliquesLot);
+            lots++;
+        }
+
+        // Les écritures JDBC contournent les écouteurs Hibernate : les lots sont validés, l'index relit les prix en base
+        produitSearchIndex.reindexerApresCommit(appliques.stream().map(Produit::getId).collect(Collectors.toList()));
+        produitCatalogCache.invaliderTout();
+        invaliderPromotions();
+
+        long duree = System.currentTimeMillis() - debut;
+        rapport.put("promotionId", promoId);
+        rapport.put("produitsModifies", appliques.size());
+        rapport.put("produitsIgnores", aModifier.size() - appliques.size());
+        rapport.put("lots", lots);
+        rapport.put("dureeMs", duree);
+        logger.info("Promotion expiration appliquée : {} produits proches, {} modifiés en {} lots, {} ms",
+                produitsProches.size(), appliques.size(), lots, duree);
+        return rapport;
+    }
+
+    // Produits du JSON (id seul, sans version) remplacés par les entités en base : pas de fusion d'objets partiels
+    private List<Produit> produitsGeres(List<Produit> produits) {
+        if (produits == null || produits.isEmpty()) {
+            return new ArrayList<>();
         }
+        List<Long> ids = produits.stream().map(Produit::getId).filter(Objects::nonNull).distinct().toList();
+        return new ArrayList<>(produitRepository.findAllById(ids));
     }
 
     public void appliquerPromotionSurProduit(Produit produit, Promotion promo) {
@@ -266,21 +371,35 @@ public class PromotionService implements IPromotionService {
     }
 
     @Override
-    public void bulkActivate(List<Integer> ids) {
-        List<Promotion> promotions = promotionRepository.findAllById(ids);
-        for (Promotion promo : promotions) {
-            promo.setActive(true);
-            promotionRepository.save(promo);
-        }
+    @Transactional
+    public int bulkActivate(List<Integer> ids) {
+        return modifierActivation(ids, true);
     }
 
     @Override
-    public void bulkDeactivate(List<Integer> ids) {
-        List<Promotion> promotions = promotionRepository.findAllById(ids);
-        for (Promotion promo : promotions) {
-            promo.setActive(false);
-            promotionRepository.save(promo);
+    @Transactional
+    public int bulkDeactivate(List<Integer> ids) {
+        return modifierActivation(ids, false);
+    }
+
+    // Un UPDATE ... WHERE id IN (...) par tranche de TAILLE_TRANCHE_IDS identifiants, puis une seule invalidation
+    private int modifierActivation(List<Integer> ids, boolean active) {
+        List<Integer> distincts = ids.stream().filter(Objects::nonNull).distinct().toList();
+        int modifiees = 0;
+        for (int i = 0; i < distincts.size(); i += TAILLE_TRANCHE_IDS) {
+            modifiees += promotionRepository.updateActiveByIdIn(
+                    distincts.subList(i, Math.min(i + TAILLE_TRANCHE_IDS, distincts.size())), active);
+        }
+        if (modifiees > 0) {
+            invaliderPromotions();
         }
+        return modifiees;
+    }
+
+    // Les UPDATE groupés contournent les listeners JPA : invalidation explicite des vues dérivées
+    private void invaliderPromotions() {
+        promotionEngine.invalider();
+        promotionDynamicReadModel.invalider();
     }
 
     @Override
@@ -289,158 +408,74 @@ public class PromotionService implements IPromotionService {
     }
 
     public Map<String, Object> getPromotionAnalytics() {
-        // Récupérer toutes les utilisations de promotions
-        List<PromotionUsage> usageList = promotionUsageRepository.findAll();
-        logger.info("Nombre d'entrées dans promotion_usage: {}", usageList.size());
-        Map<Integer, List<PromotionUsage>> usageByPromotion = usageList.stream()
-                .collect(Collectors.groupingBy(usage -> usage.getPromotion().getId()));
-        logger.info("Promotions avec utilisations (usageByPromotion): {}", usageByPromotion.keySet());
-
-        // Récupérer toutes les promotions actives
-        List<Promotion> activePromotions = promotionRepository.findByActiveTrue();
-        logger.info("Nombre de promotions actives: {}", activePromotions.size());
-        activePromotions.forEach(promo ->
-                logger.info("Promotion active - ID: {}, Nom: {}, Active: {}", promo.getId(), promo.getNom(), promo.isActive())
-        );
-
-        Map<String, Object> analytics = new HashMap<>();
+        // Lecture du rollup promotion_stat : coût indépendant de la taille de promotion_usage
         List<Map<String, Object>> promotionStats = new ArrayList<>();
-
-        // Ajouter les statistiques pour les promotions qui ont été appliquées
-        for (Map.Entry<Integer, List<PromotionUsage>> entry : usageByPromotion.entrySet()) {
-            Integer promoId = entry.getKey();
-            List<PromotionUsage> usages = entry.getValue();
-            Promotion promo = promotionRepository.findById(promoId).orElse(null);
-            if (promo == null) {
-                logger.warn("Promotion avec ID {} introuvable", promoId);
-                continue;
-            }
-
-            double totalRevenueImpact = usages.stream()
-                    .mapToDouble(usage -> usage.getMontantInitial() - usage.getMontantApresReduction())
-                    .sum();
-            long usageCount = usages.size();
-
+        for (Object[] ligne : promotionStatRepository.findAnalytics()) {
             Map<String, Object> stat = new HashMap<>();
-            stat.put("promotionId", promoId);
-            stat.put("promotionName", promo.getNom());
-            stat.put("usageCount", usageCount);
-            stat.put("totalRevenueImpact", totalRevenueImpact);
+            stat.put("promotionId", ligne[0]);
+            stat.put("promotionName", ligne[1]);
+            stat.put("usageCount", ((Number) ligne[2]).longValue());
+            stat.put("totalRevenueImpact", ((Number) ligne[3]).doubleValue());
             promotionStats.add(stat);
-            logger.info("Stat ajoutée pour la promotion {}: usageCount={}, totalRevenueImpact={}",
-                    promo.getNom(), usageCount, totalRevenueImpact);
-        }
-
-        // Ajouter les promotions actives qui n'ont pas encore été appliquées
-        for (Promotion promo : activePromotions) {
-            // Vérifier si la promotion est déjà dans les statistiques
-            boolean alreadyIncluded = promotionStats.stream()
-                    .anyMatch(stat -> stat.get("promotionId").equals(promo.getId()));
-
-            if (!alreadyIncluded) {
-                Map<String, Object> stat = new HashMap<>();
-                stat.put("promotionId", promo.getId());
-                stat.put("promotionName", promo.getNom());
-                stat.put("usageCount", 0L); // Pas encore appliquée
-                stat.put("totalRevenueImpact", 0.0);
-                promotionStats.add(stat);
-                logger.info("Promotion active mais non appliquée ajoutée - Nom: {}, ID: {}",
-                        promo.getNom(), promo.getId());
-            }
         }
 
+        Map<String, Object> analytics = new HashMap<>();
         analytics.put("promotionStats", promotionStats);
-        analytics.put("totalPromotionsApplied", usageList.size());
-        logger.info("Réponse finale: {}", analytics);
+        analytics.put("totalPromotionsApplied", promotionStatRepository.sommeUtilisations());
+        logger.debug("Analytics promotions : {} promotions", promotionStats.size());
         return analytics;
     }
 
-
-    @Scheduled(cron = "0 0 0 * * ?")
-    @Transactional
-    public void suggestPromotions() {
-        System.out.println("Starting suggestPromotions...");
-        if (produitRepository == null) {
-            throw new IllegalStateException("produitRepository is not initialized");
-        }
-        if (promotionRepository == null) {
-            throw new IllegalStateException("promotionRepository is not initialized");
+    // Décidé sur le marqueur et non sur une table promotion_stat vide : l'enregistreur a pu y écrire un premier lot
+    // avant cet événement, ce qui aurait empêché de reprendre l'historique
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiserRollupPromotions() {
+        try {
+            boolean construit = checkpointRepository.findById(MARQUEUR_ROLLUP)
+                    .map(marqueur -> BatchCheckpoint.TERMINE.equals(marqueur.getStatut()))
+                    .orElse(false);
+            if (!construit) {
+                int promotions = reconstruireRollupPromotions();
+                logger.info("Rollup promotion_stat initialisé pour {} promotions", promotions);
+            }
+        } catch (Exception e) {
+            logger.error("Initialisation du rollup promotion_stat impossible : {}", e.getMessage());
         }
+    }
 
-        List<Produit> produits = produitRepository.findAll();
-        System.out.println("Found " + produits.size() + " products");
-
-        ZonedDateTime todayZoned = ZonedDateTime.now(ZoneId.systemDefault());
-        LocalDate today = todayZoned.toLocalDate();
-        System.out.println("Today's date: " + today);
-
-        for (Produit produit : produits) {
-            try {
-                Hibernate.initialize(produit);
-                System.out.println("Processing product: " + produit.getNom());
-                Integer salesCount = produit.getSalesCount() != null ? produit.getSalesCount() : 0;
-                boolean lowSales = salesCount < 10;
-                System.out.println("Product: " + produit.getNom() + ", salesCount: " + salesCount + ", lowSales: " + lowSales);
-
-                boolean nearingExpiration = false;
-                if (produit.getDateExpiration() != null) {
-                    // Convert java.util.Date to LocalDate safely
-                    LocalDate expirationDate;
-                    if (produit.getDateExpiration() instanceof java.sql.Date) {
-                        expirationDate = ((java.sql.Date) produit.getDateExpiration()).toLocalDate();
-                    } else {
-                        expirationDate = produit.getDateExpiration().toInstant()
-                                .atZone(ZoneId.systemDefault())
-                                .toLocalDate();
-                    }
-                    long daysRemaining = java.time.temporal.ChronoUnit.DAYS.between(today, expirationDate);
-                    nearingExpiration = daysRemaining <= 10 && daysRemaining >= 0;
-                    System.out.println("Product: " + produit.getNom() + ", daysRemaining: " + daysRemaining + ", nearingExpiration: " + nearingExpiration);
-                } else {
-                    System.out.println("Product: " + produit.getNom() + ", dateExpiration is null");
-                }
+    /**
+     * Reconstruit promotion_stat depuis promotion_usage et pose le marqueur, dans la même transaction.
+     * Les écritures de l'enregistreur sont suspendues pendant ce temps : un lot écrit entre le DELETE et
+     * l'INSERT ... SELECT serait sinon compté deux fois ou perdu.
+     */
+    // TransactionTemplate plutôt que @Transactional : aussi appelé depuis initialiserRollupPromotions (appel interne, sans proxy)
+    public int reconstruireRollupPromotions() {
+        Integer promotions = promotionUsageRecorder.sansEcritureEnCours(() -> transactionTemplate.execute(status -> {
+            promotionStatRepository.viderRollup();
+            int reconstruites = promotionStatRepository.reconstruireRollup();
+            BatchCheckpoint marqueur = checkpointRepository.findById(MARQUEUR_ROLLUP)
+                    .orElseGet(() -> new BatchCheckpoint(MARQUEUR_ROLLUP));
+            marqueur.setStatut(BatchCheckpoint.TERMINE);
+            marqueur.setDateExecution(LocalDate.now());
+            marqueur.setDateFin(LocalDateTime.now());
+            marqueur.setElementsEcrits(reconstruites);
+            checkpointRepository.save(marqueur);
+            return reconstruites;
+        }));
+        return promotions != null ? promotions : 0;
+    }
 
-                if (lowSales && nearingExpiration) {
-                    System.out.println("Creating/Updating promotion for product: " + produit.getNom());
-                    Optional<Promotion> existingPromoOpt = promotionRepository.findByNom("AI Suggested Promotion for " + produit.getNom());
-                    Promotion promo;
-                    if (existingPromoOpt.isPresent()) {
-                        System.out.println("Existing promotion found for: " + produit.getNom());
-                        promo = existingPromoOpt.get();
-                        promo.setPourcentageReduction(45);
-                        promo.setConditionPromotion("EXPIRATION_AND_LOW_SALES");
-                        promo.setDateDebut(Date.from(todayZoned.toInstant()));
-                        LocalDate dateFinLocal = today.plusDays(7);
-                        promo.setDateFin(Date.from(dateFinLocal.atStartOfDay(ZoneId.systemDefault()).toInstant()));
-                        promo.setActive(true);
-                        List<Produit> produitsList = new ArrayList<>();
-                        produitsList.add(produit);
-                        promo.setProduits(produitsList);
-                    } else {
-                        System.out.println("Creating new promotion for: " + produit.getNom());
-                        promo = new Promotion();
-                        promo.setNom("AI Suggested Promotion for " + produit.getNom());
-                        promo.setPourcentageReduction(45);
-                        promo.setConditionPromotion("EXPIRATION_AND_LOW_SALES");
-                        promo.setDateDebut(Date.from(todayZoned.toInstant()));
-                        LocalDate dateFinLocal = today.plusDays(7);
-                        promo.setDateFin(Date.from(dateFinLocal.atStartOfDay(ZoneId.systemDefault()).toInstant()));
-                        promo.setActive(true);
-                        List<Produit> produitsList = new ArrayList<>();
-                        produitsList.add(produit);
-                        promo.setProduits(produitsList);
-                    }
-                    System.out.println("Saving promotion for: " + produit.getNom());
-                    promotionRepository.save(promo);
-                    System.out.println("Promotion saved successfully for: " + produit.getNom());
-                }
-            } catch (Exception e) {
-                System.err.println("Error processing product " + produit.getNom() + ": " + e.getClass().getName());
-                e.printStackTrace();
-                throw new RuntimeException("Failed to process product " + produit.getNom(), e);
-            }
-        }
-        System.out.println("Finished suggestPromotions");
+    // Exécution par lots avec point de reprise : voir PromotionSuggestionJob (planifié chaque nuit)
+    public Map<String, Object> suggestPromotions() {
+        return promotionSuggestionJob.executer();
+    }
+
+    public Map<String, Object> getUsageRecorderStatistics() {
+        return promotionUsageRecorder.statistiques();
+    }
+
+    public Map<String, Object> getSuggestionJobStatistics() {
+        return promotionSuggestionJob.statistiques();
     }
 
     @Override
@@ -455,118 +490,11 @@ public class PromotionService implements IPromotionService {
     }
 
     @Override
-    public Map<String, List<Map<String, Object>>> getDynamicPromotions() {
-        Map<String, List<Map<String, Object>>> dynamicPromotions = new HashMap<>();
-
-        // Récupérer la promotion Black Friday
-        List<Map<String, Object>> blackFridayPromotions = new ArrayList<>();
-        Optional<Promotion> blackFridayPromoOpt = promotionRepository.findByNom("Black Friday");
-        blackFridayPromoOpt.ifPresent(promo -> {
-            Hibernate.initialize(promo.getProduits());
-            Map<String, Object> promoMap = new HashMap<>();
-            promoMap.put("id", promo.getId());
-            promoMap.put("nom", promo.getNom());
-            promoMap.put("pourcentage_reduction", promo.getPourcentageReduction());
-            promoMap.put("date_debut", promo.getDateDebut());
-            promoMap.put("date_fin", promo.getDateFin());
-            promoMap.put("condition_promotion", promo.getConditionPromotion());
-            promoMap.put("active", promo.isActive());
-            promoMap.put("produits", promo.getProduits());
-
-            if (!promo.isActive()) {
-                LocalDate scheduledDate = LocalDate.of(LocalDate.now().getYear(), 11, 25);
-                promoMap.put("date_activation_prevue", scheduledDate.toString());
-            }
-
-            blackFridayPromotions.add(promoMap);
-        });
-
-        if (blackFridayPromotions.isEmpty()) {
-            Map<String, Object> placeholderPromo = new HashMap<>();
-            placeholderPromo.put("nom", "Black Friday");
-            placeholderPromo.put("pourcentage_reduction", 50.0);
-            placeholderPromo.put("condition_promotion", "BLACK_FRIDAY");
-            placeholderPromo.put("active", false);
-            placeholderPromo.put("produits", new ArrayList<>());
-
-            LocalDate scheduledDate = LocalDate.of(LocalDate.now().getYear(), 11, 25);
-            placeholderPromo.put("date_debut", Date.from(scheduledDate.atStartOfDay(ZoneId.systemDefault()).toInstant()));
-            placeholderPromo.put("date_fin", Date.from(scheduledDate.plusDays(3).atStartOfDay(ZoneId.systemDefault()).toInstant()));
-            placeholderPromo.put("date_activation_prevue", scheduledDate.toString());
-
-            blackFridayPromotions.add(placeholderPromo);
-        }
-
-        // Récupérer la promotion pour produits proches de l'expiration
-        List<Map<String, Object>> expirationPromotions = new ArrayList<>();
-        Optional<Promotion> expirationPromoOpt = promotionRepository.findByConditionPromotionAndActiveTrue("EXPIRATION_PRODUIT");
-        expirationPromoOpt.ifPresent(promo -> {
-            Hibernate.initialize(promo.getProduits());
-            Map<String, Object> promoMap = new HashMap<>();
-            promoMap.put("id", promo.getId());
-            promoMap.put("nom", promo.getNom());
-            promoMap.put("pourcentage_reduction", promo.getPourcentageReduction());
-            promoMap.put("date_debut", promo.getDateDebut());
-            promoMap.put("date_fin", promo.getDateFin());
-            promoMap.put("condition_promotion", promo.getConditionPromotion());
-            promoMap.put("active", promo.isActive());
-
-            // Inclure les informations des produits avec prix initial et prix réduit
-            List<Map<String, Object>> produitsList = new ArrayList<>();
-            for (Produit produit : promo.getProduits()) {
-                Map<String, Object> produitMap = new HashMap<>();
-                produitMap.put("id", produit.getId());
-                produitMap.put("nom", produit.getNom());
-                produitMap.put("prix", produit.getPrix()); // Prix initial
-                produitMap.put("prix_reduit", produit.getPrix() * (1 - promo.getPourcentageReduction() / 100.0)); // Prix réduit
-                produitMap.put("devise", produit.getDevise() != null ? produit.getDevise() : "TND");
-                produitMap.put("date_expiration", produit.getDateExpiration());
-                produitMap.put("promotions", produit.getPromotions());
-                produitsList.add(produitMap);
-            }
-            promoMap.put("produits", produitsList);
-
-            expirationPromotions.add(promoMap);
-        });
-
-        // Récupérer les promotions pour faibles ventes ou expiration + faibles ventes
-        List<Map<String, Object>> lowSalesPromotions = new ArrayList<>();
-        List<Promotion> lowSalesPromos = promotionRepository.findByConditionPromotionInAndActiveTrue(
-                List.of("MONTANT_MIN", "EXPIRATION_AND_LOW_SALES"));
-        for (Promotion promo : lowSalesPromos) {
-            Hibernate.initialize(promo.getProduits());
-            Map<String, Object> promoMap = new HashMap<>();
-            promoMap.put("id", promo.getId());
-            promoMap.put("nom", promo.getNom());
-            promoMap.put("pourcentage_reduction", promo.getPourcentageReduction());
-            promoMap.put("date_debut", promo.getDateDebut());
-            promoMap.put("date_fin", promo.getDateFin());
-            promoMap.put("condition_promotion", promo.getConditionPromotion());
-            promoMap.put("active", promo.isActive());
-
-            // Inclure les informations des produits avec prix initial et prix réduit
-            List<Map<String, Object>> produitsList = new ArrayList<>();
-            for (Produit produit : promo.getProduits()) {
-                Map<String, Object> produitMap = new HashMap<>();
-                produitMap.put("id", produit.getId());
-                produitMap.put("nom", produit.getNom());
-                produitMap.put("prix", produit.getPrix()); // Prix initial
-                produitMap.put("prix_reduit", produit.getPrix() * (1 - promo.getPourcentageReduction() / 100.0)); // Prix réduit
-                produitMap.put("devise", produit.getDevise() != null ? produit.getDevise() : "TND");
-                produitMap.put("date_expiration", produit.getDateExpiration());
-                produitMap.put("promotions", produit.getPromotions());
-                produitsList.add(produitMap);
-            }
-            promoMap.put("produits", produitsList);
-
-            lowSalesPromotions.add(promoMap);
-        }
-
-        // Structurer les résultats
-        dynamicPromotions.put("blackFriday", blackFridayPromotions);
-        dynamicPromotions.put("expiration", expirationPromotions);
-        dynamicPromotions.put("lowSales", lowSalesPromotions);
+    public Map<String, List<PromotionDynamiqueDTO>> getDynamicPromotions() {
+        return promotionDynamicReadModel.vue().contenu();
+    }
 
-        return dynamicPromotions;
+    public PromotionDynamicReadModel.Vue getDynamicPromotionsVue() {
+        return promotionDynamicReadModel.vue();
     }
 }
@@ -0,0 +1,244 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.repository.PromotionStatRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Enregistrement différé (write-behind) des utilisations de promotions. Les événements passent par une
+ * file bornée vidée par un thread d'écriture, en batch JDBC dès que le lot est plein ou que le délai
+ * est écoulé. File pleine : l'appelant attend un peu puis écrit lui-même (contre-pression, pas de perte).
+ * Au shutdown, la file est vidée avant la fermeture de la source de données.
+ * Les lots s'écrivent sous le verrou de lecture de verrouRollup ; une reconstruction du rollup
+ * (sansEcritureEnCours) prend le verrou d'écriture et n'en croise donc aucun.
+ */
+@Component
+public class PromotionUsageRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromotionUsageRecorder.class);
+    private static final int TENTATIVES_ECRITURE = 3;
+
+    public record Utilisation(Integer promotionId, double montantInitial, double montantApresReduction, Date dateApplication) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PromotionStatRepository promotionStatRepository;
+    private final BlockingQueue<Utilisation> file;
+    private final int capacite;
+    private final int tailleLot;
+    private final long delaiMs;
+    private final long attenteMaxMs;
+
+    private final AtomicLong recus = new AtomicLong();
+    private final AtomicLong ecrits = new AtomicLong();
+    private final AtomicLong lots = new AtomicLong();
+    private final AtomicLong ecrituresSynchrones = new AtomicLong();
+    private final AtomicLong perdus = new AtomicLong();
+    private final AtomicLong latenceTotaleMs = new AtomicLong();
+    private final AtomicLong latenceMaxMs = new AtomicLong();
+    private volatile long dernierLotMs;
+
+    private final ReentrantReadWriteLock verrouRollup = new ReentrantReadWriteLock();
+
+    private volatile boolean actif = true;
+    private Thread ecrivain;
+
+    public PromotionUsageRecorder(JdbcTemplate jdbcTemplate,
+                                  TransactionTemplate transactionTemplate,
+                                  PromotionStatRepository promotionStatRepository,
+                                  @Value("${promotion.usage.file-capacite:10000}") int capacite,
+                                  @Value("${promotion.usage.taille-lot:500}") int tailleLot,
+                                  @Value("${promotion.usage.delai-ms:1000}") long delaiMs,
+                                  @Value("${promotion.usage.attente-max-ms:50}") long attenteMaxMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.promotionStatRepository = promotionStatRepository;
+        this.file = new ArrayBlockingQueue<>(capacite);
+        this.capacite = capacite;
+        this.tailleLot = tailleLot;
+        this.delaiMs = delaiMs;
+        this.attenteMaxMs = attenteMaxMs;
+    }
+
+    @PostConstruct
+    public void demarrer() {
+        ecrivain = new Thread(this::boucleEcriture, "promotion-usage-writer");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+    }
+
+    @PreDestroy
+    public void arreter() throws InterruptedException {
+        actif = false;
+        ecrivain.interrupt();
+        ecrivain.join(TimeUnit.SECONDS.toMillis(10));
+        // Ce qui reste (arrivé pendant l'arrêt) est écrit sur le thread courant
+        List<Utilisation> reste = new ArrayList<>();
+        while (file.drainTo(reste, tailleLot) > 0) {
+            ecrire(reste);
+            reste.clear();
+        }
+        logger.info("Enregistreur d'utilisations arrêté : {} événements écrits", ecrits.get());
+    }
+
+    public void enregistrer(Integer promotionId, double montantInitial, double montantApresReduction) {
+        Utilisation utilisation = new Utilisation(promotionId, montantInitial, montantApresReduction, new Date());
+        recus.incrementAndGet();
+        try {
+            if (actif && file.offer(utilisation, attenteMaxMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // File saturée ou arrêt en cours : écriture synchrone
+        ecrituresSynchrones.incrementAndGet();
+        ecrire(List.of(utilisation));
+    }
+
+    /**
+     * Exécute action sans aucune écriture d'utilisations en parallèle : attend les lots en cours,
+     * les suivants attendent la fin de l'action (ils restent dans la file ou bloquent l'écriture synchrone).
+     */
+    public <T> T sansEcritureEnCours(Supplier<T> action) {
+        verrouRollup.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            verrouRollup.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> statistiques() {
+        long nbLots = lots.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("profondeurFile", file.size());
+        stats.put("capaciteFile", capacite);
+        stats.put("evenementsRecus", recus.get());
+        stats.put("evenementsEcrits", ecrits.get());
+        stats.put("evenementsPerdus", perdus.get());
+        stats.put("ecrituresSynchrones", ecrituresSynchrones.get());
+        stats.put("lotsEcrits", nbLots);
+        stats.put("dernierLotMs", dernierLotMs);
+        stats.put("latenceMoyenneLotMs", nbLots > 0 ? (double) latenceTotaleMs.get() / nbLots : 0.0);
+        stats.put("latenceMaxLotMs", latenceMaxMs.get());
+        return stats;
+    }
+
+    private void boucleEcriture() {
+        List<Utilisation> lot = new ArrayList<>(tailleLot);
+        while (actif) {
+            try {
+                Utilisation premiere = file.poll(delaiMs, TimeUnit.MILLISECONDS);
+                if (premiere == null) {
+                    continue;
+                }
+                lot.add(premiere);
+                long echeance = System.currentTimeMillis() + delaiMs;
+                // Compléter le lot jusqu'à la taille maximale ou l'échéance
+                while (lot.size() < tailleLot) {
+                    file.drainTo(lot, tailleLot - lot.size());
+                    long restant = echeance - System.currentTimeMillis();
+                    if (lot.size() >= tailleLot || restant <= 0) {
+                        break;
+                    }
+                    Utilisation suivante = file.poll(restant, TimeUnit.MILLISECONDS);
+                    if (suivante == null) {
+                        break;
+                    }
+                    lot.add(suivante);
+                }
+            } catch (InterruptedException e) {
+                // Arrêt demandé : le lot en cours est écrit ci-dessous, le reste par arreter()
+                actif = false;
+            }
+            if (!lot.isEmpty()) {
+                ecrire(lot);
+                lot.clear();
+            }
+        }
+    }
+
+    private void ecrire(List<Utilisation> lot) {
+        for (int tentative = 1; tentative <= TENTATIVES_ECRITURE; tentative++) {
+            try {
+                ecrireLot(lot);
+                return;
+            } catch (Exception e) {
+                logger.warn("Écriture de {} utilisations en échec (tentative {}/{}) : {}",
+                        lot.size(), tentative, TENTATIVES_ECRITURE, e.getMessage());
+            }
+        }
+        if (lot.size() == 1) {
+            perdus.incrementAndGet();
+            logger.error("Utilisation de la promotion {} abandonnée après {} tentatives", lot.get(0).promotionId(), TENTATIVES_ECRITURE);
+            return;
+        }
+        // Une ligne invalide (promotion supprimée entre-temps...) fait échouer tout le lot : repli ligne par ligne,
+        // seuls les événements fautifs sont abandonnés
+        int abandonnes = 0;
+        for (Utilisation utilisation : lot) {
+            try {
+                ecrireLot(List.of(utilisation));
+            } catch (Exception e) {
+                abandonnes++;
+                logger.error("Utilisation de la promotion {} abandonnée : {}", utilisation.promotionId(), e.getMessage());
+            }
+        }
+        perdus.addAndGet(abandonnes);
+        logger.warn("Lot de {} utilisations réécrit ligne par ligne : {} abandonnées", lot.size(), abandonnes);
+    }
+
+    private void ecrireLot(List<Utilisation> lot) {
+        verrouRollup.readLock().lock();
+        try {
+            ecrireLotVerrouille(lot);
+        } finally {
+            verrouRollup.readLock().unlock();
+        }
+    }
+
+    private void ecrireLotVerrouille(List<Utilisation> lot) {
+        long debut = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("INSERT INTO promotion_usage (promotion_id, montant_initial, montant_apres_reduction, date_application) " +
+                            "VALUES (?, ?, ?, ?)", lot, lot.size(),
+                    (ps, u) -> {
+                        ps.setInt(1, u.promotionId());
+                        ps.setDouble(2, u.montantInitial());
+                        ps.setDouble(3, u.montantApresReduction());
+                        ps.setTimestamp(4, new Timestamp(u.dateApplication().getTime()));
+                    });
+            // Rollup : un incrément par promotion présente dans le lot
+            Map<Integer, List<Utilisation>> parPromotion = new HashMap<>();
+            lot.forEach(u -> parPromotion.computeIfAbsent(u.promotionId(), id -> new ArrayList<>()).add(u));
+            parPromotion.forEach((promotionId, utilisations) -> promotionStatRepository.incrementer(
+                    promotionId,
+                    utilisations.size(),
+                    utilisations.stream().mapToDouble(u -> u.montantInitial() - u.montantApresReduction()).sum(),
+                    utilisations.stream().map(Utilisation::dateApplication).max(Date::compareTo).orElse(new Date())));
+        });
+        long duree = System.currentTimeMillis() - debut;
+        ecrits.addAndGet(lot.size());
+        lots.incrementAndGet();
+        dernierLotMs = duree;
+        latenceTotaleMs.addAndGet(duree);
+        latenceMaxMs.accumulateAndGet(duree, Math::max);
+    }
+}
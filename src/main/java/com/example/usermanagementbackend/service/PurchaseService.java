@@ -3,6 +3,7 @@ package com.example.usermanagementbackend.service;
 import com.example.usermanagementbackend.entity.Produit;
 import com.example.usermanagementbackend.entity.Purchase;
 import com.example.usermanagementbackend.enums.TypeMouvement;
+import com.example.usermanagementbackend.repository.ProduitRepository;
 import com.example.usermanagementbackend.repository.PurchaseRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,7 +12,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -19,8 +23,10 @@ import java.util.List;
 public class PurchaseService {
 
     private final PurchaseRepository purchaseRepository;
-    private final ProduitService produitService;
     private final StockService stockService;
+    private final CoPurchaseModel coPurchaseModel;
+    private final StockReservationService stockReservationService;
+    private final ProduitRepository produitRepository;
 
     @Transactional
     public String createPurchase(Long userId, List<Long> produitIds) {
@@ -30,37 +36,45 @@ public class PurchaseService {
 
         log.info("Création d'un achat pour l'utilisateur ID={} avec les produits IDs={}", userId, produitIds);
 
+        // Ids en double regroupés en quantités
+        Map<Long, Integer> quantites = new LinkedHashMap<>();
+        produitIds.forEach(produitId -> quantites.merge(produitId, 1, Integer::sum));
+
+        // Tous les produits en une requête
+        Map<Long, Produit> produitsParId = new HashMap<>();
+        produitRepository.findAllById(quantites.keySet()).forEach(produit -> produitsParId.put(produit.getId(), produit));
+
         List<Produit> produits = new ArrayList<>();
-        int totalQuantite = 0;
         double totalPrice = 0.0;
-
         for (Long produitId : produitIds) {
-            Produit produit = produitService.lireParId(produitId);
-
-            // Vérifier le stock
-            if (produit.getStock() <= 0) {
-                throw new IllegalArgumentException("Stock insuffisant pour le produit: " + produit.getNom());
+            Produit produit = produitsParId.get(produitId);
+            if (produit == null) {
+                throw new IllegalArgumentException("Produit non trouvé avec l'ID: " + produitId);
             }
+            produits.add(produit);
+            totalPrice += produit.getPrix();
+        }
 
-            // Initialiser salesCount si null
-            if (produit.getSalesCount() == null) {
-                produit.setSalesCount(0);
+        // Vérifier le stock
+        quantites.forEach((produitId, quantite) -> {
+            Produit produit = produitsParId.get(produitId);
+            if (stockReservationService.stockDisponible(produit) < quantite) {
+                throw new IllegalArgumentException("Stock insuffisant pour le produit: " + produit.getNom());
             }
+        });
 
-            // Mettre à jour le stock et le compteur de ventes (1 unité par produit)
-            produit.setStock(produit.getStock() - 1);
-            produit.setSalesCount(produit.getSalesCount() + 1);
-            produitService.modifier(produitId, produit);
-            produits.add(produit);
-
-            // Mettre à jour la quantité totale et le prix total
-            totalQuantite += 1;
-            totalPrice += produit.getPrix();
+        // Stock et salesCount de tous les produits en un UPDATE conditionnel
+        stockReservationService.vendre(quantites);
+        quantites.forEach((produitId, quantite) -> {
+            Produit produit = produitsParId.get(produitId);
+            stockReservationService.aligner(produit, -quantite);
+            produit.setSalesCount((produit.getSalesCount() != null ? produit.getSalesCount() : 0) + quantite);
+        });
 
-            // Enregistrer le mouvement de stock (vente)
-            stockService.enregistrerMouvement(produit, TypeMouvement.VENTE, 1);
-            stockService.verifierEtReapprovisionner(produit);
-        }
+        // Mouvements de vente en un batch, seuil de réapprovisionnement vérifié une fois par produit
+        stockService.enregistrerMouvements(quantites, TypeMouvement.VENTE);
+        quantites.keySet().forEach(produitId -> stockService.verifierEtReapprovisionner(produitsParId.get(produitId)));
+        int totalQuantite = produitIds.size();
 
         // Créer l'achat
         Purchase purchase = new Purchase();
@@ -75,6 +89,7 @@ public class PurchaseService {
         }
         log.info("Purchase avant sauvegarde: userId={}, dateAchat={}", purchase.getUserId(), purchase.getDateAchat());
         purchaseRepository.save(purchase);
+        coPurchaseModel.enregistrerPanier(produitIds);
 
         log.info("Achat créé avec succès pour l'utilisateur ID={}", userId);
         return "Achat enregistré avec succès";
@@ -9,70 +9,92 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class RecommendationService {
+    // Au-delà, le snapshot persisté est recalculé à partir du modèle en mémoire
+    private static final long FRAICHEUR_SNAPSHOT_MS = 6 * 60 * 60 * 1000L;
+
     private final PurchaseRepository purchaseRepository;
     private final ProduitRepository produitRepository;
     private final RecommendationRepository recommendationRepository;
+    private final CoPurchaseModel coPurchaseModel;
 
     @Transactional
     public List<Produit> getRecommendedProducts(Long userId, int limit) {
-        // 1. Récupérer l'historique d'achats
-        List<Purchase> userPurchases = purchaseRepository.findByUserId(userId);
-
-        // 2. Extraire les catégories achetées
-        Set<Category> purchasedCategories = userPurchases.stream()
-                .flatMap(p -> p.getProduits().stream())
-                .map(Produit::getCategory)
-                .collect(Collectors.toSet());
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        Optional<Recommendation> snapshot = recommendationRepository.findByUserId(userId);
 
-        // 3. Produits fréquemment achetés
-        List<Produit> frequentlyBought = getFrequentlyBoughtProducts(userPurchases);
+        // 1. Modèle pas encore construit (démarrage) : servir le dernier snapshot
+        if (!coPurchaseModel.estPret() && snapshot.isPresent()) {
+            return snapshot.get().getRecommendedProducts().stream()
+                    .filter(p -> p.getStock() > 0)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
 
-        // 4. Produits similaires
-        List<Produit> similarProducts = getSimilarProducts(purchasedCategories, frequentlyBought, limit);
+        // 2. Historique d'achats (identifiants uniquement)
+        List<Long> historique = purchaseRepository.findProduitIdsByUserId(userId);
 
-        // 5. Combiner et filtrer
-        return combineRecommendations(frequentlyBought, similarProducts, limit);
-    }
+        // 3. Voisins de co-achat, lecture en mémoire
+        List<Produit> recommandations = chargerDansOrdre(coPurchaseModel.recommander(historique, limit)).stream()
+                .filter(p -> p.getStock() > 0)
+                .collect(Collectors.toList());
 
-    private List<Produit> getFrequentlyBoughtProducts(List<Purchase> purchases) {
-        Map<Produit, Long> productCounts = purchases.stream()
-                .flatMap(p -> p.getProduits().stream())
-                .collect(Collectors.groupingBy(p -> p, Collectors.counting()));
+        // 4. Compléter avec les catégories achetées puis les meilleures ventes
+        if (recommandations.size() < limit) {
+            completer(recommandations, userId, historique, limit);
+        }
 
-        return productCounts.entrySet().stream()
-                .sorted(Map.Entry.<Produit, Long>comparingByValue().reversed())
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        // 5. Snapshot pour les redémarrages à chaud
+        if (snapshot.isEmpty() || estPerime(snapshot.get())) {
+            Recommendation recommendation = snapshot.orElseGet(Recommendation::new);
+            recommendation.setUserId(userId);
+            recommendation.setRecommendedProducts(new ArrayList<>(recommandations));
+            recommendation.setLastUpdated(new Date());
+            recommendationRepository.save(recommendation);
+        }
+        return recommandations;
     }
 
-    private List<Produit> getSimilarProducts(Set<Category> categories, List<Produit> exclude, int limit) {
-        if (categories.isEmpty()) {
-            return produitRepository.findTopByStockGreaterThanOrderBySalesCountDesc(
-                    0, PageRequest.of(0, limit));
+    private void completer(List<Produit> recommandations, Long userId, List<Long> historique, int limit) {
+        List<Long> exclus = new ArrayList<>(historique);
+        recommandations.forEach(p -> exclus.add(p.getId()));
+        // NOT IN () est invalide en SQL
+        if (exclus.isEmpty()) {
+            exclus.add(-1L);
+        }
+
+        Set<Category> categories = purchaseRepository.findCategoriesByUserId(userId);
+        if (!categories.isEmpty()) {
+            List<Produit> similaires = produitRepository.findByCategoryInAndIdNotInAndStockGreaterThan(
+                    categories, exclus, 0, PageRequest.of(0, limit - recommandations.size()));
+            similaires.forEach(p -> exclus.add(p.getId()));
+            recommandations.addAll(similaires);
         }
 
-        return produitRepository.findByCategoryInAndIdNotInAndStockGreaterThan(
-                categories,
-                exclude.stream().map(Produit::getId).collect(Collectors.toList()),
-                0,
-                PageRequest.of(0, limit)
-        );
+        if (recommandations.size() < limit) {
+            recommandations.addAll(produitRepository.findTopByStockGreaterThanAndIdNotInOrderBySalesCountDesc(
+                    0, exclus, PageRequest.of(0, limit - recommandations.size())));
+        }
     }
 
-    private List<Produit> combineRecommendations(List<Produit> primary, List<Produit> secondary, int limit) {
-        List<Produit> combined = new ArrayList<>();
-        combined.addAll(primary);
-        combined.addAll(secondary);
+    private List<Produit> chargerDansOrdre(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Produit> parId = produitRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Produit::getId, Function.identity()));
+        return ids.stream().map(parId::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
 
-        return combined.stream()
-                .distinct()
-                .filter(p -> p.getStock() > 0)
-                .limit(limit)
-                .collect(Collectors.toList());
+    private boolean estPerime(Recommendation recommendation) {
+        return recommendation.getLastUpdated() == null
+                || System.currentTimeMillis() - recommendation.getLastUpdated().getTime() > FRAICHEUR_SNAPSHOT_MS;
     }
-}
\ No newline at end of file
+}
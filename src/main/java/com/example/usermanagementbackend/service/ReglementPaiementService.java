@@ -0,0 +1,118 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Commande;
+import com.example.usermanagementbackend.entity.Commande.OrderStatus;
+import com.example.usermanagementbackend.entity.Facture;
+import com.example.usermanagementbackend.entity.LigneCommande;
+import com.example.usermanagementbackend.entity.TransactionPaiement;
+import com.example.usermanagementbackend.repository.CommandeRepository;
+import com.example.usermanagementbackend.repository.TransactionPaiementRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Règlement d'un paiement multi-commandes en une transaction : verrou sur la transaction de paiement,
+ * commandes chargées en une requête, statut PAID posé par un seul UPDATE, facture construite à partir
+ * des lignes déjà chargées et PDF rendu en différé.
+ * <p>
+ * Idempotent : la transaction (identifiée par son id ou son paymentIntentId Stripe) n'est réglée qu'une fois,
+ * une confirmation rejouée renvoie simplement l'état courant.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReglementPaiementService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReglementPaiementService.class);
+    private static final String SUCCES = "succeeded";
+    // Toutes les commandes pour lesquelles transitionOrderStatus autorise le passage à PAID
+    private static final List<OrderStatus> STATUTS_A_PAYER = List.of(OrderStatus.PENDING, OrderStatus.PENDING_PAYMENT, OrderStatus.CONFIRMED);
+
+    private final TransactionPaiementRepository transactionRepository;
+    private final CommandeRepository commandeRepository;
+    private final FactureService factureService;
+
+    @Transactional
+    public TransactionPaiement reglerTransaction(Long transactionId, String status) {
+        TransactionPaiement transaction = transactionRepository.findByIdForUpdate(transactionId)
+                .orElseThrow(() -> new RuntimeException("Transaction non trouvée avec l'ID: " + transactionId));
+        return regler(transaction, status);
+    }
+
+    @Transactional
+    public TransactionPaiement reglerPaymentIntent(String paymentIntentId, String status) {
+        TransactionPaiement transaction = transactionRepository.findByPaymentIntentIdForUpdate(paymentIntentId)
+                .orElseThrow(() -> new RuntimeException("Transaction non trouvée pour le paiement: " + paymentIntentId));
+        return regler(transaction, status);
+    }
+
+    private TransactionPaiement regler(TransactionPaiement transaction, String status) {
+        // Rejeu d'une confirmation : ni seconde facture, ni retour à un statut antérieur
+        if (SUCCES.equalsIgnoreCase(transaction.getPaymentStatus())) {
+            logger.info("Transaction {} déjà réglée, statut '{}' ignoré", transaction.getId(), status);
+            return transaction;
+        }
+
+        transaction.setPaymentStatus(status);
+        if (!SUCCES.equalsIgnoreCase(status)) {
+            return transaction;
+        }
+
+        long debut = System.currentTimeMillis();
+        List<Commande> commandes = new ArrayList<>(commandeRepository.findForReglement(transaction.getId()));
+        if (commandes.isEmpty()) {
+            throw new IllegalStateException("Transaction " + transaction.getId() + " has no commandes");
+        }
+        commandes.sort(Comparator.comparing(Commande::getId));
+        commandes.forEach(this::valider);
+
+        int payees = commandeRepository.marquerPayees(commandes.stream().map(Commande::getId).toList(),
+                OrderStatus.PAID, STATUTS_A_PAYER);
+        // Entités chargées en lecture seule : alignées en mémoire pour la facture, sans second UPDATE
+        for (Commande commande : commandes) {
+            if (STATUTS_A_PAYER.contains(commande.getStatus())) {
+                commande.setStatus(OrderStatus.PAID);
+            }
+            commande.setTelephone(parDefaut(commande.getTelephone()));
+            commande.setGouvernement(parDefaut(commande.getGouvernement()));
+            commande.setAdresse(parDefaut(commande.getAdresse()));
+        }
+        // Nom, email et téléphone du client absents : « N/A » sur la facture (FacturePdfRenderer), sans l'écrire
+        // dans le compte utilisateur comme le faisait l'ancien contrôleur (l'email sert d'identifiant de connexion)
+
+        Facture facture = factureService.creerFactureTransaction(transaction.getId(), commandes);
+        logger.info("Transaction {} réglée : {} commandes payées, facture {} en {} ms",
+                transaction.getId(), payees, facture.getId(), System.currentTimeMillis() - debut);
+        return transaction;
+    }
+
+    private void valider(Commande commande) {
+        if (commande.getTotal() == null || commande.getTotal() <= 0) {
+            throw new IllegalStateException("Commande " + commande.getId() + " has invalid total: " + commande.getTotal());
+        }
+        if (commande.getUser() == null) {
+            throw new IllegalStateException("Commande " + commande.getId() + " has no user associated");
+        }
+        if (commande.getLignesCommande() == null || commande.getLignesCommande().isEmpty()) {
+            throw new IllegalStateException("Commande " + commande.getId() + " has no lignesCommande");
+        }
+        for (LigneCommande ligne : commande.getLignesCommande()) {
+            if (ligne.getProduit() == null) {
+                throw new IllegalStateException("LigneCommande in commande " + commande.getId() + " has no produit");
+            }
+            if (ligne.getTotal() == null || ligne.getTotal() <= 0) {
+                throw new IllegalStateException("LigneCommande has invalid total: " + ligne.getTotal());
+            }
+        }
+    }
+
+    private static String parDefaut(String valeur) {
+        return valeur == null || valeur.trim().isEmpty() ? "N/A" : valeur;
+    }
+}
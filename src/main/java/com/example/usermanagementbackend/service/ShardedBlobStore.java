@@ -0,0 +1,317 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.repository.BlobReferenceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Stockage adressé par contenu : la clé est le SHA-256 du fichier (plus son extension), rangé dans
+ * racine/ab/cd/&lt;sha256&gt;.ext pour garder des dossiers de taille raisonnable. Deux contenus identiques
+ * partagent le même fichier ; chaque utilisation est comptée dans blob_reference.
+ * <p>
+ * Écriture : fichier temporaire haché au fil de l'eau, puis renommage atomique. Les compteurs sont mis à jour
+ * dans la transaction de l'appelant s'il y en a une, de sorte qu'un rollback ne laisse qu'un orphelin, supprimé
+ * par le balayage après le délai de grâce. Les opérations fichier d'une même clé sont sérialisées par un verrou
+ * (sur 64 verrous) entre écriture et balayage.
+ * <p>
+ * Les anciennes clés (noms à plat du type UUID_nom.jpg) restent lisibles à la racine.
+ */
+public class ShardedBlobStore implements BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedBlobStore.class);
+    private static final String DOSSIER_TEMPORAIRE = "tmp";
+    private static final int TAILLE_LOT_BALAYAGE = 500;
+
+    private final String espace;
+    private final Path racine;
+    private final Path temporaire;
+    private final JdbcTemplate jdbcTemplate;
+    private final BlobReferenceRepository blobReferenceRepository;
+    private final Duration delaiGrace;
+    private final Object[] verrous = new Object[64];
+
+    public ShardedBlobStore(String espace, Path racine, JdbcTemplate jdbcTemplate,
+                            BlobReferenceRepository blobReferenceRepository, Duration delaiGrace) {
+        this.espace = espace;
+        this.racine = racine.toAbsolutePath().normalize();
+        this.temporaire = this.racine.resolve(DOSSIER_TEMPORAIRE);
+        this.jdbcTemplate = jdbcTemplate;
+        this.blobReferenceRepository = blobReferenceRepository;
+        this.delaiGrace = delaiGrace;
+        for (int i = 0; i < verrous.length; i++) {
+            verrous[i] = new Object();
+        }
+        try {
+            Files.createDirectories(temporaire);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create the blob store directory " + this.racine, e);
+        }
+    }
+
+    @Override
+    public String stocker(InputStream contenu, String extension) throws IOException {
+        return ecrire(contenu, extension, true);
+    }
+
+    @Override
+    public String deposer(InputStream contenu, String extension) throws IOException {
+        return ecrire(contenu, extension, false);
+    }
+
+    @Override
+    public boolean retenir(String cle) {
+        Path fichier = chemin(cle);
+        if (fichier == null) {
+            return false;
+        }
+        if (!estHachee(cle)) {
+            // Ancien fichier à plat : pas de compteur
+            return Files.isRegularFile(fichier);
+        }
+        synchronized (verrou(cle)) {
+            try {
+                long taille = Files.size(fichier);
+                ajouterReference(cle, taille);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private String ecrire(InputStream contenu, String extension, boolean reference) throws IOException {
+        Path fichierTemporaire = Files.createTempFile(temporaire, "blob_", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long taille;
+            try (InputStream source = new DigestInputStream(contenu, digest);
+                 OutputStream destination = Files.newOutputStream(fichierTemporaire)) {
+                taille = source.transferTo(destination);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String cle = extension != null ? hash + "." + extension : hash;
+            Path cible = cheminHache(cle);
+
+            synchronized (verrou(cle)) {
+                if (Files.exists(cible)) {
+                    // Dédoublonnage : contenu déjà présent, rafraîchi pour que le balayage ne le prenne pas pour un orphelin
+                    Files.setLastModifiedTime(cible, FileTime.from(Instant.now()));
+                } else {
+                    Files.createDirectories(cible.getParent());
+                    Files.move(fichierTemporaire, cible, StandardCopyOption.ATOMIC_MOVE);
+                }
+                if (reference) {
+                    ajouterReference(cle, taille);
+                }
+            }
+            return cle;
+        } finally {
+            Files.deleteIfExists(fichierTemporaire);
+        }
+    }
+
+    @Override
+    public Path chemin(String cle) {
+        if (cle == null || cle.isBlank()) {
+            return null;
+        }
+        if (estHachee(cle)) {
+            return cheminHache(cle);
+        }
+        // Ancienne clé à plat, sans sortir de la racine
+        Path fichier = racine.resolve(cle).normalize();
+        return fichier.startsWith(racine) && !fichier.startsWith(temporaire) ? fichier : null;
+    }
+
+    @Override
+    public void liberer(String cle) {
+        if (cle == null || cle.isBlank()) {
+            return;
+        }
+        if (!estHachee(cle)) {
+            // Ancien fichier à plat, propre à son propriétaire : supprimé directement comme auparavant
+            Path fichier = chemin(cle);
+            try {
+                if (fichier != null) {
+                    Files.deleteIfExists(fichier);
+                }
+            } catch (IOException e) {
+                logger.warn("Suppression impossible de {}: {}", fichier, e.getMessage());
+            }
+            return;
+        }
+        // libere_le avant le décrément : MySQL évalue les affectations de gauche à droite
+        jdbcTemplate.update("UPDATE blob_reference SET libere_le = CASE WHEN reference_count <= 1 THEN ? ELSE libere_le END, " +
+                        "reference_count = reference_count - 1 WHERE espace = ? AND cle = ? AND reference_count > 0",
+                Timestamp.valueOf(LocalDateTime.now()), espace, cle);
+    }
+
+    @Override
+    public Map<String, Object> balayer() {
+        long debut = System.currentTimeMillis();
+        Instant limite = Instant.now().minus(delaiGrace);
+        int liberes = supprimerLiberes(LocalDateTime.now().minus(delaiGrace));
+        int orphelins = 0;
+        int temporaires = 0;
+        int dossiers = 0;
+        try {
+            orphelins = supprimerOrphelins(limite);
+            temporaires = supprimerTemporaires(limite);
+            dossiers = supprimerDossiersVides();
+        } catch (IOException e) {
+            logger.warn("Balayage du stockage {} interrompu: {}", espace, e.getMessage());
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("espace", espace);
+        stats.put("liberesSupprimes", liberes);
+        stats.put("orphelinsSupprimes", orphelins);
+        stats.put("temporairesSupprimes", temporaires);
+        stats.put("dossiersSupprimes", dossiers);
+        stats.put("dureeMs", System.currentTimeMillis() - debut);
+        return stats;
+    }
+
+    // Compteur +1, ligne créée au premier stockage (upsert MySQL, sans course entre deux premiers envois)
+    private void ajouterReference(String cle, long taille) {
+        jdbcTemplate.update("INSERT INTO blob_reference (espace, cle, reference_count, taille, cree_le, libere_le) VALUES (?, ?, 1, ?, ?, NULL) " +
+                        "ON DUPLICATE KEY UPDATE reference_count = reference_count + 1, libere_le = NULL",
+                espace, cle, taille, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    // Références tombées à zéro depuis plus que le délai de grâce : la ligne d'abord (conditionnelle), puis le fichier
+    private int supprimerLiberes(LocalDateTime avant) {
+        int supprimes = 0;
+        List<String> cles;
+        do {
+            cles = blobReferenceRepository.findClesLiberees(espace, avant, PageRequest.of(0, TAILLE_LOT_BALAYAGE));
+            for (String cle : cles) {
+                synchronized (verrou(cle)) {
+                    int lignes = jdbcTemplate.update("DELETE FROM blob_reference WHERE espace = ? AND cle = ? AND reference_count <= 0", espace, cle);
+                    if (lignes > 0 && supprimerFichier(cheminHache(cle))) {
+                        supprimes++;
+                    }
+                }
+            }
+        } while (cles.size() == TAILLE_LOT_BALAYAGE);
+        return supprimes;
+    }
+
+    // Fichiers hachés sans ligne de référence (rollback, arrêt brutal), plus anciens que le délai de grâce
+    private int supprimerOrphelins(Instant limite) throws IOException {
+        int supprimes = 0;
+        List<Path> fichiers;
+        try (Stream<Path> parcours = Files.walk(racine, 3)) {
+            fichiers = parcours
+                    .filter(Files::isRegularFile)
+                    .filter(fichier -> !fichier.startsWith(temporaire))
+                    .filter(fichier -> racine.relativize(fichier).getNameCount() == 3)
+                    .filter(fichier -> estHachee(fichier.getFileName().toString()))
+                    .toList();
+        }
+        for (Path fichier : fichiers) {
+            String cle = fichier.getFileName().toString();
+            synchronized (verrou(cle)) {
+                if (plusAncienQue(fichier, limite) && !blobReferenceRepository.existsByEspaceAndCle(espace, cle)
+                        && supprimerFichier(fichier)) {
+                    supprimes++;
+                }
+            }
+        }
+        return supprimes;
+    }
+
+    private int supprimerTemporaires(Instant limite) throws IOException {
+        int supprimes = 0;
+        try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(temporaire)) {
+            for (Path fichier : fichiers) {
+                if (plusAncienQue(fichier, limite) && supprimerFichier(fichier)) {
+                    supprimes++;
+                }
+            }
+        }
+        return supprimes;
+    }
+
+    // Compactage : dossiers de répartition vidés par les suppressions
+    private int supprimerDossiersVides() throws IOException {
+        List<Path> dossiers;
+        try (Stream<Path> parcours = Files.walk(racine, 2)) {
+            dossiers = parcours
+                    .filter(Files::isDirectory)
+                    .filter(dossier -> !dossier.equals(racine) && !dossier.equals(temporaire))
+                    .filter(dossier -> dossier.getFileName().toString().matches("[0-9a-f]{2}"))
+                    .sorted(Comparator.comparingInt(Path::getNameCount).reversed())
+                    .toList();
+        }
+        int supprimes = 0;
+        for (Path dossier : dossiers) {
+            try (DirectoryStream<Path> contenu = Files.newDirectoryStream(dossier)) {
+                if (contenu.iterator().hasNext()) {
+                    continue;
+                }
+            }
+            try {
+                Files.delete(dossier);
+                supprimes++;
+            } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+                // Rempli ou supprimé entre-temps
+            }
+        }
+        return supprimes;
+    }
+
+    private Path cheminHache(String cle) {
+        return racine.resolve(cle.substring(0, 2)).resolve(cle.substring(2, 4)).resolve(cle);
+    }
+
+    private static boolean estHachee(String cle) {
+        return cle.matches("[0-9a-f]{64}(\\.[a-z0-9]{1,10})?");
+    }
+
+    private Object verrou(String cle) {
+        return verrous[Math.floorMod(cle.hashCode(), verrous.length)];
+    }
+
+    private static boolean plusAncienQue(Path fichier, Instant limite) {
+        try {
+            return Files.getLastModifiedTime(fichier).toInstant().isBefore(limite);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean supprimerFichier(Path fichier) {
+        try {
+            return Files.deleteIfExists(fichier);
+        } catch (IOException e) {
+            logger.warn("Suppression impossible de {}: {}", fichier, e.getMessage());
+            return false;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
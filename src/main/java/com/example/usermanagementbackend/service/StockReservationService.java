@@ -0,0 +1,422 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.Produit;
+import com.example.usermanagementbackend.repository.ProduitRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Réservation de stock sans lecture-modification-écriture : chaque retrait est un UPDATE conditionnel
+ * (stock >= quantité) qui incrémente aussi la version du produit.
+ * <p>
+ * Produits chauds (stock.reservation.produits-chauds) : un lot d'unités est retiré de la base en une
+ * fois (bail) puis réparti sur plusieurs compteurs en mémoire, où les réservations se font par CAS
+ * sans toucher la ligne produit. Les unités non consommées sont rendues à la base à chaque
+ * réconciliation et à l'arrêt ; un arrêt brutal ne peut que sous-estimer le stock, jamais le survendre.
+ */
+@Service
+public class StockReservationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservationService.class);
+
+    /**
+     * Unités retirées de produit.stock et réparties sur plusieurs cellules pour limiter la contention.
+     */
+    private static final class CompteurChaud {
+        private final AtomicInteger[] cellules;
+        // Ventes des unités prises en mémoire, reportées sur salesCount à la réconciliation
+        private final AtomicInteger ventesEnAttente = new AtomicInteger();
+
+        CompteurChaud(int nombreCellules) {
+            cellules = new AtomicInteger[nombreCellules];
+            for (int i = 0; i < nombreCellules; i++) {
+                cellules[i] = new AtomicInteger();
+            }
+        }
+
+        boolean prendre(int qte) {
+            int depart = ThreadLocalRandom.current().nextInt(cellules.length);
+            for (int k = 0; k < cellules.length; k++) {
+                AtomicInteger cellule = cellules[(depart + k) % cellules.length];
+                int valeur = cellule.get();
+                while (valeur >= qte) {
+                    if (cellule.compareAndSet(valeur, valeur - qte)) {
+                        return true;
+                    }
+                    valeur = cellule.get();
+                }
+            }
+            return false;
+        }
+
+        void rendre(int qte) {
+            if (qte > 0) {
+                cellules[ThreadLocalRandom.current().nextInt(cellules.length)].addAndGet(qte);
+            }
+        }
+
+        int vider() {
+            int total = 0;
+            for (AtomicInteger cellule : cellules) {
+                total += cellule.getAndSet(0);
+            }
+            return total;
+        }
+
+        int total() {
+            int total = 0;
+            for (AtomicInteger cellule : cellules) {
+                total += cellule.get();
+            }
+            return total;
+        }
+    }
+
+    private final ProduitRepository produitRepository;
+    private final ProduitCatalogCache produitCatalogCache;
+    private final ProduitSearchIndex produitSearchIndex;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Long, CompteurChaud> chauds = new ConcurrentHashMap<>();
+    private final int nombreCellules;
+    private final int tailleBail;
+
+    private final AtomicLong reservationsMemoire = new AtomicLong();
+    private final AtomicLong reservationsBase = new AtomicLong();
+    private final AtomicLong refus = new AtomicLong();
+    private final AtomicLong baux = new AtomicLong();
+    private final AtomicLong unitesRendues = new AtomicLong();
+
+    public StockReservationService(ProduitRepository produitRepository,
+                                   ProduitCatalogCache produitCatalogCache,
+                                   ProduitSearchIndex produitSearchIndex,
+                                   EntityManager entityManager,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${stock.reservation.produits-chauds:}") String produitsChauds,
+                                   @Value("${stock.reservation.cellules:8}") int nombreCellules,
+                                   @Value("${stock.reservation.taille-bail:50}") int tailleBail) {
+        this.produitRepository = produitRepository;
+        this.produitCatalogCache = produitCatalogCache;
+        this.produitSearchIndex = produitSearchIndex;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.nombreCellules = Math.max(nombreCellules, 1);
+        this.tailleBail = Math.max(tailleBail, 1);
+        Arrays.stream(produitsChauds.split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .forEach(id -> marquerChaud(Long.valueOf(id)));
+    }
+
+    public void marquerChaud(Long produitId) {
+        chauds.computeIfAbsent(produitId, id -> new CompteurChaud(nombreCellules));
+        logger.info("Produit {} servi par les compteurs de stock en mémoire", produitId);
+    }
+
+    /**
+     * Retire qte unités du stock si elles sont disponibles. Annulé automatiquement si la transaction
+     * appelante échoue.
+     */
+    public boolean reserver(Long produitId, int qte) {
+        if (qte <= 0) {
+            return true;
+        }
+        CompteurChaud compteur = chauds.get(produitId);
+        boolean reserve = compteur != null ? reserverEnMemoire(produitId, qte, compteur) : reserverEnBase(produitId, qte);
+        if (!reserve) {
+            refus.incrementAndGet();
+        }
+        return reserve;
+    }
+
+    /**
+     * Réserve toutes les quantités ou aucune. Les produits ordinaires sont décrémentés en un seul
+     * UPDATE (CASE sur l'id) ; un produit en stock insuffisant fait échouer l'ensemble.
+     */
+    public void reserverTout(Map<Long, Integer> quantites) {
+        retirer(quantites, false);
+    }
+
+    /**
+     * Vente : comme reserverTout, avec l'incrément de salesCount dans le même UPDATE. Pour les produits
+     * chauds, les ventes sont cumulées en mémoire et écrites à la réconciliation.
+     */
+    public void vendre(Map<Long, Integer> quantites) {
+        retirer(quantites, true);
+    }
+
+    private void retirer(Map<Long, Integer> quantites, boolean compterVentes) {
+        Map<Long, Integer> enBase = new LinkedHashMap<>();
+        quantites.forEach((produitId, qte) -> {
+            CompteurChaud compteur = chauds.get(produitId);
+            if (compteur != null) {
+                if (!reserver(produitId, qte)) {
+                    throw new IllegalArgumentException("Stock insuffisant pour le produit ID: " + produitId);
+                }
+                if (compterVentes) {
+                    compteur.ventesEnAttente.addAndGet(qte);
+                    apresRollback(() -> compteur.ventesEnAttente.addAndGet(-qte));
+                }
+            } else if (qte > 0) {
+                enBase.put(produitId, qte);
+            }
+        });
+        if (enBase.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>(enBase.keySet());
+        StringBuilder cas = new StringBuilder("CASE p.id");
+        for (int i = 0; i < ids.size(); i++) {
+            cas.append(" WHEN :id").append(i).append(" THEN :qte").append(i);
+        }
+        cas.append(" ELSE 0 END");
+        String jpql = "UPDATE Produit p SET p.stock = p.stock - " + cas +
+                (compterVentes ? ", p.salesCount = COALESCE(p.salesCount, 0) + " + cas : "") +
+                ", p.version = p.version + 1 WHERE p.id IN :ids AND p.stock >= " + cas;
+
+        int modifies = executer(() -> {
+            Query query = entityManager.createQuery(jpql).setParameter("ids", ids);
+            for (int i = 0; i < ids.size(); i++) {
+                query.setParameter("id" + i, ids.get(i)).setParameter("qte" + i, enBase.get(ids.get(i)));
+            }
+            return query.executeUpdate();
+        });
+        if (modifies != ids.size()) {
+            // Les lignes déjà décrémentées sont annulées avec la transaction appelante
+            refus.incrementAndGet();
+            throw new IllegalArgumentException("Stock insuffisant pour un ou plusieurs produits: " + ids);
+        }
+        reservationsBase.addAndGet(modifies);
+        ids.forEach(produitCatalogCache::invalider);
+        if (compterVentes) {
+            // salesCount sert au tri de la recherche ; l'UPDATE JPQL ne déclenche aucun écouteur
+            produitSearchIndex.reindexerApresCommit(ids);
+        }
+    }
+
+    public void ajouter(Long produitId, int qte) {
+        if (executer(() -> produitRepository.incrementerStock(produitId, qte)) == 0) {
+            throw new IllegalArgumentException("Produit non trouvé avec l'ID: " + produitId);
+        }
+        produitCatalogCache.invalider(produitId);
+    }
+
+    /**
+     * Réapprovisionnement automatique : le test du seuil et l'ajout se font dans le même UPDATE,
+     * deux ventes simultanées ne déclenchent donc qu'un seul réapprovisionnement.
+     */
+    public boolean reapprovisionnerSiSousSeuil(Produit produit) {
+        CompteurChaud compteur = chauds.get(produit.getId());
+        int enMemoire = compteur != null ? compteur.total() : 0;
+        if (executer(() -> produitRepository.reapprovisionnerSiSousSeuil(produit.getId(), enMemoire)) == 0) {
+            return false;
+        }
+        produitCatalogCache.invalider(produit.getId());
+        aligner(produit, produit.getQuantiteReapprovisionnement());
+        return true;
+    }
+
+    /**
+     * Rend à la base les unités en mémoire d'un produit chaud, avant une écriture absolue du stock.
+     */
+    public void rendre(Long produitId) {
+        CompteurChaud compteur = chauds.get(produitId);
+        if (compteur == null) {
+            return;
+        }
+        int unites = compteur.vider();
+        if (unites > 0) {
+            executer(() -> produitRepository.incrementerStock(produitId, unites));
+            apresRollback(() -> compteur.rendre(unites));
+            unitesRendues.addAndGet(unites);
+            produitCatalogCache.invalider(produitId);
+        }
+    }
+
+    // Stock vendable : base + unités déjà retirées pour les compteurs en mémoire
+    public int stockDisponible(Produit produit) {
+        return stockDisponible(produit.getId(), produit.getStock());
+    }
+
+    public int stockDisponible(Long produitId, int stockEnBase) {
+        CompteurChaud compteur = chauds.get(produitId);
+        return stockEnBase + (compteur != null ? compteur.total() : 0);
+    }
+
+    /**
+     * Reporte sur une entité déjà chargée la valeur écrite par un UPDATE atomique. À appeler après le flush
+     * des modifications de l'entité : elle passe en lecture seule pour que Hibernate ne la réécrive pas.
+     */
+    public void aligner(Produit produit, int delta) {
+        Session session = entityManager.unwrap(Session.class);
+        if (session.contains(produit)) {
+            session.setReadOnly(produit, true);
+        }
+        produit.setStock(produit.getStock() + delta);
+    }
+
+    @Scheduled(fixedDelayString = "${stock.reservation.reconciliation-ms:5000}")
+    public void reconcilier() {
+        chauds.forEach((produitId, compteur) -> {
+            synchronized (compteur) {
+                int unites = compteur.vider();
+                int ventes = compteur.ventesEnAttente.getAndSet(0);
+                if (unites == 0 && ventes == 0) {
+                    return;
+                }
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        if (unites > 0) {
+                            produitRepository.incrementerStock(produitId, unites);
+                        }
+                        if (ventes > 0) {
+                            produitRepository.incrementerVentes(produitId, ventes);
+                        }
+                    });
+                    unitesRendues.addAndGet(unites);
+                    produitCatalogCache.invalider(produitId);
+                    if (ventes > 0) {
+                        produitSearchIndex.reindexerApresCommit(List.of(produitId));
+                    }
+                } catch (Exception e) {
+                    compteur.rendre(unites);
+                    compteur.ventesEnAttente.addAndGet(ventes);
+                    logger.warn("Réconciliation du stock du produit {} impossible : {}", produitId, e.getMessage());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void arreter() {
+        reconcilier();
+    }
+
+    public Map<String, Object> statistiques() {
+        Map<String, Object> enMemoire = new LinkedHashMap<>();
+        Map<String, Object> ventesEnAttente = new LinkedHashMap<>();
+        chauds.forEach((produitId, compteur) -> {
+            enMemoire.put(String.valueOf(produitId), compteur.total());
+            ventesEnAttente.put(String.valueOf(produitId), compteur.ventesEnAttente.get());
+        });
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("reservationsMemoire", reservationsMemoire.get());
+        stats.put("reservationsBase", reservationsBase.get());
+        stats.put("refus", refus.get());
+        stats.put("baux", baux.get());
+        stats.put("unitesRendues", unitesRendues.get());
+        stats.put("unitesEnMemoire", enMemoire);
+        stats.put("ventesEnAttente", ventesEnAttente);
+        return stats;
+    }
+
+    private boolean reserverEnBase(Long produitId, int qte) {
+        if (executer(() -> produitRepository.decrementerStockSiDisponible(produitId, qte)) == 0) {
+            return false;
+        }
+        reservationsBase.incrementAndGet();
+        produitCatalogCache.invalider(produitId);
+        return true;
+    }
+
+    private boolean reserverEnMemoire(Long produitId, int qte, CompteurChaud compteur) {
+        if (compteur.prendre(qte)) {
+            reservationsMemoire.incrementAndGet();
+            apresRollback(() -> compteur.rendre(qte));
+            return true;
+        }
+        synchronized (compteur) {
+            if (compteur.prendre(qte)) {
+                reservationsMemoire.incrementAndGet();
+                apresRollback(() -> compteur.rendre(qte));
+                return true;
+            }
+            // Regroupe le reste des cellules puis complète par un nouveau bail si besoin
+            int disponible = compteur.vider();
+            int manque = qte - disponible;
+            int surplus = disponible - qte;
+            if (manque > 0) {
+                int bail = Math.max(manque, tailleBail);
+                if (louer(produitId, bail)) {
+                    surplus = bail - manque;
+                } else if (bail > manque && louer(produitId, manque)) {
+                    surplus = 0;
+                } else {
+                    compteur.rendre(disponible);
+                    return false;
+                }
+                // Le bail est pris dans la transaction appelante : le surplus n'est crédité qu'après son commit
+                int credit = surplus;
+                apresCommit(() -> compteur.rendre(credit));
+                apresRollback(() -> compteur.rendre(disponible));
+            } else {
+                compteur.rendre(surplus);
+                apresRollback(() -> compteur.rendre(qte));
+            }
+            reservationsMemoire.incrementAndGet();
+            return true;
+        }
+    }
+
+    private boolean louer(Long produitId, int unites) {
+        if (executer(() -> produitRepository.decrementerStockSiDisponible(produitId, unites)) == 0) {
+            return false;
+        }
+        baux.incrementAndGet();
+        produitCatalogCache.invalider(produitId);
+        return true;
+    }
+
+    // Dans la transaction appelante s'il y en a une (pas de REQUIRES_NEW : elle peut déjà verrouiller la ligne)
+    private int executer(Supplier<Integer> ecriture) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return ecriture.get();
+        }
+        Integer resultat = transactionTemplate.execute(status -> ecriture.get());
+        return resultat != null ? resultat : 0;
+    }
+
+    private void apresRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        action.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private void apresCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
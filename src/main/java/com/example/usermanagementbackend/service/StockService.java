@@ -7,11 +7,15 @@ import com.example.usermanagementbackend.enums.TypeNotification;
 import com.example.usermanagementbackend.repository.MouvementStockRepository;
 import com.example.usermanagementbackend.repository.ProduitRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -20,14 +24,16 @@ public class StockService {
     private final ProduitRepository produitRepository;
     private final MouvementStockRepository mouvementStockRepository;
     private final NotificationService notificationService;
+    private final StockReservationService stockReservationService;
+    private final JdbcTemplate jdbcTemplate;
 
     @Transactional
     public void enregistrerEntree(Long idProduit, int quantite) {
         Produit produit = produitRepository.findById(idProduit)
                 .orElseThrow(() -> new IllegalArgumentException("Produit non trouvé avec l'ID: " + idProduit));
 
-        produit.setStock(produit.getStock() + quantite);
-        produitRepository.save(produit);
+        stockReservationService.ajouter(idProduit, quantite);
+        stockReservationService.aligner(produit, quantite);
 
         enregistrerMouvement(produit, TypeMouvement.ENTREE, quantite);
 
@@ -39,12 +45,11 @@ public class StockService {
         Produit produit = produitRepository.findById(idProduit)
                 .orElseThrow(() -> new IllegalArgumentException("Produit non trouvé avec l'ID: " + idProduit));
 
-        if (produit.getStock() < quantitePerdue) {
+        // Retrait conditionnel (stock >= quantité) : pas de perte enregistrée sur un stock déjà vendu
+        if (!stockReservationService.reserver(idProduit, quantitePerdue)) {
             throw new IllegalArgumentException("Pas assez de stock pour enregistrer cette perte");
         }
-
-        produit.setStock(produit.getStock() - quantitePerdue);
-        produitRepository.save(produit);
+        stockReservationService.aligner(produit, -quantitePerdue);
 
         enregistrerMouvement(produit, TypeMouvement.PERTE, quantitePerdue);
 
@@ -68,15 +73,31 @@ public class StockService {
         mouvementStockRepository.save(mouvement);
     }
 
+    /**
+     * Mouvements de plusieurs produits en un seul batch JDBC (id produit → quantité).
+     */
+    public void enregistrerMouvements(Map<Long, Integer> quantites, TypeMouvement type) {
+        List<Map.Entry<Long, Integer>> lignes = new ArrayList<>(quantites.entrySet());
+        Timestamp maintenant = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate("INSERT INTO mouvement_stock (produit_id, type_mouvement, quantite, date_mouvement) VALUES (?, ?, ?, ?)",
+                lignes, lignes.size(), (ps, ligne) -> {
+                    ps.setLong(1, ligne.getKey());
+                    ps.setString(2, type.name());
+                    ps.setInt(3, ligne.getValue());
+                    ps.setTimestamp(4, maintenant);
+                });
+    }
+
     public void verifierEtReapprovisionner(Produit produit) {
         if (produit.getId() == null) {
             throw new IllegalStateException("Le produit doit être persistant avant de vérifier le réapprovisionnement");
         }
 
-        if (produit.isAutoReapprovisionnement() && produit.getStock() <= produit.getSeuilMin()) {
+        // Seuil testé d'abord sur l'entité alignée : l'UPDATE conditionnel n'est émis que pour les candidats
+        if (produit.isAutoReapprovisionnement()
+                && stockReservationService.stockDisponible(produit) <= produit.getSeuilMin()
+                && stockReservationService.reapprovisionnerSiSousSeuil(produit)) {
             int quantiteAAjouter = produit.getQuantiteReapprovisionnement();
-            produit.setStock(produit.getStock() + quantiteAAjouter);
-            produitRepository.save(produit);
             enregistrerMouvement(produit, TypeMouvement.ENTREE, quantiteAAjouter);
 
             notificationService.sendNotification(produit.getFournisseurId(),
@@ -88,7 +109,7 @@ public class StockService {
     public String verifierStock(Long idProduit) {
         Produit produit = produitRepository.findById(idProduit)
                 .orElseThrow(() -> new IllegalArgumentException("Produit non trouvé avec l'ID: " + idProduit));
-        return "Stock du produit " + produit.getNom() + " : " + produit.getStock() + " unités disponibles.";
+        return "Stock du produit " + produit.getNom() + " : " + stockReservationService.stockDisponible(produit) + " unités disponibles.";
     }
 
     public List<MouvementStock> getAllMouvements() {
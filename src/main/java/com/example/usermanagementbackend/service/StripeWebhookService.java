@@ -0,0 +1,224 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.entity.EvenementStripe;
+import com.example.usermanagementbackend.repository.EvenementStripeRepository;
+import com.example.usermanagementbackend.repository.TransactionPaiementRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.Webhook;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Webhooks Stripe : la requête ne fait que vérifier la signature et écrire l'événement brut dans la boîte
+ * de réception (evenement_stripe), puis l'acquitte. Un pool borné de workers règle ensuite la transaction
+ * de paiement (ReglementPaiementService, idempotent) ; la facture et son PDF suivent le règlement.
+ * <p>
+ * Les doublons Stripe sont écartés par l'unicité de l'event id. Un événement refusé par le pool (file pleine),
+ * en échec ou laissé en plan par un arrêt est repris par le balayage périodique de la boîte.
+ */
+@Service
+public class StripeWebhookService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StripeWebhookService.class);
+    // Délai avant qu'un événement non traité soit considéré comme à reprendre par le balayage
+    private static final long DELAI_REPRISE_SECONDES = 5;
+
+    private static final Map<String, String> STATUTS = Map.of(
+            "payment_intent.succeeded", "succeeded",
+            "payment_intent.payment_failed", "failed",
+            "payment_intent.canceled", "canceled",
+            "payment_intent.processing", "processing",
+            "payment_intent.requires_action", "requires_action");
+
+    private final EvenementStripeRepository evenementRepository;
+    private final TransactionPaiementRepository transactionRepository;
+    private final ReglementPaiementService reglementPaiementService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final String secret;
+    private final int tentativesMax;
+    private final int capacite;
+    private final ThreadPoolExecutor workers;
+    // Événements déjà soumis au pool, pour que le balayage ne les remette pas en file
+    private final Set<Long> soumis = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong recus = new AtomicLong();
+    private final AtomicLong doublons = new AtomicLong();
+    private final AtomicLong traites = new AtomicLong();
+    private final AtomicLong ignores = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+    private final AtomicLong rejetes = new AtomicLong();
+
+    public StripeWebhookService(EvenementStripeRepository evenementRepository,
+                                TransactionPaiementRepository transactionRepository,
+                                ReglementPaiementService reglementPaiementService,
+                                TransactionTemplate transactionTemplate,
+                                ObjectMapper objectMapper,
+                                @Value("${stripe.webhook.secret:}") String secret,
+                                @Value("${stripe.webhook.workers:4}") int nombreWorkers,
+                                @Value("${stripe.webhook.file-capacite:1000}") int capacite,
+                                @Value("${stripe.webhook.tentatives-max:5}") int tentativesMax) {
+        this.evenementRepository = evenementRepository;
+        this.transactionRepository = transactionRepository;
+        this.reglementPaiementService = reglementPaiementService;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.secret = secret;
+        this.tentativesMax = tentativesMax;
+        this.capacite = capacite;
+
+        AtomicInteger numero = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(nombreWorkers, nombreWorkers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacite),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "stripe-webhook-" + numero.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void arreter() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            // Les événements restants sont en base et seront repris au prochain démarrage
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Vérifie la signature et inscrit l'événement dans la boîte de réception.
+     *
+     * @return false si l'événement avait déjà été reçu
+     */
+    public boolean recevoir(String payload, String signature) throws SignatureVerificationException {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("Secret de webhook Stripe non configuré");
+        }
+        if (signature == null || signature.isBlank()) {
+            throw new SignatureVerificationException("En-tête Stripe-Signature manquant", signature);
+        }
+        Event event = Webhook.constructEvent(payload, signature, secret);
+        recus.incrementAndGet();
+
+        EvenementStripe evenement = new EvenementStripe();
+        evenement.setEventId(event.getId());
+        evenement.setType(event.getType());
+        evenement.setPaymentIntentId(objetId(payload));
+        evenement.setPayload(payload);
+        evenement.setRecuLe(LocalDateTime.now());
+        try {
+            evenement = evenementRepository.saveAndFlush(evenement);
+        } catch (DataIntegrityViolationException e) {
+            doublons.incrementAndGet();
+            logger.info("Événement Stripe {} déjà reçu", event.getId());
+            return false;
+        }
+
+        soumettre(evenement.getId());
+        return true;
+    }
+
+    // Reprise : événements en attente (pool saturé, échec, arrêt) remis en file, dans la limite de la file
+    @Scheduled(fixedDelayString = "${stripe.webhook.balayage-ms:10000}")
+    public void balayer() {
+        int place = capacite - workers.getQueue().size();
+        if (place <= 0) {
+            return;
+        }
+        LocalDateTime avant = LocalDateTime.now().minusSeconds(DELAI_REPRISE_SECONDES);
+        evenementRepository.findIdsEnAttente(tentativesMax, avant, PageRequest.of(0, place))
+                .forEach(this::soumettre);
+    }
+
+    public Map<String, Object> statistiques() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("recus", recus.get());
+        stats.put("doublons", doublons.get());
+        stats.put("traites", traites.get());
+        stats.put("ignores", ignores.get());
+        stats.put("echecs", echecs.get());
+        stats.put("rejetesFilePleine", rejetes.get());
+        stats.put("enFile", workers.getQueue().size());
+        stats.put("actifs", workers.getActiveCount());
+        return stats;
+    }
+
+    private void soumettre(Long id) {
+        if (!soumis.add(id)) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    traiter(id);
+                } finally {
+                    soumis.remove(id);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // File pleine : l'événement reste en base pour le balayage
+            soumis.remove(id);
+            rejetes.incrementAndGet();
+        }
+    }
+
+    private void traiter(Long id) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                EvenementStripe evenement = evenementRepository.findByIdForUpdate(id).orElse(null);
+                if (evenement == null || evenement.getTraiteLe() != null) {
+                    return;
+                }
+
+                String statut = STATUTS.get(evenement.getType());
+                if (statut == null) {
+                    evenement.setErreur("Type d'événement non géré");
+                    ignores.incrementAndGet();
+                } else if (evenement.getPaymentIntentId() == null
+                        || transactionRepository.findByPaymentIntentId(evenement.getPaymentIntentId()).isEmpty()) {
+                    evenement.setErreur("Aucune transaction pour ce paiement");
+                    ignores.incrementAndGet();
+                } else {
+                    reglementPaiementService.reglerPaymentIntent(evenement.getPaymentIntentId(), statut);
+                    traites.incrementAndGet();
+                }
+                evenement.setTraiteLe(LocalDateTime.now());
+            });
+        } catch (Exception e) {
+            echecs.incrementAndGet();
+            logger.error("Échec du traitement de l'événement Stripe {}: {}", id, e.getMessage());
+            String message = e.getMessage() != null && e.getMessage().length() > 1000 ? e.getMessage().substring(0, 1000) : e.getMessage();
+            transactionTemplate.executeWithoutResult(status -> evenementRepository.enregistrerEchec(id, message));
+        }
+    }
+
+    // Identifiant de data.object (le PaymentIntent pour les événements payment_intent.*)
+    private String objetId(String payload) {
+        try {
+            JsonNode objet = objectMapper.readTree(payload).path("data").path("object");
+            return objet.hasNonNull("id") ? objet.get("id").asText() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -21,6 +21,9 @@ public class TransactionPaiementService {
     @Autowired
     private CommandeRepository commandeRepository;
 
+    @Autowired
+    private ReglementPaiementService reglementPaiementService;
+
     public TransactionPaiement ajouterTransaction(List<Long> commandeIds, TransactionPaiement transaction) {
         try {
             System.out.println("Fetching Commandes with IDs: " + commandeIds);
@@ -78,21 +81,7 @@ public class TransactionPaiementService {
     }
 
     public TransactionPaiement updateTransactionStatus(Long transactionId, String status) {
-        TransactionPaiement transaction = transactionRepository.findByIdWithCommandes(transactionId)
-                .orElseThrow(() -> new RuntimeException("Transaction non trouvée avec l'ID: " + transactionId));
-
-        transaction.setPaymentStatus(status);
-        TransactionPaiement updatedTransaction = transactionRepository.save(transaction);
-
-        if ("succeeded".equalsIgnoreCase(status)) {
-            Set<Commande> commandes = transaction.getCommandes();
-            for (Commande commande : commandes) {
-                commande.setStatus(OrderStatus.PAID);
-            }
-            commandeRepository.saveAll(commandes);
-        }
-
-        return updatedTransaction;
+        return reglementPaiementService.reglerTransaction(transactionId, status);
     }
 
     public TransactionPaiement getTransactionById(Long id) {
@@ -113,6 +113,7 @@ public class UserService {
 
     @Transactional
     public User saveUserDirect(User user) {
+        appliquerDescripteurFacial(user, user);
         User savedUser = userRepository.saveAndFlush(user);
         entityManager.clear();
         return savedUser;
@@ -162,9 +163,24 @@ public class UserService {
         existingUser.setNumeroDeTelephone(user.getNumeroDeTelephone());
         existingUser.setRole(user.getRole());
         existingUser.setAdresseLivraison(user.getAdresseLivraison());
+        appliquerDescripteurFacial(existingUser, user);
         return userRepository.save(existingUser);
     }
 
+    // Descripteur texte reçu : 128 valeurs attendues, converti au format binaire
+    private void appliquerDescripteurFacial(User cible, User saisie) {
+        String descripteur = saisie.getFaceDescriptorSaisi();
+        if (descripteur == null) {
+            return;
+        }
+        float[] embedding = descripteur.isBlank() ? null : FaceIndexService.parserDescripteur(descripteur);
+        if (embedding != null && embedding.length != FaceIndexService.DIMENSION) {
+            throw new IllegalArgumentException("Descripteur facial invalide");
+        }
+        cible.setFaceEmbedding(embedding);
+        saisie.setFaceDescriptor(null);
+    }
+
     public List<User> searchUsers(String query) {
         return userRepository.findByNomContainingIgnoreCaseOrPrenomContainingIgnoreCaseOrEmailContainingIgnoreCase(query, query, query);
     }
@@ -0,0 +1,169 @@
+package com.example.usermanagementbackend.controller;
+
+import com.example.usermanagementbackend.entity.EvenementStripe;
+import com.example.usermanagementbackend.entity.TransactionPaiement;
+import com.example.usermanagementbackend.repository.EvenementStripeRepository;
+import com.example.usermanagementbackend.repository.TransactionPaiementRepository;
+import com.example.usermanagementbackend.service.ReglementPaiementService;
+import com.example.usermanagementbackend.service.StripeWebhookService;
+import com.example.usermanagementbackend.stripe.StripeReplayStub;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class StripeWebhookControllerTest {
+
+    private static final String SECRET = "whsec_test_replay";
+    private static final String SUCCES = "evt_pi_succeeded";
+    private static final String ECHEC = "evt_pi_payment_failed";
+
+    // Boîte de réception en mémoire, avec l'unicité de event_id de la table evenement_stripe
+    private final Map<Long, EvenementStripe> boite = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private EvenementStripeRepository evenementRepository;
+    private ReglementPaiementService reglementPaiementService;
+    private StripeWebhookService service;
+    private StripeReplayStub stripe;
+
+    @BeforeEach
+    void initialiser() {
+        evenementRepository = mock(EvenementStripeRepository.class);
+        when(evenementRepository.saveAndFlush(any(EvenementStripe.class))).thenAnswer(invocation -> {
+            EvenementStripe evenement = invocation.getArgument(0);
+            synchronized (boite) {
+                if (boite.values().stream().anyMatch(e -> e.getEventId().equals(evenement.getEventId()))) {
+                    throw new DataIntegrityViolationException("Duplicate entry for key 'event_id'");
+                }
+                evenement.setId(sequence.incrementAndGet());
+                boite.put(evenement.getId(), evenement);
+            }
+            return evenement;
+        });
+        when(evenementRepository.findByIdForUpdate(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(boite.get(invocation.<Long>getArgument(0))));
+        when(evenementRepository.findIdsEnAttente(anyInt(), any(LocalDateTime.class), any(Pageable.class))).thenAnswer(invocation -> {
+            int tentativesMax = invocation.getArgument(0);
+            LocalDateTime avant = invocation.getArgument(1);
+            return boite.values().stream()
+                    .filter(e -> e.getTraiteLe() == null && e.getTentatives() < tentativesMax && e.getRecuLe().isBefore(avant))
+                    .map(EvenementStripe::getId)
+                    .sorted()
+                    .toList();
+        });
+        when(evenementRepository.enregistrerEchec(anyLong(), any())).thenAnswer(invocation -> {
+            EvenementStripe evenement = boite.get(invocation.<Long>getArgument(0));
+            evenement.setTentatives(evenement.getTentatives() + 1);
+            evenement.setErreur(invocation.getArgument(1));
+            return 1;
+        });
+
+        TransactionPaiementRepository transactionRepository = mock(TransactionPaiementRepository.class);
+        when(transactionRepository.findByPaymentIntentId(anyString())).thenReturn(Optional.of(new TransactionPaiement()));
+        reglementPaiementService = mock(ReglementPaiementService.class);
+
+        service = new StripeWebhookService(evenementRepository, transactionRepository, reglementPaiementService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), new ObjectMapper(),
+                SECRET, 2, 100, 5);
+        stripe = new StripeReplayStub(MockMvcBuilders.standaloneSetup(new StripeWebhookController(service)).build(), SECRET);
+    }
+
+    @AfterEach
+    void arreter() throws InterruptedException {
+        service.arreter();
+    }
+
+    @Test
+    void evenementRejoueEstEnregistreEtRegle() throws Exception {
+        stripe.rejouer(SUCCES)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(true))
+                .andExpect(jsonPath("$.duplicate").value(false));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> boite.values().iterator().next().getTraiteLe() != null);
+        EvenementStripe evenement = boite.values().iterator().next();
+        assertThat(evenement.getEventId()).isEqualTo("evt_3PqTestSucceeded01");
+        assertThat(evenement.getPaymentIntentId()).isEqualTo("pi_3PqTestIntent0001");
+        verify(reglementPaiementService).reglerPaymentIntent("pi_3PqTestIntent0001", "succeeded");
+    }
+
+    @Test
+    void signatureInvalideRejetee() throws Exception {
+        stripe.rejouerAvecSecret(SUCCES, "whsec_autre").andExpect(status().isBadRequest());
+        stripe.rejouerAltere(SUCCES).andExpect(status().isBadRequest());
+        stripe.rejouerAncien(SUCCES, 3600).andExpect(status().isBadRequest());
+        stripe.envoyer(StripeReplayStub.evenement(SUCCES), null).andExpect(status().isBadRequest());
+
+        assertThat(boite).isEmpty();
+        verifyNoInteractions(reglementPaiementService);
+    }
+
+    @Test
+    void evenementEnDoubleIgnore() throws Exception {
+        stripe.rejouer(SUCCES).andExpect(jsonPath("$.duplicate").value(false));
+        stripe.rejouer(SUCCES)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.duplicate").value(true));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> boite.values().iterator().next().getTraiteLe() != null);
+        assertThat(boite).hasSize(1);
+        assertThat(service.statistiques()).containsEntry("doublons", 1L);
+        verify(reglementPaiementService, times(1)).reglerPaymentIntent(anyString(), anyString());
+    }
+
+    @Test
+    void balayageRemetEnFileLesEvenementsEnEchec() throws Exception {
+        when(reglementPaiementService.reglerPaymentIntent(anyString(), anyString()))
+                .thenThrow(new IllegalStateException("Base indisponible"))
+                .thenReturn(new TransactionPaiement());
+
+        stripe.rejouer(ECHEC).andExpect(status().isOk());
+        await().atMost(Duration.ofSeconds(5)).until(() -> boite.values().iterator().next().getTentatives() == 1);
+        EvenementStripe evenement = boite.values().iterator().next();
+        assertThat(evenement.getTraiteLe()).isNull();
+        assertThat(evenement.getErreur()).isEqualTo("Base indisponible");
+
+        // Reçu depuis plus longtemps que le délai de reprise
+        evenement.setRecuLe(LocalDateTime.now().minusMinutes(1));
+        service.balayer();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> evenement.getTraiteLe() != null);
+        verify(reglementPaiementService, times(2)).reglerPaymentIntent("pi_3PqTestIntent0002", "failed");
+        assertThat(service.statistiques()).containsEntry("echecs", 1L).containsEntry("traites", 1L);
+    }
+
+    @Test
+    void balayageIgnoreLesEvenementsAuMaximumDeTentatives() throws Exception {
+        when(reglementPaiementService.reglerPaymentIntent(anyString(), anyString()))
+                .thenThrow(new IllegalStateException("Base indisponible"));
+
+        stripe.rejouer(ECHEC).andExpect(status().isOk());
+        await().atMost(Duration.ofSeconds(5)).until(() -> boite.values().iterator().next().getTentatives() == 1);
+        EvenementStripe evenement = boite.values().iterator().next();
+        evenement.setRecuLe(LocalDateTime.now().minusMinutes(1));
+        evenement.setTentatives(5);
+
+        service.balayer();
+
+        verify(reglementPaiementService, after(300).times(1)).reglerPaymentIntent(anyString(), anyString());
+    }
+}
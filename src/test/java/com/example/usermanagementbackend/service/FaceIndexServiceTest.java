@@ -0,0 +1,149 @@
+package com.example.usermanagementbackend.service;
+
+import com.example.usermanagementbackend.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FaceIndexServiceTest {
+
+    private static final int DIMENSION = FaceIndexService.DIMENSION;
+
+    @Test
+    void plusProcheIdentiqueAuParcoursExhaustif() {
+        Random random = new Random(42);
+        int n = 2000;
+        long[] ids = new long[n];
+        float[] donnees = new float[n * DIMENSION];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+            for (int j = 0; j < DIMENSION; j++) {
+                donnees[i * DIMENSION + j] = (float) (random.nextGaussian() * 0.1);
+            }
+        }
+        FaceIndexService.VpTree arbre = FaceIndexService.VpTree.construire(ids, donnees);
+
+        for (int q = 0; q < 500; q++) {
+            float[] requete = new float[DIMENSION];
+            if (q % 2 == 0) {
+                // Proche d'un point existant : une correspondance sous le seuil est attendue
+                int base = random.nextInt(n);
+                for (int j = 0; j < DIMENSION; j++) {
+                    requete[j] = donnees[base * DIMENSION + j] + (float) (random.nextGaussian() * 0.01);
+                }
+            } else {
+                for (int j = 0; j < DIMENSION; j++) {
+                    requete[j] = (float) (random.nextGaussian() * 0.1);
+                }
+            }
+            // Seuil infini : le plus proche voisin exact doit toujours être trouvé
+            assertThat(arbre.plusProche(requete, Float.MAX_VALUE, id -> false).id)
+                    .isEqualTo(exhaustif(ids, donnees, requete, Float.MAX_VALUE, Set.of()));
+            assertThat(arbre.plusProche(requete, FaceIndexService.SEUIL_CORRESPONDANCE, id -> false).id)
+                    .isEqualTo(exhaustif(ids, donnees, requete, FaceIndexService.SEUIL_CORRESPONDANCE, Set.of()));
+        }
+    }
+
+    @Test
+    void plusProcheIgnoreLesIdentifiantsExclus() {
+        Random random = new Random(7);
+        int n = 500;
+        long[] ids = new long[n];
+        float[] donnees = new float[n * DIMENSION];
+        for (int i = 0; i < n; i++) {
+            ids[i] = 1000 + i;
+            for (int j = 0; j < DIMENSION; j++) {
+                donnees[i * DIMENSION + j] = random.nextFloat();
+            }
+        }
+        FaceIndexService.VpTree arbre = FaceIndexService.VpTree.construire(ids, donnees);
+        Set<Long> exclus = new HashSet<>();
+        for (int i = 0; i < n; i += 3) {
+            exclus.add(ids[i]);
+        }
+
+        for (int q = 0; q < 200; q++) {
+            float[] requete = new float[DIMENSION];
+            for (int j = 0; j < DIMENSION; j++) {
+                requete[j] = random.nextFloat();
+            }
+            assertThat(arbre.plusProche(requete, Float.MAX_VALUE, exclus::contains).id)
+                    .isEqualTo(exhaustif(ids, donnees, requete, Float.MAX_VALUE, exclus));
+        }
+    }
+
+    @Test
+    void arbreVideOuAUnSeulPoint() {
+        float[] requete = new float[DIMENSION];
+        assertThat(FaceIndexService.VpTree.construire(new long[0], new float[0])
+                .plusProche(requete, Float.MAX_VALUE, id -> false).id).isEqualTo(-1L);
+        assertThat(FaceIndexService.VpTree.construire(new long[]{5L}, new float[DIMENSION])
+                .plusProche(requete, Float.MAX_VALUE, id -> false).id).isEqualTo(5L);
+    }
+
+    @Test
+    void inscriptionPendantLeRechargementConservee() {
+        UserRepository userRepository = mock(UserRepository.class);
+        FaceIndexService service = new FaceIndexService(userRepository);
+        float[] existant = vecteur(0.1f);
+        float[] inscrit = vecteur(0.9f);
+        List<Object[]> lot = new ArrayList<>();
+        lot.add(new Object[]{1L, existant, null});
+        when(userRepository.findFaceDescriptorsAfter(anyLong(), any())).thenAnswer(invocation -> {
+            // Inscription validée pendant la lecture de la table
+            service.mettreAJour(2L, inscrit);
+            return lot;
+        });
+
+        service.recharger();
+
+        assertThat(service.taille()).isEqualTo(2);
+        assertThat(service.trouverCorrespondance(inscrit)).contains(2L);
+        assertThat(service.trouverCorrespondance(existant)).contains(1L);
+    }
+
+    @Test
+    void rechercheParLaTableTantQueLIndexNEstPasCharge() {
+        UserRepository userRepository = mock(UserRepository.class);
+        FaceIndexService service = new FaceIndexService(userRepository);
+        List<Object[]> lot = new ArrayList<>();
+        lot.add(new Object[]{1L, vecteur(0.1f), null});
+        lot.add(new Object[]{2L, null, Arrays.toString(vecteur(0.5f))});
+        when(userRepository.findFaceDescriptorsAfter(anyLong(), any())).thenReturn(lot);
+
+        assertThat(service.trouverCorrespondance(vecteur(0.5f))).contains(2L);
+        assertThat(service.trouverCorrespondance(vecteur(5f))).isEmpty();
+        service.arreter();
+    }
+
+    private static float[] vecteur(float valeur) {
+        float[] vecteur = new float[DIMENSION];
+        Arrays.fill(vecteur, valeur);
+        return vecteur;
+    }
+
+    private static long exhaustif(long[] ids, float[] donnees, float[] requete, float seuil, Set<Long> exclus) {
+        long meilleur = -1;
+        float meilleureDistance = seuil;
+        for (int i = 0; i < ids.length; i++) {
+            if (exclus.contains(ids[i])) continue;
+            float distance = FaceIndexService.distance(requete, donnees, i * DIMENSION);
+            if (distance < meilleureDistance) {
+                meilleureDistance = distance;
+                meilleur = ids[i];
+            }
+        }
+        return meilleur;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.usermanagementbackend.stripe;
+
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Bouchon de l'émetteur Stripe pour les tests : rejoue les événements enregistrés de src/test/resources/stripe/events
+ * vers l'endpoint webhook, signés comme le fait Stripe (en-tête Stripe-Signature t=...,v1=HMAC-SHA256).
+ */
+public class StripeReplayStub {
+
+    public static final String ENDPOINT = "/api/transactions/webhook/stripe";
+
+    private final MockMvc mockMvc;
+    private final String secret;
+
+    public StripeReplayStub(MockMvc mockMvc, String secret) {
+        this.mockMvc = mockMvc;
+        this.secret = secret;
+    }
+
+    public static String evenement(String nom) {
+        try (InputStream flux = StripeReplayStub.class.getResourceAsStream("/stripe/events/" + nom + ".json")) {
+            if (flux == null) {
+                throw new IllegalArgumentException("Événement enregistré introuvable : " + nom);
+            }
+            return new String(flux.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Livraison normale : signature valide, horodatage courant
+    public ResultActions rejouer(String nom) throws Exception {
+        String payload = evenement(nom);
+        return envoyer(payload, signature(payload, secret, System.currentTimeMillis() / 1000));
+    }
+
+    // Livraison signée avec un autre secret (webhook falsifié ou mal configuré)
+    public ResultActions rejouerAvecSecret(String nom, String autreSecret) throws Exception {
+        String payload = evenement(nom);
+        return envoyer(payload, signature(payload, autreSecret, System.currentTimeMillis() / 1000));
+    }
+
+    // Livraison dont le corps a été modifié après signature
+    public ResultActions rejouerAltere(String nom) throws Exception {
+        String payload = evenement(nom);
+        String signature = signature(payload, secret, System.currentTimeMillis() / 1000);
+        return envoyer(payload.replace("12500", "1"), signature);
+    }
+
+    // Livraison rejouée hors de la tolérance d'horodatage de Stripe (5 minutes)
+    public ResultActions rejouerAncien(String nom, long ageSecondes) throws Exception {
+        String payload = evenement(nom);
+        return envoyer(payload, signature(payload, secret, System.currentTimeMillis() / 1000 - ageSecondes));
+    }
+
+    public ResultActions envoyer(String payload, String signature) throws Exception {
+        var requete = post(ENDPOINT).contentType(MediaType.APPLICATION_JSON).content(payload);
+        if (signature != null) {
+            requete.header("Stripe-Signature", signature);
+        }
+        return mockMvc.perform(requete);
+    }
+
+    public static String signature(String payload, String secret, long horodatage) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] empreinte = mac.doFinal((horodatage + "." + payload).getBytes(StandardCharsets.UTF_8));
+            return "t=" + horodatage + ",v1=" + HexFormat.of().formatHex(empreinte);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}